@@ -0,0 +1,53 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.Trade;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding trades into 1s, 1m and 5m bars, trades advance by 1ms so bars are completed along the way
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BarAggregatorBenchmark {
+
+    private static final int TRADES = 1 << 16;
+
+    private BarAggregator aggregator;
+    private Trade[] trades;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        aggregator = new BarAggregator(Arrays.asList(Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofMinutes(5)), 1024);
+        trades = new Trade[TRADES];
+        LocalDateTime start = LocalDateTime.now();
+        for (int i = 0; i < TRADES; i++) {
+            trades[i] = BenchmarkData.trade("IBM", start.plusNanos(i * 1_000_000L), i);
+        }
+    }
+
+    @Benchmark
+    public void add() {
+        aggregator.add(trades[next]);
+        next = (next + 1) & (TRADES - 1);
+    }
+}
@@ -0,0 +1,81 @@
+package stock.market.impl;
+
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared setup of benchmarks: storages by name and trades spread evenly over the last minutes of the retention time
+ */
+final class BenchmarkData {
+
+    static final Duration RETENTION = Duration.ofMinutes(5);
+    private static final Duration FILLED_PERIOD = Duration.ofMinutes(4);
+    private static final int TRADES_PER_TIMESTAMP = 1000;
+    private static final BigDecimal[] PRICES = {new BigDecimal("10.25"), new BigDecimal("10.5"), new BigDecimal("9.75"), new BigDecimal("11")};
+
+    private BenchmarkData() {
+    }
+
+    static TradeStorage createStorage(String storageType) {
+        return createStorage(storageType, new SystemMarketClock());
+    }
+
+    static TradeStorage createStorage(String storageType, MarketClock clock) {
+        switch (storageType) {
+            case "TradeStorageWithOverflowInsurance":
+                return new TradeStorageWithOverflowInsurance(RETENTION, clock);
+            case "TradeStorageWithRunningTotals":
+                return new TradeStorageWithRunningTotals(RETENTION, clock);
+            case "TradeStorageWithTimeBuckets":
+                return new TradeStorageWithTimeBuckets(RETENTION, clock);
+            case "TradeStorageWithPrimitiveColumns":
+                return new TradeStorageWithPrimitiveColumns(RETENTION, clock);
+            case "TradeStorageWithOffHeapSlabs":
+                return new TradeStorageWithOffHeapSlabs(RETENTION, clock);
+            case "TradeStorageWithSketches":
+                return new TradeStorageWithSketches(RETENTION, clock);
+            default:
+                throw new IllegalArgumentException("unknown storage type: " + storageType);
+        }
+    }
+
+    static Trade trade(String stockSymbol, LocalDateTime timestamp, int i) {
+        return new Trade(stockSymbol, timestamp, 1L + i % 100, i % 2 == 0 ? Site.Buy : Site.Sell, PRICES[i % PRICES.length]);
+    }
+
+    /**
+     * Record trades in timestamp order, trades share timestamps to keep memory footprint of the benchmark low
+     */
+    static void fill(TradeStorage storage, String stockSymbol, int windowSize) {
+        LocalDateTime start = LocalDateTime.now().minus(FILLED_PERIOD);
+        long stepNanos = FILLED_PERIOD.toNanos() / Math.max(windowSize / TRADES_PER_TIMESTAMP, 1);
+        LocalDateTime timestamp = start;
+        for (int i = 0; i < windowSize; i++) {
+            if (i % TRADES_PER_TIMESTAMP == 0) {
+                timestamp = start.plusNanos(stepNanos * (i / TRADES_PER_TIMESTAMP));
+            }
+            storage.record(trade(stockSymbol, timestamp, i));
+        }
+    }
+
+    static Map<String, StockOperations> createOperations(String storageType, int symbols, int windowSize) {
+        Map<String, StockOperations> result = new LinkedHashMap<>();
+        for (int i = 0; i < symbols; i++) {
+            String stockSymbol = symbol(i);
+            TradeStorage storage = createStorage(storageType);
+            fill(storage, stockSymbol, windowSize / symbols);
+            result.put(stockSymbol, new BasicStockOperations(new CommonDividedFactorFunction(), new StockData(BigDecimal.ONE, null, BigDecimal.TEN), storage));
+        }
+        return result;
+    }
+
+    static String symbol(int i) {
+        return "S" + i;
+    }
+}
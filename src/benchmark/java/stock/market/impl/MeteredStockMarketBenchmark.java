@@ -0,0 +1,58 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.StockMarket;
+import stock.market.StockSymbol;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link MeteredStockMarket} on the fastest read path, VWAP of resolved symbols kept in primitive columns
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class MeteredStockMarketBenchmark {
+
+    private static final int SYMBOLS = 5;
+
+    @Param({"false", "true"})
+    public boolean metered;
+
+    private StockMarket stockMarket;
+    private StockSymbol[] stockSymbols;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stockMarket = new SimpleStockMarket(BenchmarkData.createOperations("TradeStorageWithPrimitiveColumns", SYMBOLS, 1000), new LogarithmBasedGeometricMeanFunction());
+        if (metered) {
+            stockMarket = new MeteredStockMarket(stockMarket, new StockMarketMetrics());
+        }
+        stockSymbols = new StockSymbol[SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            stockSymbols[i] = stockMarket.resolve(BenchmarkData.symbol(i));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal calculateVolumeWeightedStockPrice() {
+        next = (next + 1) % SYMBOLS;
+        return stockMarket.calculateVolumeWeightedStockPrice(stockSymbols[next]);
+    }
+}
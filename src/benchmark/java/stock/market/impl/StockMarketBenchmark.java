@@ -0,0 +1,88 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.OrderFlow;
+import stock.market.StockMarket;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Facade read paths for a universe of symbols sharing a window of the given total size,
+ * GBCE also through {@link ConcurrentStockMarket} refreshing prices in the calling thread and on the common fork-join pool
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StockMarketBenchmark {
+
+    @Param({"TradeStorageWithOverflowInsurance", "TradeStorageWithRunningTotals", "TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns", "TradeStorageWithOffHeapSlabs", "TradeStorageWithSketches"})
+    public String storageType;
+
+    @Param({"5", "100", "5000"})
+    public int symbols;
+
+    @Param({"1000", "100000", "1000000"})
+    public int windowSize;
+
+    private StockMarket stockMarket;
+    private StockMarket concurrentStockMarket;
+    private StockMarket parallelStockMarket;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stockMarket = new SimpleStockMarket(BenchmarkData.createOperations(storageType, symbols, windowSize), new LogarithmBasedGeometricMeanFunction());
+        concurrentStockMarket = new ConcurrentStockMarket(BenchmarkData.createOperations(storageType, symbols, windowSize), new LogarithmBasedGeometricMeanFunction());
+        parallelStockMarket = new ConcurrentStockMarket(BenchmarkData.createOperations(storageType, symbols, windowSize), new LogarithmBasedGeometricMeanFunction(),
+                ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public BigDecimal calculateVolumeWeightedStockPrice() {
+        next = (next + 1) % symbols;
+        return stockMarket.calculateVolumeWeightedStockPrice(BenchmarkData.symbol(next));
+    }
+
+    @Benchmark
+    public OrderFlow calculateOrderFlow() {
+        next = (next + 1) % symbols;
+        return stockMarket.calculateOrderFlow(BenchmarkData.symbol(next));
+    }
+
+    @Benchmark
+    public BigDecimal calculateMedianPrice() {
+        next = (next + 1) % symbols;
+        return stockMarket.calculatePriceQuantile(BenchmarkData.symbol(next), 0.5);
+    }
+
+    @Benchmark
+    public BigDecimal calculateGBCE() {
+        return stockMarket.calculateGBCE();
+    }
+
+    @Benchmark
+    public BigDecimal calculateGBCEConcurrently() {
+        return concurrentStockMarket.calculateGBCE();
+    }
+
+    @Benchmark
+    public BigDecimal calculateGBCEInParallel() {
+        return parallelStockMarket.calculateGBCE();
+    }
+}
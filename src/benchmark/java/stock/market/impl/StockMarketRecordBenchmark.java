@@ -0,0 +1,112 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.StockMarket;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record batches of {@value #BATCH_SIZE} trades per thread through the facade, single-threaded into {@link SimpleStockMarket}
+ * and multi-threaded into {@link ConcurrentStockMarket}, also mixed with VWAP readers.
+ * The market is recreated for every iteration, so memory does not grow with the benchmark time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = StockMarketRecordBenchmark.BATCH_SIZE)
+@Measurement(iterations = 5, batchSize = StockMarketRecordBenchmark.BATCH_SIZE)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StockMarketRecordBenchmark {
+
+    static final int BATCH_SIZE = 10_000;
+
+    @Param({"TradeStorageWithOverflowInsurance", "TradeStorageWithRunningTotals", "TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns", "TradeStorageWithOffHeapSlabs", "TradeStorageWithSketches"})
+    public String storageType;
+
+    @Param({"5", "100", "5000"})
+    public int symbols;
+
+    @Param({"1000", "100000", "1000000"})
+    public int windowSize;
+
+    private StockMarket simpleStockMarket;
+    private StockMarket concurrentStockMarket;
+    private Trade[] trades;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        simpleStockMarket = new SimpleStockMarket(BenchmarkData.createOperations(storageType, symbols, windowSize), new LogarithmBasedGeometricMeanFunction());
+        concurrentStockMarket = new ConcurrentStockMarket(BenchmarkData.createOperations(storageType, symbols, windowSize), new LogarithmBasedGeometricMeanFunction());
+        trades = new Trade[symbols];
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < symbols; i++) {
+            trades[i] = BenchmarkData.trade(BenchmarkData.symbol(i), now, i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int next;
+
+        private int next(int symbols) {
+            next = (next + 1) % symbols;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public void record(ThreadState thread) {
+        simpleStockMarket.record(trades[thread.next(symbols)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordConcurrently(ThreadState thread) {
+        concurrentStockMarket.record(trades[thread.next(symbols)]);
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(3)
+    public void writeHeavyRecord(ThreadState thread) {
+        concurrentStockMarket.record(trades[thread.next(symbols)]);
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public BigDecimal writeHeavyCalculateVolumeWeightedStockPrice(ThreadState thread) {
+        return concurrentStockMarket.calculateVolumeWeightedStockPrice(BenchmarkData.symbol(thread.next(symbols)));
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public void readHeavyRecord(ThreadState thread) {
+        concurrentStockMarket.record(trades[thread.next(symbols)]);
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(2)
+    public BigDecimal readHeavyCalculateVolumeWeightedStockPrice(ThreadState thread) {
+        return concurrentStockMarket.calculateVolumeWeightedStockPrice(BenchmarkData.symbol(thread.next(symbols)));
+    }
+}
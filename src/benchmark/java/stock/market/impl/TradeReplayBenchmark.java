@@ -0,0 +1,83 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay {@value #TRADES} generated trades of {@value #SYMBOLS} stock symbols, one trade per {@value #TRADE_INTERVAL_MICROS}us of simulated time,
+ * sampling every stock symbol and GBCE once per simulated second. Trades are generated lazily, so the benchmark measures streaming replay.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class TradeReplayBenchmark {
+
+    private static final int TRADES = 1_000_000;
+    private static final int SYMBOLS = 10;
+    private static final int TRADE_INTERVAL_MICROS = 100;
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 8, 0);
+
+    @Param({"TradeStorageWithRunningTotals", "TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns"})
+    public String storageType;
+
+    private TradeReplay replay;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+        Map<String, StockOperations> operations = new LinkedHashMap<>();
+        for (int i = 0; i < SYMBOLS; i++) {
+            operations.put(BenchmarkData.symbol(i), new BasicStockOperations(new CommonDividedFactorFunction(),
+                    new StockData(BigDecimal.ONE, null, BigDecimal.TEN), BenchmarkData.createStorage(storageType, clock)));
+        }
+        SimpleStockMarket stockMarket = new SimpleStockMarket(operations, new LogarithmBasedGeometricMeanFunction());
+        replay = new TradeReplay(stockMarket, clock, Duration.ofSeconds(1), operations.keySet(), sample -> { });
+    }
+
+    @Benchmark
+    public void replay(Blackhole blackhole) {
+        blackhole.consume(replay.replay(new Iterator<Trade>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < TRADES;
+            }
+
+            @Override
+            public Trade next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Trade trade = BenchmarkData.trade(BenchmarkData.symbol(i % SYMBOLS), START.plusNanos(i * TRADE_INTERVAL_MICROS * 1000L), i);
+                i++;
+                return trade;
+            }
+        }));
+    }
+}
@@ -0,0 +1,54 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.Trade;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths of trade storages holding a window of the given size
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TradeStorageBenchmark {
+
+    @Param({"TradeStorageWithOverflowInsurance", "TradeStorageWithRunningTotals", "TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns", "TradeStorageWithOffHeapSlabs"})
+    public String storageType;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int windowSize;
+
+    private ListableTradeStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = (ListableTradeStorage) BenchmarkData.createStorage(storageType);
+        BenchmarkData.fill(storage, "IBM", windowSize);
+    }
+
+    @Benchmark
+    public TradeTotals getValidTradeTotals() {
+        return storage.getValidTradeTotals();
+    }
+
+    @Benchmark
+    public List<Trade> getValidTrades() {
+        return storage.getValidTrades();
+    }
+}
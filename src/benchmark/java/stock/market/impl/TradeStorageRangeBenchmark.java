@@ -0,0 +1,49 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range views of trade storages holding a window of the given size, trades of the last second are counted
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TradeStorageRangeBenchmark {
+
+    @Param({"TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns", "TradeStorageWithOffHeapSlabs"})
+    public String storageType;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int windowSize;
+
+    private RangeListableTradeStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = (RangeListableTradeStorage) BenchmarkData.createStorage(storageType);
+        BenchmarkData.fill(storage, "IBM", windowSize);
+    }
+
+    @Benchmark
+    public long countValidTradesOfLastSecond() {
+        LocalDateTime now = LocalDateTime.now();
+        return storage.getValidTrades(now.minusSeconds(1), now.plusSeconds(1)).count();
+    }
+}
@@ -0,0 +1,54 @@
+package stock.market.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import stock.market.Trade;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record a batch of {@value #BATCH_SIZE} trades into a storage prefilled with the window.
+ * The storage is recreated for every iteration, so memory does not grow with the benchmark time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = TradeStorageRecordBenchmark.BATCH_SIZE)
+@Measurement(iterations = 5, batchSize = TradeStorageRecordBenchmark.BATCH_SIZE)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TradeStorageRecordBenchmark {
+
+    static final int BATCH_SIZE = 100_000;
+
+    @Param({"TradeStorageWithOverflowInsurance", "TradeStorageWithRunningTotals", "TradeStorageWithTimeBuckets", "TradeStorageWithPrimitiveColumns", "TradeStorageWithOffHeapSlabs", "TradeStorageWithSketches"})
+    public String storageType;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int windowSize;
+
+    private TradeStorage storage;
+    private Trade trade;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        storage = BenchmarkData.createStorage(storageType);
+        BenchmarkData.fill(storage, "IBM", windowSize);
+        trade = BenchmarkData.trade("IBM", LocalDateTime.now(), 1);
+    }
+
+    @Benchmark
+    public void record() {
+        storage.record(trade);
+    }
+}
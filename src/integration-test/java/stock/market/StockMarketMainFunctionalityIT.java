@@ -6,10 +6,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import stock.market.impl.PublishingStockMarket;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.Arrays.asList;
 import static org.fest.assertions.Assertions.assertThat;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -18,6 +24,8 @@ import static org.fest.assertions.Assertions.assertThat;
 public class StockMarketMainFunctionalityIT {
     @Autowired
     private StockMarket stockMarket;
+    @Autowired
+    private PublishingStockMarket publishingStockMarket;
 
     @Test
     public void shouldCalculatePERatioForCommonType() {
@@ -46,6 +54,76 @@ public class StockMarketMainFunctionalityIT {
         assertThat(result).isEqualByComparingTo(new BigDecimal("0.2"));
     }
 
+    @Test
+    public void shouldCalculateForResolvedStockSymbol() {
+        //given
+        StockSymbol gin = stockMarket.resolve("GIN");
+        //when
+        BigDecimal result = stockMarket.calculatePERatio(gin, BigDecimal.TEN);
+        //then
+        assertThat(result).isEqualByComparingTo(new BigDecimal("50"));
+    }
+
+    @Test
+    public void shouldCalculateVolumeWeightedStockPriceOfHorizon() throws Exception {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+        stockMarket.record(new Trade("TEA", now.minusMinutes(3), 1L, Site.Buy, new BigDecimal("1000")));
+        stockMarket.record(new Trade("TEA", now, 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        BigDecimal lastMinute = stockMarket.calculateVolumeWeightedStockPrice("TEA", Duration.ofMinutes(1));
+        BigDecimal lastFiveMinutes = stockMarket.calculateVolumeWeightedStockPrice("TEA", Duration.ofMinutes(5));
+        //then
+        assertThat(lastMinute).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(lastFiveMinutes).isEqualByComparingTo(new BigDecimal("505"));
+    }
+
+    @Test
+    public void shouldCalculateOrderFlow() throws Exception {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+        stockMarket.record(new Trade("TEA", now, 3L, Site.Buy, BigDecimal.TEN));
+        stockMarket.record(new Trade("TEA", now, 1L, Site.Sell, new BigDecimal("20")));
+        //when
+        OrderFlow result = stockMarket.calculateOrderFlow("TEA");
+        //then
+        assertThat(result.getBuyVolumeWeightedStockPrice()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(result.getSellVolumeWeightedStockPrice()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(result.getImbalance()).isEqualByComparingTo(new BigDecimal("0.5"));
+    }
+
+    @Test
+    public void shouldAggregateBars() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.now().withSecond(0).withNano(0);
+        stockMarket.record(new Trade("TEA", start.plusSeconds(1), 1L, Site.Buy, BigDecimal.TEN));
+        stockMarket.record(new Trade("TEA", start.plusSeconds(2), 2L, Site.Sell, new BigDecimal("12")));
+        stockMarket.record(new Trade("TEA", start.plusSeconds(3), 3L, Site.Buy, new BigDecimal("9")));
+        //when
+        List<Bar> bars = stockMarket.getBars("TEA", Duration.ofMinutes(1), start, start.plusMinutes(1));
+        //then
+        assertThat(bars).hasSize(1);
+        assertThat(bars.get(0).getStart()).isEqualTo(start);
+        assertThat(bars.get(0).getOpen()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(bars.get(0).getHigh()).isEqualByComparingTo(new BigDecimal("12"));
+        assertThat(bars.get(0).getLow()).isEqualByComparingTo(new BigDecimal("9"));
+        assertThat(bars.get(0).getClose()).isEqualByComparingTo(new BigDecimal("9"));
+        assertThat(bars.get(0).getVolume()).isEqualTo(6L);
+    }
+
+    @Test
+    public void shouldCalculatePriceQuantile() throws Exception {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+        stockMarket.record(new Trade("TEA", now, 1L, Site.Buy, BigDecimal.TEN));
+        stockMarket.record(new Trade("TEA", now, 3L, Site.Sell, new BigDecimal("12")));
+        stockMarket.record(new Trade("TEA", now, 1L, Site.Buy, new BigDecimal("15")));
+        //when
+        BigDecimal median = stockMarket.calculatePriceQuantile("TEA", 0.5);
+        //then
+        assertThat(median).isEqualByComparingTo(new BigDecimal("12"));
+    }
+
     @Test
     public void shouldCalculateVolumeWeightedStockPrice() throws Exception {
         //given
@@ -60,6 +138,21 @@ public class StockMarketMainFunctionalityIT {
         assertThat(result).isEqualByComparingTo(new BigDecimal("12"));
     }
 
+    @Test
+    public void shouldRecordBatchOfTrades() throws Exception {
+        //given
+        Trade invalid = new Trade("TEA", LocalDateTime.now(), 0L, Site.Buy, new BigDecimal("30"));
+        //when
+        List<RejectedTrade> rejected = stockMarket.recordAll(asList(
+                new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, new BigDecimal("20")),
+                invalid,
+                new Trade("TEA", LocalDateTime.now(), 4L, Site.Buy, new BigDecimal("10"))));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(invalid);
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice("TEA")).isEqualByComparingTo(new BigDecimal("12"));
+    }
+
     @Test
     public void shouldCalculateGBCE() throws Exception {
         //given
@@ -73,4 +166,27 @@ public class StockMarketMainFunctionalityIT {
         //then
         assertThat(result).isEqualByComparingTo(new BigDecimal("5"));
     }
+
+    @Test
+    public void shouldPushVolumeWeightedStockPriceToSubscriber() throws Exception {
+        //given
+        CountDownLatch received = new CountDownLatch(1);
+        publishingStockMarket.subscribe(new StockMarketListener() {
+            @Override
+            public void onStockUpdate(StockUpdate update) {
+                if (update.getStockSymbol().equals("TEA") && update.getVolumeWeightedStockPrice().compareTo(new BigDecimal("12")) == 0) {
+                    received.countDown();
+                }
+            }
+
+            @Override
+            public void onGBCE(BigDecimal gbce) {
+            }
+        });
+        //when
+        publishingStockMarket.record(new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, new BigDecimal("20")));
+        publishingStockMarket.record(new Trade("TEA", LocalDateTime.now(), 4L, Site.Buy, new BigDecimal("10")));
+        //then
+        assertThat(received.await(10, TimeUnit.SECONDS)).isTrue();
+    }
 }
@@ -0,0 +1,23 @@
+package stock.market;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * OHLCV bar of trades with timestamp in [start, start + interval). Open and close are prices of trades with the oldest and the newest timestamp.
+ */
+@Getter
+@AllArgsConstructor
+public class Bar {
+    private final LocalDateTime start;
+    private final Duration interval;
+    private final BigDecimal open;
+    private final BigDecimal high;
+    private final BigDecimal low;
+    private final BigDecimal close;
+    private final long volume;
+}
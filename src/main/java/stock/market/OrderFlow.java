@@ -0,0 +1,21 @@
+package stock.market;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Volume Weighted Stock Price and volume of buy trades and of sell trades valid within the retention time.
+ * Imbalance is (buy volume - sell volume) / (buy volume + sell volume), from -1 when only sold to 1 when only bought,
+ * zero if there are no trades. Trades without site are counted on neither side.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderFlow {
+    private final BigDecimal buyVolumeWeightedStockPrice;
+    private final long buyVolume;
+    private final BigDecimal sellVolumeWeightedStockPrice;
+    private final long sellVolume;
+    private final BigDecimal imbalance;
+}
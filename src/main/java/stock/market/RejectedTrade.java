@@ -0,0 +1,14 @@
+package stock.market;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Trade rejected from a batch together with the reason of rejection
+ */
+@Getter
+@AllArgsConstructor
+public class RejectedTrade {
+    private Trade trade;
+    private String reason;
+}
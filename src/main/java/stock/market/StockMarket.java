@@ -1,12 +1,26 @@
 package stock.market;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * This is <b>facade</b> interface.
  * Created by g on 11/16/2016.
  */
 public interface StockMarket {
+
+    /**
+     * Resolve stock symbol once, so following calls skip looking it up by name
+     *
+     * @param stockSymbol stock symbol supported by the service
+     * @return resolved stock symbol
+     *
+     * @throws NotRecognizedStockException if stock symbol is not supported
+     */
+    StockSymbol resolve(String stockSymbol);
  
     /**
      * Calculate Divided Yield factor
@@ -19,6 +33,13 @@ public interface StockMarket {
      */
     BigDecimal calculateDividedYield(String stockSymbol, BigDecimal price);
 
+    /**
+     * Calculate Divided Yield factor of resolved stock symbol
+     *
+     * @see #calculateDividedYield(String, BigDecimal)
+     */
+    BigDecimal calculateDividedYield(StockSymbol stockSymbol, BigDecimal price);
+
     /**
      * Calculate P/E Ratio factor
      *
@@ -30,6 +51,13 @@ public interface StockMarket {
      */
     BigDecimal calculatePERatio(String stockSymbol, BigDecimal price);
 
+    /**
+     * Calculate P/E Ratio factor of resolved stock symbol
+     *
+     * @see #calculatePERatio(String, BigDecimal)
+     */
+    BigDecimal calculatePERatio(StockSymbol stockSymbol, BigDecimal price);
+
     /**
      * Record trade
      *
@@ -39,6 +67,28 @@ public interface StockMarket {
      */
     void record(Trade trade);
 
+    /**
+     * Record batch of trades. Invalid trades are rejected without aborting the rest of the batch.
+     *
+     * @param trades trades to record
+     * @return rejected trades with reasons, empty if all trades were recorded
+     */
+    List<RejectedTrade> recordAll(Collection<Trade> trades);
+
+    /**
+     * Record trade of resolved stock symbol, the trade stock symbol have to be the resolved one
+     *
+     * @see #record(Trade)
+     */
+    void record(StockSymbol stockSymbol, Trade trade);
+
+    /**
+     * Record batch of trades of resolved stock symbol. Trades of other stock symbols are rejected.
+     *
+     * @see #recordAll(Collection)
+     */
+    List<RejectedTrade> recordAll(StockSymbol stockSymbol, Collection<Trade> trades);
+
     /**
      * Calculate Volume Weighted Stock Price factor
      *
@@ -49,6 +99,85 @@ public interface StockMarket {
      */
     BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol);
 
+    /**
+     * Calculate Volume Weighted Stock Price factor of resolved stock symbol
+     *
+     * @see #calculateVolumeWeightedStockPrice(String)
+     */
+    BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol);
+
+    /**
+     * Calculate Volume Weighted Stock Price factor of trades within the horizon
+     *
+     * @param stockSymbol stock symbol supported by the service
+     * @param horizon have to be > 0 and <= retention time of trades
+     * @return calculated Volume Weight Stock Price
+     *
+     * @throws IllegalArgumentException if horizon is not valid or if stock symbol is empty or not supported
+     */
+    BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol, Duration horizon);
+
+    /**
+     * Calculate Volume Weighted Stock Price factor of trades of resolved stock symbol within the horizon
+     *
+     * @see #calculateVolumeWeightedStockPrice(String, Duration)
+     */
+    BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol, Duration horizon);
+
+    /**
+     * Calculate Volume Weighted Stock Price and volume of buy and sell trades and their imbalance
+     *
+     * @param stockSymbol stock symbol supported by the service
+     * @return order flow of valid trades
+     *
+     * @throws IllegalArgumentException if stock symbol is empty or not supported
+     */
+    OrderFlow calculateOrderFlow(String stockSymbol);
+
+    /**
+     * Calculate order flow of resolved stock symbol
+     *
+     * @see #calculateOrderFlow(String)
+     */
+    OrderFlow calculateOrderFlow(StockSymbol stockSymbol);
+
+    /**
+     * Calculate price quantile of valid trades weighted by quantity, e.g. 0.5 for median price.
+     * Storages keeping sketches instead of trades return approximate quantiles.
+     *
+     * @param stockSymbol stock symbol supported by the service
+     * @param quantile have to be >= 0 and <= 1
+     * @return price quantile, zero if there are no valid trades
+     *
+     * @throws IllegalArgumentException if quantile is not valid or if stock symbol is empty or not supported
+     */
+    BigDecimal calculatePriceQuantile(String stockSymbol, double quantile);
+
+    /**
+     * Calculate price quantile of valid trades of resolved stock symbol
+     *
+     * @see #calculatePriceQuantile(String, double)
+     */
+    BigDecimal calculatePriceQuantile(StockSymbol stockSymbol, double quantile);
+
+    /**
+     * Get OHLCV bars aggregated while recording trades
+     *
+     * @param stockSymbol stock symbol supported by the service
+     * @param interval width of bars
+     * @return bars with start in [from, to) ordered by start, the last one can be still in progress
+     *
+     * @throws IllegalArgumentException if bars of the interval are not aggregated or if stock symbol is empty or not supported
+     */
+    List<Bar> getBars(String stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Get OHLCV bars of resolved stock symbol
+     *
+     * @see #getBars(String, Duration, LocalDateTime, LocalDateTime)
+     */
+    List<Bar> getBars(StockSymbol stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to);
+
     /**
      * Calculate GBCE factor
      *
@@ -0,0 +1,20 @@
+package stock.market;
+
+import java.math.BigDecimal;
+
+/**
+ * Subscriber of changes pushed by stock market. Only the latest value of every stock symbol and of GBCE is delivered,
+ * values changed while the listener was busy are <b>conflated</b>. Calls of one listener never overlap.
+ */
+public interface StockMarketListener {
+
+    /**
+     * @param update changed Volume Weighted Stock Price or ratios of a stock symbol
+     */
+    void onStockUpdate(StockUpdate update);
+
+    /**
+     * @param gbce changed GBCE factor
+     */
+    void onGBCE(BigDecimal gbce);
+}
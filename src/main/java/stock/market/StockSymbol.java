@@ -0,0 +1,14 @@
+package stock.market;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Stock symbol resolved once by {@link StockMarket#resolve(String)}, calls taking it skip looking the symbol up by name
+ */
+@Getter
+@AllArgsConstructor
+public final class StockSymbol {
+    private final int id;
+    private final String name;
+}
@@ -0,0 +1,19 @@
+package stock.market;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Volume Weighted Stock Price of a stock symbol with Dividend Yield and P/E Ratio at that price,
+ * ratios are zero if there are no valid trades.
+ */
+@Getter
+@AllArgsConstructor
+public class StockUpdate {
+    private final String stockSymbol;
+    private final BigDecimal volumeWeightedStockPrice;
+    private final BigDecimal dividedYield;
+    private final BigDecimal peRatio;
+}
@@ -0,0 +1,105 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Decorator of stock operations adding every trade recorded by the delegate to {@link BarAggregator},
+ * so OHLCV bars are built while recording instead of from exported trades.
+ */
+public class AggregatingStockOperations implements StockOperations {
+
+    private final StockOperations delegate;
+    private final BarAggregator aggregator;
+
+    public AggregatingStockOperations(StockOperations delegate, BarAggregator aggregator) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (aggregator == null) {
+            throw new IllegalArgumentException("aggregator cannot be null");
+        }
+        this.delegate = delegate;
+        this.aggregator = aggregator;
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(BigDecimal price) {
+        return delegate.calculateDividedYield(price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(BigDecimal price) {
+        return delegate.calculatePERatio(price);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        delegate.record(trade);
+        aggregator.add(trade);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<RejectedTrade> rejected = delegate.recordAll(trades);
+        if (rejected.isEmpty()) {
+            trades.forEach(aggregator::add);
+        } else {
+            Set<Trade> notRecorded = Collections.newSetFromMap(new IdentityHashMap<>());
+            rejected.forEach(r -> notRecorded.add(r.getTrade()));
+            for (Trade trade : trades) {
+                if (!notRecorded.contains(trade)) {
+                    aggregator.add(trade);
+                }
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice() {
+        return delegate.calculateVolumeWeightedStockPrice();
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(Duration horizon) {
+        return delegate.calculateVolumeWeightedStockPrice(horizon);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow() {
+        return delegate.calculateOrderFlow();
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(double quantile) {
+        return delegate.calculatePriceQuantile(quantile);
+    }
+
+    @Override
+    public List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to) {
+        return aggregator.getBars(interval, from, to);
+    }
+
+    @Override
+    public StockOperations withStockData(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData) {
+        return new AggregatingStockOperations(delegate.withStockData(dividedYieldProvider, stockData), aggregator);
+    }
+
+    @Override
+    public ExpiringPrice calculateExpiringVolumeWeightedStockPrice() {
+        return delegate.calculateExpiringVolumeWeightedStockPrice();
+    }
+}
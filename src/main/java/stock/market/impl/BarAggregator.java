@@ -0,0 +1,194 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rolling <b>OHLCV bars</b> of one stock symbol for several intervals. Bars are aligned to the local time of trade timestamps,
+ * periods without trades have no bar. Bars of an interval are kept in a preallocated <b>history ring</b> of primitive columns
+ * and price references, the newest bar is the one in progress and the oldest bar is overwritten when the ring is full,
+ * so adding a trade allocates nothing. Trade older than the newest bar updates the bar of its period if it is still in the ring,
+ * otherwise it is skipped. Aggregator is not thread-safe.
+ */
+public class BarAggregator {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final Series[] series;
+    private long skippedTradeCount;
+
+    /**
+     * @param intervals   widths of aggregated bars
+     * @param historySize number of completed bars kept for every interval
+     */
+    public BarAggregator(List<Duration> intervals, int historySize) {
+        if (intervals == null || intervals.isEmpty()) {
+            throw new IllegalArgumentException("intervals cannot be empty");
+        }
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("historySize have to be > 0");
+        }
+        this.series = new Series[intervals.size()];
+        for (int i = 0; i < series.length; i++) {
+            Duration interval = intervals.get(i);
+            if (interval == null || interval.toNanos() <= 0) {
+                throw new IllegalArgumentException("interval have to be > 0");
+            }
+            series[i] = new Series(interval, historySize + 1);
+        }
+    }
+
+    /**
+     * Adds valid trade to bars of all intervals
+     */
+    public void add(Trade trade) {
+        long time = toLocalNanos(trade.getTimestamp());
+        for (Series s : series) {
+            if (!s.add(time, trade.getPrice(), trade.getQuantity())) {
+                skippedTradeCount++;
+            }
+        }
+    }
+
+    /**
+     * @return bars of the interval with start in [from, to) ordered by start, the last one can be still in progress
+     * @throws IllegalArgumentException if the interval is not aggregated
+     */
+    public List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to) {
+        if (interval == null) {
+            throw new IllegalArgumentException("interval cannot be null");
+        }
+        for (Series s : series) {
+            if (s.interval.equals(interval)) {
+                return s.bars(toLocalNanos(from), toLocalNanos(to));
+            }
+        }
+        throw new IllegalArgumentException("interval is not aggregated: " + interval);
+    }
+
+    /**
+     * @return number of times a trade was skipped because the bar of its period was not in the ring, counted once per interval
+     */
+    public long getSkippedTradeCount() {
+        return skippedTradeCount;
+    }
+
+    private static long toLocalNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    private static LocalDateTime toLocalDateTime(long localNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localNanos, NANOS_PER_SECOND), (int) Math.floorMod(localNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    private static final class Series {
+        private final Duration interval;
+        private final long widthNanos;
+        private final long[] starts;
+        private final long[] openTimes;
+        private final long[] closeTimes;
+        private final long[] volumes;
+        private final BigDecimal[] opens;
+        private final BigDecimal[] highs;
+        private final BigDecimal[] lows;
+        private final BigDecimal[] closes;
+        private int head;
+        private int size;
+
+        private Series(Duration interval, int capacity) {
+            this.interval = interval;
+            this.widthNanos = interval.toNanos();
+            this.starts = new long[capacity];
+            this.openTimes = new long[capacity];
+            this.closeTimes = new long[capacity];
+            this.volumes = new long[capacity];
+            this.opens = new BigDecimal[capacity];
+            this.highs = new BigDecimal[capacity];
+            this.lows = new BigDecimal[capacity];
+            this.closes = new BigDecimal[capacity];
+        }
+
+        /**
+         * @return false if the trade was skipped
+         */
+        private boolean add(long time, BigDecimal price, long quantity) {
+            long start = Math.floorDiv(time, widthNanos) * widthNanos;
+            if (size == 0 || start > starts[index(size - 1)]) {
+                open(start, time, price, quantity);
+                return true;
+            }
+            int position = firstPositionNotBefore(start);
+            if (position == size || starts[index(position)] != start) {
+                return false;
+            }
+            int index = index(position);
+            if (price.compareTo(highs[index]) > 0) {
+                highs[index] = price;
+            }
+            if (price.compareTo(lows[index]) < 0) {
+                lows[index] = price;
+            }
+            if (time < openTimes[index]) {
+                opens[index] = price;
+                openTimes[index] = time;
+            }
+            if (time >= closeTimes[index]) {
+                closes[index] = price;
+                closeTimes[index] = time;
+            }
+            volumes[index] += quantity;
+            return true;
+        }
+
+        private void open(long start, long time, BigDecimal price, long quantity) {
+            if (size == starts.length) {
+                head = (head + 1) % starts.length;
+                size--;
+            }
+            int index = index(size++);
+            starts[index] = start;
+            openTimes[index] = time;
+            closeTimes[index] = time;
+            volumes[index] = quantity;
+            opens[index] = price;
+            highs[index] = price;
+            lows[index] = price;
+            closes[index] = price;
+        }
+
+        private List<Bar> bars(long from, long to) {
+            List<Bar> result = new ArrayList<>();
+            for (int position = firstPositionNotBefore(from); position < size && starts[index(position)] < to; position++) {
+                int index = index(position);
+                result.add(new Bar(toLocalDateTime(starts[index]), interval, opens[index], highs[index], lows[index], closes[index], volumes[index]));
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        private int firstPositionNotBefore(long start) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (starts[index(middle)] < start) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int index(int position) {
+            return (head + position) % starts.length;
+        }
+    }
+}
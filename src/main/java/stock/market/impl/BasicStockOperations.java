@@ -1,8 +1,15 @@
 package stock.market.impl;
 
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.Site;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
 
@@ -15,17 +22,12 @@ public class BasicStockOperations implements StockOperations {
     private static final int PRECISION = 16;
 
     private final TradeStorage tradeStorage;
-    private final Function<StockData, BigDecimal> dividedYieldProvider;
-    private final StockData stockData;
+    /**
+     * result of dividedYieldProvider precomputed for the stock data
+     */
+    private final BigDecimal dividend;
 
     public BasicStockOperations(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData, TradeStorage tradeStorage) {
-        this.dividedYieldProvider = dividedYieldProvider;
-        this.stockData = stockData;
-        this.tradeStorage = tradeStorage;
-        validate();
-    }
-
-    private void validate() {
         if (dividedYieldProvider == null) {
             throw new IllegalArgumentException("dividedYieldProvider cannot be null");
         }
@@ -35,11 +37,22 @@ public class BasicStockOperations implements StockOperations {
         if (tradeStorage == null) {
             throw new IllegalArgumentException("tradeStorage cannot be null");
         }
+        BigDecimal dividend = dividedYieldProvider.apply(stockData);
+        if (dividend == null) {
+            throw new IllegalArgumentException("dividend cannot be calculated from stock data");
+        }
+        this.tradeStorage = tradeStorage;
+        this.dividend = dividend;
+    }
+
+    @Override
+    public StockOperations withStockData(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData) {
+        return new BasicStockOperations(dividedYieldProvider, stockData, tradeStorage);
     }
 
     @Override
     public BigDecimal calculateDividedYield(BigDecimal price) {
-        return dividedYieldProvider.apply(stockData).divide(price, PRECISION, ROUNDING_POLICY);
+        return dividend.divide(price, PRECISION, ROUNDING_POLICY);
     }
 
     @Override
@@ -56,20 +69,58 @@ public class BasicStockOperations implements StockOperations {
         tradeStorage.record(trade);
     }
 
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        return tradeStorage.recordAll(trades);
+    }
+
     @Override
     public BigDecimal calculateVolumeWeightedStockPrice() {
-        List<Trade> trades = tradeStorage.getValidTrades();
-        if (trades.isEmpty()) {
+        return calculateVolumeWeightedStockPrice(tradeStorage.getValidTradeTotals());
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(Duration horizon) {
+        return calculateVolumeWeightedStockPrice(tradeStorage.getValidTradeTotals(horizon));
+    }
+
+    /**
+     * Totals of both sites are kept by trade storage, so nothing is rescanned
+     */
+    @Override
+    public OrderFlow calculateOrderFlow() {
+        TradeTotals buy = tradeStorage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = tradeStorage.getValidTradeTotals(Site.Sell);
+        long volume = buy.getQuantity() + sell.getQuantity();
+        BigDecimal imbalance = volume == 0L ? BigDecimal.ZERO
+                : BigDecimal.valueOf(buy.getQuantity() - sell.getQuantity()).divide(BigDecimal.valueOf(volume), PRECISION, ROUNDING_POLICY);
+        return new OrderFlow(calculateVolumeWeightedStockPrice(buy), buy.getQuantity(),
+                calculateVolumeWeightedStockPrice(sell), sell.getQuantity(), imbalance);
+    }
+
+    /**
+     * Bars are not aggregated, see {@link AggregatingStockOperations}
+     */
+    @Override
+    public List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to) {
+        throw new IllegalArgumentException("interval is not aggregated: " + interval);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(double quantile) {
+        return tradeStorage.getValidTradePriceQuantile(quantile);
+    }
+
+    private static BigDecimal calculateVolumeWeightedStockPrice(TradeTotals totals) {
+        if (totals.isEmpty()) {
             return BigDecimal.ZERO;
         }
-        BigDecimal counter = trades.stream()
-                .map(t -> t.getPrice().multiply(BigDecimal.valueOf(t.getQuantity())))
-                .reduce(BigDecimal::add).get();
-        long denominator = trades.stream()
-                .map(Trade::getQuantity)
-                .reduce((a, b) -> a + b)
-                .get();
-
-        return counter.divide(BigDecimal.valueOf(denominator), PRECISION, ROUNDING_POLICY);
+        return totals.getTurnover().divide(BigDecimal.valueOf(totals.getQuantity()), PRECISION, ROUNDING_POLICY);
+    }
+
+    @Override
+    public ExpiringPrice calculateExpiringVolumeWeightedStockPrice() {
+        TradeTotals totals = tradeStorage.getValidTradeTotals();
+        return new ExpiringPrice(calculateVolumeWeightedStockPrice(totals), totals.getExpiry());
     }
 }
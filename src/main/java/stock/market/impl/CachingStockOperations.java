@@ -0,0 +1,127 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Decorator of stock operations keeping Dividend Yield and P/E Ratio of recently asked prices in a <b>bounded LRU cache</b>.
+ * Prices are compared with {@link BigDecimal#equals(Object)}, so the same price with a different scale is cached separately.
+ * Operations with other stock data have their own cache. Cache is guarded by its own monitor, so decorator may be wrapped by ConcurrentStockOperations.
+ */
+public class CachingStockOperations implements StockOperations {
+
+    private final StockOperations delegate;
+    private final int maxSize;
+    private final Map<BigDecimal, CachedRatios> cache;
+
+    public CachingStockOperations(StockOperations delegate, int maxSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize have to be > 0");
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<BigDecimal, CachedRatios>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BigDecimal, CachedRatios> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(BigDecimal price) {
+        CachedRatios ratios = get(price);
+        if (ratios.dividedYield == null) {
+            ratios.dividedYield = delegate.calculateDividedYield(price);
+        }
+        return ratios.dividedYield;
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(BigDecimal price) {
+        CachedRatios ratios = get(price);
+        if (ratios.peRatio == null) {
+            ratios.peRatio = delegate.calculatePERatio(price);
+        }
+        return ratios.peRatio;
+    }
+
+    private CachedRatios get(BigDecimal price) {
+        synchronized (cache) {
+            return cache.computeIfAbsent(price, p -> new CachedRatios());
+        }
+    }
+
+    /**
+     * Operations with other stock data start with an empty cache
+     */
+    @Override
+    public StockOperations withStockData(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData) {
+        return new CachingStockOperations(delegate.withStockData(dividedYieldProvider, stockData), maxSize);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        delegate.record(trade);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        return delegate.recordAll(trades);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice() {
+        return delegate.calculateVolumeWeightedStockPrice();
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(Duration horizon) {
+        return delegate.calculateVolumeWeightedStockPrice(horizon);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow() {
+        return delegate.calculateOrderFlow();
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(double quantile) {
+        return delegate.calculatePriceQuantile(quantile);
+    }
+
+    @Override
+    public List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to) {
+        return delegate.getBars(interval, from, to);
+    }
+
+    @Override
+    public ExpiringPrice calculateExpiringVolumeWeightedStockPrice() {
+        return delegate.calculateExpiringVolumeWeightedStockPrice();
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static final class CachedRatios {
+        private volatile BigDecimal dividedYield;
+        private volatile BigDecimal peRatio;
+    }
+}
@@ -0,0 +1,66 @@
+package stock.market.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock <b>cached</b> in a volatile field and refreshed by a background daemon thread with the given resolution,
+ * so reading time on hot paths is a single memory read. Trades can expire up to one resolution late.
+ */
+public class CoarseMarketClock implements MarketClock, AutoCloseable {
+
+    private final MarketClock source;
+    private final ScheduledExecutorService scheduler;
+    private volatile long currentTimeNanos;
+
+    public CoarseMarketClock(Duration resolution) {
+        this(new SystemMarketClock(), resolution);
+    }
+
+    public CoarseMarketClock(MarketClock source, Duration resolution) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+        if (resolution.toMillis() <= 0) {
+            throw new IllegalArgumentException("resolution have to be >= 1ms");
+        }
+        this.source = source;
+        this.currentTimeNanos = source.currentTimeNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "coarse-market-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> currentTimeNanos = source.currentTimeNanos(),
+                resolution.toMillis(), resolution.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return currentTimeNanos;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return source.getZone();
+    }
+
+    @Override
+    public long toEpochNanos(LocalDateTime timestamp) {
+        return source.toEpochNanos(timestamp);
+    }
+
+    @Override
+    public LocalDateTime toLocalDateTime(long epochNanos) {
+        return source.toLocalDateTime(epochNanos);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
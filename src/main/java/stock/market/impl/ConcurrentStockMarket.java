@@ -0,0 +1,138 @@
+package stock.market.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread-safe facade. Every stock symbol is guarded by its own lock (see {@link ConcurrentStockOperations}).
+ * GBCE is calculated from Volume Weighted Stock Prices published by every symbol, so it locks none of them.
+ * It never mixes state from before and after a single write of a symbol, prices of different symbols can be published at different moments.
+ * Prices of symbols whose oldest trade expired can be refreshed <b>in parallel</b> on a fork-join pool, ranges of symbols are split
+ * into tasks of at most {@value #SYMBOLS_PER_TASK} symbols. Prices are still collected in symbol order,
+ * so GBCE is the same as when refreshed in the calling thread.
+ * Added stock symbols are wrapped as well, operations with reloaded stock data share lock and published price with replaced ones. Publishing on every write is cheap only for trade storages keeping running totals.
+ */
+public class ConcurrentStockMarket extends SimpleStockMarket {
+
+    static final int SYMBOLS_PER_TASK = 64;
+
+    private final Function<List<BigDecimal>, BigDecimal> geometricMeanFunction;
+    private final MarketClock clock;
+    private final ForkJoinPool gbcePool;
+
+    public ConcurrentStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction) {
+        this(stockSymbolToOperationDelegator, geometricMeanFunction, new SystemMarketClock());
+    }
+
+    /**
+     * @param gbcePool pool refreshing expired Volume Weighted Stock Prices of all symbols when GBCE is calculated
+     */
+    public ConcurrentStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction,
+                                 ForkJoinPool gbcePool) {
+        this(stockSymbolToOperationDelegator, geometricMeanFunction, new SystemMarketClock(), requirePool(gbcePool));
+    }
+
+    /**
+     * @param clock clock of trade storages, it tells when published prices expire
+     */
+    public ConcurrentStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction,
+                                 MarketClock clock) {
+        this(toConcurrent(stockSymbolToOperationDelegator, requireClock(clock)), geometricMeanFunction, clock, null);
+    }
+
+    public ConcurrentStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction,
+                                 MarketClock clock, ForkJoinPool gbcePool) {
+        this(toConcurrent(stockSymbolToOperationDelegator, requireClock(clock)), geometricMeanFunction, clock, requirePool(gbcePool));
+    }
+
+    private ConcurrentStockMarket(LinkedHashMap<String, ConcurrentStockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction,
+                                  MarketClock clock, ForkJoinPool gbcePool) {
+        super(new LinkedHashMap<>(stockSymbolToOperationDelegator), geometricMeanFunction);
+        this.geometricMeanFunction = geometricMeanFunction;
+        this.clock = clock;
+        this.gbcePool = gbcePool;
+    }
+
+    private static MarketClock requireClock(MarketClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        return clock;
+    }
+
+    private static ForkJoinPool requirePool(ForkJoinPool gbcePool) {
+        if (gbcePool == null) {
+            throw new IllegalArgumentException("gbcePool cannot be null");
+        }
+        return gbcePool;
+    }
+
+    /**
+     * Added operations are wrapped, updated ones are built from operations wrapped already
+     */
+    @Override
+    public synchronized void reload(Map<String, UnaryOperator<StockOperations>> updated, Map<String, StockOperations> added) {
+        super.reload(updated, new LinkedHashMap<>(toConcurrent(added, clock)));
+    }
+
+    private static LinkedHashMap<String, ConcurrentStockOperations> toConcurrent(Map<String, StockOperations> stockSymbolToOperationDelegator, MarketClock clock) {
+        LinkedHashMap<String, ConcurrentStockOperations> result = new LinkedHashMap<>();
+        stockSymbolToOperationDelegator.forEach((symbol, operations) -> result.put(symbol, new ConcurrentStockOperations(operations, clock)));
+        return result;
+    }
+
+    @Override
+    public BigDecimal calculateGBCE() {
+        StockSymbolRegistry registry = getRegistry();
+        BigDecimal[] prices = new BigDecimal[registry.size()];
+        if (gbcePool == null) {
+            collect(registry, prices, 0, prices.length);
+        } else {
+            gbcePool.invoke(new CollectTask(registry, prices, 0, prices.length));
+        }
+        List<BigDecimal> stockPrices = new ArrayList<>(prices.length);
+        for (BigDecimal price : prices) {
+            if (price.compareTo(BigDecimal.ZERO) != 0) {
+                stockPrices.add(price);
+            }
+        }
+        return geometricMeanFunction.apply(stockPrices);
+    }
+
+    private static void collect(StockSymbolRegistry registry, BigDecimal[] prices, int from, int to) {
+        for (int i = from; i < to; i++) {
+            prices[i] = registry.get(i).calculateVolumeWeightedStockPrice();
+        }
+    }
+
+    private static final class CollectTask extends RecursiveAction {
+        private final StockSymbolRegistry registry;
+        private final BigDecimal[] prices;
+        private final int from;
+        private final int to;
+
+        private CollectTask(StockSymbolRegistry registry, BigDecimal[] prices, int from, int to) {
+            this.registry = registry;
+            this.prices = prices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SYMBOLS_PER_TASK) {
+                collect(registry, prices, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CollectTask(registry, prices, from, middle), new CollectTask(registry, prices, middle, to));
+        }
+    }
+}
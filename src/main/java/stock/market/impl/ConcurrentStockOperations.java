@@ -0,0 +1,180 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Thread-safe decorator of stock operations for a single stock symbol.
+ * Writers are serialized by a lock owned by the symbol, so writers of different symbols never contend.
+ * Every write publishes an immutable snapshot of Volume Weighted Stock Price and its expiry through an atomic reference.
+ * Readers return the snapshot until it expires, so they neither lock nor sum trades. An expired snapshot is refreshed
+ * by a reader only if the lock is free, otherwise the last published value is returned, so readers never wait for writers.
+ * Publishing on every write is cheap only for trade storages keeping running totals.
+ * Operations with other stock data share the lock and the published snapshot with these ones.
+ */
+public class ConcurrentStockOperations implements StockOperations {
+
+    private static final Snapshot NOT_PUBLISHED = new Snapshot(ExpiringPrice.EMPTY, Long.MIN_VALUE);
+
+    private final StockOperations delegate;
+    private final MarketClock clock;
+    private final ReentrantLock lock;
+    private final AtomicReference<Snapshot> published;
+
+    public ConcurrentStockOperations(StockOperations delegate) {
+        this(delegate, new SystemMarketClock());
+    }
+
+    /**
+     * @param clock clock of trade storage of the delegate, it tells when the published price expires
+     */
+    public ConcurrentStockOperations(StockOperations delegate, MarketClock clock) {
+        this(delegate, clock, new ReentrantLock(), new AtomicReference<>(NOT_PUBLISHED));
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+    }
+
+    private ConcurrentStockOperations(StockOperations delegate, MarketClock clock, ReentrantLock lock, AtomicReference<Snapshot> published) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        this.delegate = delegate;
+        this.clock = clock;
+        this.lock = lock;
+        this.published = published;
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(BigDecimal price) {
+        return delegate.calculateDividedYield(price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(BigDecimal price) {
+        return delegate.calculatePERatio(price);
+    }
+
+    @Override
+    public StockOperations withStockData(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData) {
+        return new ConcurrentStockOperations(delegate.withStockData(dividedYieldProvider, stockData), clock, lock, published);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        lock.lock();
+        try {
+            delegate.record(trade);
+            publish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        lock.lock();
+        try {
+            List<RejectedTrade> rejected = delegate.recordAll(trades);
+            publish();
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice() {
+        return calculateExpiringVolumeWeightedStockPrice().getPrice();
+    }
+
+    /**
+     * @return published snapshot, refreshed first if it expired and the lock is free
+     */
+    @Override
+    public ExpiringPrice calculateExpiringVolumeWeightedStockPrice() {
+        Snapshot snapshot = published.get();
+        if (clock.currentTimeNanos() > snapshot.expiryNanos && lock.tryLock()) {
+            try {
+                snapshot = publish();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return snapshot.value;
+    }
+
+    /**
+     * Only the retention time VWAP is published, other horizons are calculated under the lock
+     */
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(Duration horizon) {
+        lock.lock();
+        try {
+            return delegate.calculateVolumeWeightedStockPrice(horizon);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow() {
+        lock.lock();
+        try {
+            return delegate.calculateOrderFlow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(double quantile) {
+        lock.lock();
+        try {
+            return delegate.calculatePriceQuantile(quantile);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to) {
+        lock.lock();
+        try {
+            return delegate.getBars(interval, from, to);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called while holding the lock
+     */
+    private Snapshot publish() {
+        ExpiringPrice value = delegate.calculateExpiringVolumeWeightedStockPrice();
+        Snapshot snapshot = new Snapshot(value, value.getExpiry() == null ? Long.MAX_VALUE : clock.toEpochNanos(value.getExpiry()));
+        published.set(snapshot);
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        private final ExpiringPrice value;
+        private final long expiryNanos;
+
+        private Snapshot(ExpiringPrice value, long expiryNanos) {
+            this.value = value;
+            this.expiryNanos = expiryNanos;
+        }
+    }
+}
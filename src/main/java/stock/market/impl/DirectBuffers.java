@@ -0,0 +1,65 @@
+package stock.market.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees memory of direct buffers <b>explicitly</b> instead of waiting for the buffer to be collected.
+ * The cleaner is looked up by reflection once, Unsafe.invokeCleaner on Java 9+ and the buffer cleaner on Java 8.
+ * When neither is accessible the memory is left to the garbage collector.
+ */
+final class DirectBuffers {
+
+    private static final Cleaner CLEANER = findCleaner();
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * The buffer cannot be used after it is freed
+     *
+     * @return true if memory of the buffer was freed, false if it is left to the garbage collector
+     */
+    static boolean free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || CLEANER == null) {
+            return false;
+        }
+        try {
+            CLEANER.clean(buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Cleaner findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8 has no Unsafe.invokeCleaner
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object bufferCleaner = cleaner.invoke(buffer);
+                if (bufferCleaner != null) {
+                    clean.invoke(bufferCleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+}
@@ -0,0 +1,20 @@
+package stock.market.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Volume Weighted Stock Price with the time after which it changes even without new trades, both taken from the same {@link TradeTotals}.
+ * Expiry is null if there are no valid trades.
+ */
+@AllArgsConstructor
+@Getter
+public class ExpiringPrice {
+    public static final ExpiringPrice EMPTY = new ExpiringPrice(BigDecimal.ZERO, null);
+
+    private final BigDecimal price;
+    private final LocalDateTime expiry;
+}
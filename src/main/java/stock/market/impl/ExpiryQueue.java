@@ -0,0 +1,158 @@
+package stock.market.impl;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of expiry times in nanoseconds since epoch keyed by slot, e.g. id of a stock symbol.
+ * Position of every slot in the heap is tracked, so a slot is queued at most once and rescheduling moves it <b>in place</b>.
+ * Size of the queue is bounded by the number of slots, however often they are rescheduled. Slots are added as they are scheduled.
+ * Module is not thread-safe.
+ */
+final class ExpiryQueue {
+
+    private static final int NOT_QUEUED = -1;
+
+    private int[] heap;
+    private long[] times;
+    /**
+     * positions[slot] is index of the slot in the heap, NOT_QUEUED if the slot is not queued
+     */
+    private int[] positions;
+    private int size;
+
+    ExpiryQueue(int slots) {
+        int capacity = Math.max(slots, 1);
+        this.heap = new int[capacity];
+        this.times = new long[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, NOT_QUEUED);
+    }
+
+    /**
+     * Queues the slot or moves it to the new time if it is queued already
+     */
+    void schedule(int slot, long time) {
+        if (slot < 0) {
+            throw new IllegalArgumentException("slot have to be >= 0");
+        }
+        ensureSlot(slot);
+        int position = positions[slot];
+        if (position == NOT_QUEUED) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            position = size++;
+            place(slot, time, position);
+            siftUp(position);
+            return;
+        }
+        long previous = times[position];
+        times[position] = time;
+        if (time < previous) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * Removes the slot if it is queued
+     */
+    void remove(int slot) {
+        if (slot < 0 || slot >= positions.length || positions[slot] == NOT_QUEUED) {
+            return;
+        }
+        int position = positions[slot];
+        positions[slot] = NOT_QUEUED;
+        size--;
+        if (position == size) {
+            return;
+        }
+        long removedTime = times[position];
+        move(size, position);
+        if (times[position] < removedTime) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return earliest time, the queue cannot be empty
+     */
+    long peekTime() {
+        return times[0];
+    }
+
+    /**
+     * Removes the slot with the earliest time, the queue cannot be empty
+     *
+     * @return removed slot
+     */
+    int poll() {
+        int slot = heap[0];
+        remove(slot);
+        return slot;
+    }
+
+    private void ensureSlot(int slot) {
+        if (slot >= positions.length) {
+            int previousLength = positions.length;
+            positions = Arrays.copyOf(positions, Math.max(slot + 1, previousLength * 2));
+            Arrays.fill(positions, previousLength, positions.length, NOT_QUEUED);
+        }
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        long time = times[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (times[parent] <= time) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        place(slot, time, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        long time = times[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && times[child + 1] < times[child]) {
+                child++;
+            }
+            if (time <= times[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        place(slot, time, position);
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        times[to] = times[from];
+        positions[heap[to]] = to;
+    }
+
+    private void place(int slot, long time, int position) {
+        heap[position] = slot;
+        times[position] = time;
+        positions[slot] = position;
+    }
+}
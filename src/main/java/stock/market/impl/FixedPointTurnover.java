@@ -0,0 +1,75 @@
+package stock.market.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Exact Σ(price × quantity) for prices given as fixed-point longs, kept as a <b>128-bit</b> integer in two longs.
+ * Prices and quantities have to be >= 0, so every product fits in 126 bits and no allocation is needed until
+ * the result is read with {@link #toBigDecimal(int)}.
+ */
+final class FixedPointTurnover {
+
+    private static final BigInteger TWO_POW_64 = BigInteger.ONE.shiftLeft(64);
+
+    private long high;
+    private long low;
+
+    void add(long price, long quantity) {
+        long productLow = price * quantity;
+        long productHigh = multiplyHigh(price, quantity);
+        long newLow = low + productLow;
+        high += productHigh + (Long.compareUnsigned(newLow, low) < 0 ? 1 : 0);
+        low = newLow;
+    }
+
+    void subtract(long price, long quantity) {
+        long productLow = price * quantity;
+        long productHigh = multiplyHigh(price, quantity);
+        long borrow = Long.compareUnsigned(low, productLow) < 0 ? 1 : 0;
+        low -= productLow;
+        high -= productHigh + borrow;
+    }
+
+    void add(FixedPointTurnover other) {
+        long newLow = low + other.low;
+        high += other.high + (Long.compareUnsigned(newLow, low) < 0 ? 1 : 0);
+        low = newLow;
+    }
+
+    void clear() {
+        high = 0L;
+        low = 0L;
+    }
+
+    boolean isZero() {
+        return high == 0L && low == 0L;
+    }
+
+    BigDecimal toBigDecimal(int scale) {
+        if (high == 0L && low >= 0L) {
+            return BigDecimal.valueOf(low, scale);
+        }
+        BigInteger unsignedLow = BigInteger.valueOf(low);
+        if (low < 0L) {
+            unsignedLow = unsignedLow.add(TWO_POW_64);
+        }
+        return new BigDecimal(BigInteger.valueOf(high).shiftLeft(64).add(unsignedLow), scale);
+    }
+
+    /**
+     * Upper 64 bits of the 128-bit product, same as Math.multiplyHigh available since Java 9
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
@@ -0,0 +1,77 @@
+package stock.market.impl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Geometric mean of non-zero values kept as Σ log(value) and count of non-zero values, updated one value at a time.
+ * The sum is recalculated from scratch after as many updates as there are values, so floating point drift stays bounded
+ * and the relative difference from {@link DoubleBasedGeometricMeanFunctionWithLimitedPrecision} is below {@value #TOLERANCE}.
+ */
+public class GeometricMeanIndex {
+
+    public static final double TOLERANCE = 1e-12;
+
+    private double[] logs;
+    private double sumOfLogs;
+    private int count;
+    private int updatesSinceLastSum;
+
+    public GeometricMeanIndex(int size) {
+        this.logs = new double[size];
+        Arrays.fill(logs, Double.NaN);
+    }
+
+    /**
+     * Adds slots with zero value
+     */
+    public void resize(int size) {
+        if (size < logs.length) {
+            throw new IllegalArgumentException("size have to be >= " + logs.length);
+        }
+        int previousSize = logs.length;
+        logs = Arrays.copyOf(logs, size);
+        Arrays.fill(logs, previousSize, size, Double.NaN);
+    }
+
+    /**
+     * @param slot  position of the value, e.g. index of a stock symbol
+     * @param value new value, zero removes the slot from the mean
+     */
+    public void update(int slot, BigDecimal value) {
+        double log = value.signum() == 0 ? Double.NaN : Math.log(value.doubleValue());
+        double previous = logs[slot];
+        if (!Double.isNaN(previous)) {
+            sumOfLogs -= previous;
+            count--;
+        }
+        if (!Double.isNaN(log)) {
+            sumOfLogs += log;
+            count++;
+        }
+        logs[slot] = log;
+        if (++updatesSinceLastSum >= logs.length) {
+            sumLogs();
+        }
+    }
+
+    /**
+     * @return geometric mean of non-zero values, zero if there are none
+     */
+    public BigDecimal value() {
+        if (count == 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(Math.exp(sumOfLogs / count));
+    }
+
+    private void sumLogs() {
+        sumOfLogs = 0d;
+        for (double log : logs) {
+            if (!Double.isNaN(log)) {
+                sumOfLogs += log;
+            }
+        }
+        updatesSinceLastSum = 0;
+    }
+}
@@ -0,0 +1,145 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.StockSymbol;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facade keeping GBCE as an <b>incremental index</b> (see {@link GeometricMeanIndex}).
+ * Volume Weighted Stock Price of a symbol is recalculated only when its trades are recorded or when its oldest trade expires,
+ * expiries are taken from a queue ordered by time holding every symbol at most once (see {@link ExpiryQueue}),
+ * so GBCE does not depend on the number of stock symbols.
+ * Slot of a stock symbol in the index is its id in the immutable registry. Stock symbols added or reloaded by another thread
+ * (see {@link stock.market.main.StockDataWatcher}) only replace the registry and are taken into the index by the next call.
+ * Module is not thread-safe otherwise.
+ */
+public class IndexedStockMarket extends SimpleStockMarket {
+
+    private final ExpiryQueue expiries;
+    private final GeometricMeanIndex index;
+    private final MarketClock clock;
+    /**
+     * number of stock symbols taken into the index
+     */
+    private int slots;
+
+    public IndexedStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator) {
+        this(stockSymbolToOperationDelegator, new SystemMarketClock());
+    }
+
+    public IndexedStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, MarketClock clock) {
+        super(stockSymbolToOperationDelegator, null);
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.clock = clock;
+        this.expiries = new ExpiryQueue(stockSymbolToOperationDelegator.size());
+        this.index = new GeometricMeanIndex(stockSymbolToOperationDelegator.size());
+        adoptStockSymbols();
+    }
+
+    /**
+     * Stock symbol is looked up once, the index is updated by its id
+     */
+    @Override
+    public void record(Trade trade) {
+        if (trade == null) {
+            throw new IllegalArgumentException("trade cannot be null");
+        }
+        record(resolve(trade.getStockSymbol()), trade);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<RejectedTrade> rejected = super.recordAll(trades);
+        StockSymbolRegistry registry = adoptStockSymbols();
+        Set<StockSymbol> stockSymbols = new LinkedHashSet<>();
+        for (Trade trade : trades) {
+            StockSymbol stockSymbol = trade == null ? null : registry.resolve(trade.getStockSymbol());
+            if (stockSymbol != null) {
+                stockSymbols.add(stockSymbol);
+            }
+        }
+        stockSymbols.forEach(stockSymbol -> refresh(registry, stockSymbol.getId()));
+        return rejected;
+    }
+
+    @Override
+    public void record(StockSymbol stockSymbol, Trade trade) {
+        super.record(stockSymbol, trade);
+        refresh(adoptStockSymbols(), stockSymbol.getId());
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(StockSymbol stockSymbol, Collection<Trade> trades) {
+        List<RejectedTrade> rejected = super.recordAll(stockSymbol, trades);
+        refresh(adoptStockSymbols(), stockSymbol.getId());
+        return rejected;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol) {
+        int slot = resolve(stockSymbol).getId();
+        return refresh(adoptStockSymbols(), slot);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol) {
+        getDelegator(stockSymbol);
+        return refresh(adoptStockSymbols(), stockSymbol.getId());
+    }
+
+    @Override
+    public BigDecimal calculateGBCE() {
+        StockSymbolRegistry registry = adoptStockSymbols();
+        long now = clock.currentTimeNanos();
+        while (!expiries.isEmpty() && expiries.peekTime() < now) {
+            refresh(registry, expiries.poll());
+        }
+        return index.value();
+    }
+
+    /**
+     * Takes stock symbols added since the last call into the index
+     *
+     * @return registry of all stock symbols in the index
+     */
+    private StockSymbolRegistry adoptStockSymbols() {
+        StockSymbolRegistry registry = getRegistry();
+        int size = registry.size();
+        if (size > slots) {
+            index.resize(size);
+            for (int slot = slots; slot < size; slot++) {
+                refresh(registry, slot);
+            }
+            slots = size;
+        }
+        return registry;
+    }
+
+    /**
+     * Price and expiry are taken from the same totals, so they are computed once
+     */
+    private BigDecimal refresh(StockSymbolRegistry registry, int slot) {
+        ExpiringPrice result = registry.get(slot).calculateExpiringVolumeWeightedStockPrice();
+        index.update(slot, result.getPrice());
+        schedule(slot, result.getExpiry());
+        return result.getPrice();
+    }
+
+    private void schedule(int slot, LocalDateTime time) {
+        if (time == null) {
+            expiries.remove(slot);
+        } else {
+            expiries.schedule(slot, clock.toEpochNanos(time));
+        }
+    }
+}
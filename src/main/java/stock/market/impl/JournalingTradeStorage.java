@@ -0,0 +1,91 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decorator of trade storage appending every trade recorded by the delegate to {@link TradeJournal}
+ */
+public class JournalingTradeStorage implements TradeStorage {
+
+    private final TradeStorage delegate;
+    private final TradeJournal journal;
+
+    public JournalingTradeStorage(TradeStorage delegate, TradeJournal journal) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (journal == null) {
+            throw new IllegalArgumentException("journal cannot be null");
+        }
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    /**
+     * Trade is encoded for the journal before it is recorded, so a trade which cannot be journaled is not recorded either
+     */
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        byte[] record = journal.encode(trade);
+        delegate.record(trade);
+        journal.append(record);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<Trade> valid = new ArrayList<>(trades.size());
+        Map<Trade, byte[]> records = new IdentityHashMap<>(trades.size());
+        List<RejectedTrade> rejected = TradeValidator.forEachValid(trades, trade -> {
+            records.put(trade, journal.encode(trade));
+            valid.add(trade);
+        });
+        List<RejectedTrade> rejectedByDelegate = delegate.recordAll(valid);
+        rejectedByDelegate.forEach(r -> records.remove(r.getTrade()));
+        List<byte[]> recorded = new ArrayList<>(records.size());
+        for (Trade trade : valid) {
+            byte[] record = records.get(trade);
+            if (record != null) {
+                recorded.add(record);
+            }
+        }
+        journal.appendAllEncoded(recorded);
+        rejected.addAll(rejectedByDelegate);
+        return rejected;
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        return delegate.getValidTradeTotals();
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        return delegate.getValidTradeTotals(horizon);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        return delegate.getValidTradeTotals(site);
+    }
+
+    @Override
+    public BigDecimal getValidTradePriceQuantile(double quantile) {
+        return delegate.getValidTradePriceQuantile(quantile);
+    }
+
+    @Override
+    public long getEvictedTradeCount() {
+        return delegate.getEvictedTradeCount();
+    }
+}
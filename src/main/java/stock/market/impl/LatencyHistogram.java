@@ -0,0 +1,81 @@
+package stock.market.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent <b>log-linear histogram</b> of latencies in nanoseconds (HdrHistogram-like).
+ * Values below {@value #SUB_BUCKETS} are counted exactly, bigger values in {@value #HALF_SUB_BUCKETS} buckets per power of two,
+ * so every value is reported with relative error below 1/{@value #HALF_SUB_BUCKETS}.
+ * Recording is a single atomic increment of a preallocated counter and allocates nothing.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int SIZE = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(nanos < 0 ? 0 : nanos));
+    }
+
+    /**
+     * @return counts copied bucket by bucket, so it is not atomic if values are recorded meanwhile
+     */
+    public LatencySnapshot snapshot() {
+        long[] copy = new long[SIZE];
+        long count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new LatencySnapshot(count,
+                valueAt(copy, count, 0.5),
+                valueAt(copy, count, 0.99),
+                valueAt(copy, count, 0.999),
+                valueAt(copy, count, 1.0));
+    }
+
+    public void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            counts.set(i, 0L);
+        }
+    }
+
+    /**
+     * @return highest value equivalent to the bucket holding the given quantile, 0 if nothing was recorded
+     */
+    private static long valueAt(long[] counts, long count, double quantile) {
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(counts.length - 1);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
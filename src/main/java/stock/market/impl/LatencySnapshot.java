@@ -0,0 +1,18 @@
+package stock.market.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Latencies in nanoseconds recorded by {@link LatencyHistogram}, percentiles are rounded up to the bucket boundary.
+ * Count is the number of measured calls, so it is a fraction of all calls if they are sampled
+ */
+@AllArgsConstructor
+@Getter
+public class LatencySnapshot {
+    private final long count;
+    private final long medianNanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+}
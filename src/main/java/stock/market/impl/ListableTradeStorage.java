@@ -0,0 +1,46 @@
+package stock.market.impl;
+
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Trade storage keeping valid trades, so they can be listed and quantiles are calculated exactly
+ */
+public interface ListableTradeStorage extends TradeStorage {
+
+    /**
+     * @return copy of valid trades, outdated trades are removed first
+     */
+    List<Trade> getValidTrades();
+
+    /**
+     * Quantile weighted by quantity, calculated exactly from valid trades sorted by price
+     *
+     * @param quantile have to be >= 0 and <= 1, 0.5 is the median
+     * @return lowest price of valid trades such that trades with the same or lower price have at least the quantile of valid quantity,
+     * zero if there are no valid trades
+     */
+    @Override
+    default BigDecimal getValidTradePriceQuantile(double quantile) {
+        TradeValidator.validateQuantile(quantile);
+        List<Trade> trades = new ArrayList<>(getValidTrades());
+        if (trades.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        trades.sort(Comparator.comparing(Trade::getPrice));
+        long quantity = trades.stream().mapToLong(Trade::getQuantity).sum();
+        long rank = Math.max(1L, (long) Math.ceil(quantile * quantity));
+        long seen = 0L;
+        for (Trade trade : trades) {
+            seen += trade.getQuantity();
+            if (seen >= rank) {
+                return trade.getPrice();
+            }
+        }
+        return trades.get(trades.size() - 1).getPrice();
+    }
+}
@@ -0,0 +1,102 @@
+package stock.market.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Calculate geometric mean as exp(Σ log(value) / n), so no product of all values is built and nothing overflows.
+ * Lists longer than the parallel threshold are summed by a <b>fork-join</b> reduction split at fixed points,
+ * so the result does not depend on scheduling.
+ * Result is rounded to {@value #SIGNIFICANT_DIGITS} significant digits, which is below the error of double logarithms.
+ */
+public class LogarithmBasedGeometricMeanFunction implements Function<List<BigDecimal>, BigDecimal> {
+
+    private static final int SIGNIFICANT_DIGITS = 14;
+    private static final MathContext ROUNDING = new MathContext(SIGNIFICANT_DIGITS, RoundingMode.HALF_UP);
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+    private static final double LOG_10 = Math.log(10d);
+    private static final double LOG_2 = Math.log(2d);
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    public LogarithmBasedGeometricMeanFunction() {
+        this(DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public LogarithmBasedGeometricMeanFunction(int parallelThreshold, ForkJoinPool pool) {
+        if (parallelThreshold <= 0) {
+            throw new IllegalArgumentException("parallelThreshold have to be > 0");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("pool cannot be null");
+        }
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+    }
+
+    /**
+     * @return geometric mean of the given values (all have to be > 0), zero for empty list
+     */
+    @Override
+    public BigDecimal apply(List<BigDecimal> arguments) {
+        if (arguments.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        double sumOfLogs = arguments.size() > parallelThreshold
+                ? pool.invoke(new SumOfLogs(arguments, 0, arguments.size()))
+                : sumOfLogs(arguments, 0, arguments.size());
+        return BigDecimal.valueOf(Math.exp(sumOfLogs / arguments.size())).round(ROUNDING);
+    }
+
+    private static double sumOfLogs(List<BigDecimal> values, int from, int to) {
+        double sum = 0d;
+        for (int i = from; i < to; i++) {
+            sum += log(values.get(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Natural logarithm also for values outside of double range
+     */
+    static double log(BigDecimal value) {
+        double doubleValue = value.doubleValue();
+        if (doubleValue >= Double.MIN_NORMAL && doubleValue < Double.POSITIVE_INFINITY) {
+            return Math.log(doubleValue);
+        }
+        BigInteger unscaled = value.unscaledValue();
+        int shift = Math.max(unscaled.bitLength() - 63, 0);
+        return Math.log(unscaled.shiftRight(shift).doubleValue()) + shift * LOG_2 - value.scale() * LOG_10;
+    }
+
+    private final class SumOfLogs extends RecursiveTask<Double> {
+        private final List<BigDecimal> values;
+        private final int from;
+        private final int to;
+
+        private SumOfLogs(List<BigDecimal> values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= parallelThreshold) {
+                return sumOfLogs(values, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            SumOfLogs left = new SumOfLogs(values, from, middle);
+            left.fork();
+            double right = new SumOfLogs(values, middle, to).compute();
+            return left.join() + right;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package stock.market.impl;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Source of current time used to expire trades. Time is counted in nanoseconds since epoch,
+ * so expiry thresholds are plain long comparisons. Trade timestamps are interpreted in the zone of the clock.
+ */
+public interface MarketClock {
+
+    long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * @return current time in nanoseconds since epoch
+     */
+    long currentTimeNanos();
+
+    ZoneId getZone();
+
+    default long toEpochNanos(LocalDateTime timestamp) {
+        ZoneOffset offset = getZone().getRules().getOffset(timestamp);
+        return timestamp.toEpochSecond(offset) * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    default LocalDateTime toLocalDateTime(long epochNanos) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+        return LocalDateTime.ofInstant(instant, getZone());
+    }
+}
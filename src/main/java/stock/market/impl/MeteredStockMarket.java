@@ -0,0 +1,194 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.StockMarket;
+import stock.market.StockSymbol;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decorator of stock market measuring latency of recording trades, VWAP and GBCE into {@link StockMarketMetrics}.
+ * Measuring a call costs two reads of {@link System#nanoTime()} and an atomic increment of a histogram bucket,
+ * which is more than a fast VWAP read itself, so only every n-th call of every thread is measured (<b>sampling</b>). Trades are counted always.
+ */
+public class MeteredStockMarket implements StockMarket {
+
+    private static final int DEFAULT_SAMPLING_PERIOD = 8;
+
+    private final StockMarket delegate;
+    private final StockMarketMetrics metrics;
+    private final int samplingMask;
+    /**
+     * calls counted per thread, so threads do not write a shared counter and every thread is sampled evenly
+     */
+    private final ThreadLocal<int[]> calls = ThreadLocal.withInitial(() -> new int[1]);
+
+    public MeteredStockMarket(StockMarket delegate, StockMarketMetrics metrics) {
+        this(delegate, metrics, DEFAULT_SAMPLING_PERIOD);
+    }
+
+    /**
+     * @param samplingPeriod every samplingPeriod-th call is measured, have to be power of two, 1 measures every call
+     */
+    public MeteredStockMarket(StockMarket delegate, StockMarketMetrics metrics, int samplingPeriod) {
+        if (samplingPeriod <= 0 || Integer.bitCount(samplingPeriod) != 1) {
+            throw new IllegalArgumentException("samplingPeriod have to be power of two");
+        }
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.samplingMask = samplingPeriod - 1;
+    }
+
+    private long start() {
+        int[] threadCalls = calls.get();
+        return (++threadCalls[0] & samplingMask) == 0 ? System.nanoTime() : StockMarketMetrics.NOT_MEASURED;
+    }
+
+    @Override
+    public StockSymbol resolve(String stockSymbol) {
+        return delegate.resolve(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(String stockSymbol, BigDecimal price) {
+        return delegate.calculateDividedYield(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(StockSymbol stockSymbol, BigDecimal price) {
+        return delegate.calculateDividedYield(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(String stockSymbol, BigDecimal price) {
+        return delegate.calculatePERatio(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(StockSymbol stockSymbol, BigDecimal price) {
+        return delegate.calculatePERatio(stockSymbol, price);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        long start = start();
+        try {
+            delegate.record(trade);
+        } catch (RuntimeException e) {
+            metrics.rejected(start);
+            throw e;
+        }
+        metrics.recorded(start);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        long start = start();
+        List<RejectedTrade> rejected = delegate.recordAll(trades);
+        metrics.recordedAll(start, trades.size() - rejected.size(), rejected.size());
+        return rejected;
+    }
+
+    @Override
+    public void record(StockSymbol stockSymbol, Trade trade) {
+        long start = start();
+        try {
+            delegate.record(stockSymbol, trade);
+        } catch (RuntimeException e) {
+            metrics.rejected(start);
+            throw e;
+        }
+        metrics.recorded(start);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(StockSymbol stockSymbol, Collection<Trade> trades) {
+        long start = start();
+        List<RejectedTrade> rejected = delegate.recordAll(stockSymbol, trades);
+        metrics.recordedAll(start, trades.size() - rejected.size(), rejected.size());
+        return rejected;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol) {
+        long start = start();
+        BigDecimal result = delegate.calculateVolumeWeightedStockPrice(stockSymbol);
+        metrics.calculatedVolumeWeightedStockPrice(start);
+        return result;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol) {
+        long start = start();
+        BigDecimal result = delegate.calculateVolumeWeightedStockPrice(stockSymbol);
+        metrics.calculatedVolumeWeightedStockPrice(start);
+        return result;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol, Duration horizon) {
+        long start = start();
+        BigDecimal result = delegate.calculateVolumeWeightedStockPrice(stockSymbol, horizon);
+        metrics.calculatedVolumeWeightedStockPrice(start);
+        return result;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol, Duration horizon) {
+        long start = start();
+        BigDecimal result = delegate.calculateVolumeWeightedStockPrice(stockSymbol, horizon);
+        metrics.calculatedVolumeWeightedStockPrice(start);
+        return result;
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(String stockSymbol) {
+        return delegate.calculateOrderFlow(stockSymbol);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(StockSymbol stockSymbol) {
+        return delegate.calculateOrderFlow(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(String stockSymbol, double quantile) {
+        return delegate.calculatePriceQuantile(stockSymbol, quantile);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(StockSymbol stockSymbol, double quantile) {
+        return delegate.calculatePriceQuantile(stockSymbol, quantile);
+    }
+
+    @Override
+    public List<Bar> getBars(String stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return delegate.getBars(stockSymbol, interval, from, to);
+    }
+
+    @Override
+    public List<Bar> getBars(StockSymbol stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return delegate.getBars(stockSymbol, interval, from, to);
+    }
+
+    @Override
+    public BigDecimal calculateGBCE() {
+        long start = start();
+        BigDecimal result = delegate.calculateGBCE();
+        metrics.calculatedGBCE(start);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator of trade storage counting recorded trades, its {@link TradeWindow} is reported by {@link StockMarketMetrics}
+ * under the stock symbol of recorded trades.
+ */
+public class MeteredTradeStorage implements TradeStorage {
+
+    private final TradeStorage delegate;
+    private final LongAdder recordedTrades = new LongAdder();
+    private volatile String stockSymbol;
+
+    public MeteredTradeStorage(TradeStorage delegate, StockMarketMetrics metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+        this.delegate = delegate;
+        metrics.register(this);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        delegate.record(trade);
+        recorded(trade);
+        recordedTrades.increment();
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<RejectedTrade> rejected = delegate.recordAll(trades);
+        if (rejected.size() < trades.size()) {
+            recorded(trades.iterator().next());
+            recordedTrades.add(trades.size() - rejected.size());
+        }
+        return rejected;
+    }
+
+    private void recorded(Trade trade) {
+        if (stockSymbol == null) {
+            stockSymbol = trade.getStockSymbol();
+        }
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        return delegate.getValidTradeTotals();
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        return delegate.getValidTradeTotals(horizon);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        return delegate.getValidTradeTotals(site);
+    }
+
+    @Override
+    public BigDecimal getValidTradePriceQuantile(double quantile) {
+        return delegate.getValidTradePriceQuantile(quantile);
+    }
+
+    @Override
+    public long getEvictedTradeCount() {
+        return delegate.getEvictedTradeCount();
+    }
+
+    String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    /**
+     * Held trades include trades outdated but not yet evicted
+     */
+    TradeWindow getTradeWindow() {
+        long evicted = delegate.getEvictedTradeCount();
+        long recorded = recordedTrades.sum();
+        return new TradeWindow(recorded, evicted, Math.max(0L, recorded - evicted));
+    }
+}
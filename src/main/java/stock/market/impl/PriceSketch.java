@@ -0,0 +1,155 @@
+package stock.market.impl;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable <b>quantile sketch</b> of prices weighted by quantity (DDSketch-like). Price p is counted in bin ceil(log(p) / log(γ))
+ * where γ = (1 + α) / (1 - α), so every quantile is reported with relative error below the relative accuracy α.
+ * Bins are kept in a contiguous array of at most maxBins bins. When prices span more bins, the lowest bins are collapsed into one,
+ * so memory stays bounded whatever number of trades is added and only low quantiles lose accuracy.
+ * Sketches of the same accuracy are merged by adding counts of bins. Minimal and maximal price are kept exactly.
+ */
+final class PriceSketch {
+
+    private static final int INITIAL_BINS = 8;
+
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBins;
+
+    /**
+     * counts[i] is count of bin offset + i, counts from size on are zero
+     */
+    private long[] counts;
+    private int offset;
+    private int size;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    PriceSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0d || relativeAccuracy >= 1d) {
+            throw new IllegalArgumentException("relativeAccuracy have to be > 0 and < 1");
+        }
+        if (maxBins <= 0) {
+            throw new IllegalArgumentException("maxBins have to be > 0");
+        }
+        this.gamma = (1d + relativeAccuracy) / (1d - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBins = maxBins;
+        this.counts = new long[Math.min(INITIAL_BINS, maxBins)];
+    }
+
+    /**
+     * @param price have to be > 0
+     * @param quantity have to be > 0
+     */
+    void add(double price, long quantity) {
+        addToBin((int) Math.ceil(Math.log(price) / logGamma), quantity);
+        min = Math.min(min, price);
+        max = Math.max(max, price);
+    }
+
+    /**
+     * Adds counts of the other sketch, which has to have the same relative accuracy
+     */
+    void merge(PriceSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("sketches have to have the same relative accuracy");
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (other.counts[i] > 0L) {
+                addToBin(other.offset + i, other.counts[i]);
+            }
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    private void addToBin(int bin, long quantity) {
+        if (size == 0) {
+            offset = bin;
+            size = 1;
+        } else {
+            int high = Math.max(bin, offset + size - 1);
+            resize(Math.max(Math.min(bin, offset), high - maxBins + 1), high);
+        }
+        counts[Math.max(bin, offset) - offset] += quantity;
+        count += quantity;
+    }
+
+    /**
+     * Moves bins to cover [low, high], bins below low are collapsed into low
+     */
+    private void resize(int low, int high) {
+        if (low == offset && high == offset + size - 1) {
+            return;
+        }
+        int newSize = high - low + 1;
+        long[] target = newSize <= counts.length ? counts : new long[Math.min(maxBins, Math.max(newSize, counts.length * 2))];
+        int shift = offset - low;
+        if (shift >= 0) {
+            System.arraycopy(counts, 0, target, shift, size);
+            if (target == counts) {
+                Arrays.fill(target, 0, shift, 0L);
+            }
+        } else {
+            int collapsedBins = Math.min(size, -shift);
+            long collapsed = 0L;
+            for (int i = 0; i < collapsedBins; i++) {
+                collapsed += counts[i];
+            }
+            System.arraycopy(counts, collapsedBins, target, 0, size - collapsedBins);
+            if (target == counts) {
+                Arrays.fill(target, size - collapsedBins, size, 0L);
+            }
+            target[0] += collapsed;
+        }
+        counts = target;
+        offset = low;
+        size = newSize;
+    }
+
+    /**
+     * @param quantile have to be >= 0 and <= 1
+     * @return price below which the quantile of quantity was traded, exact minimum and maximum for 0 and 1, NaN if nothing was added
+     */
+    double quantile(double quantile) {
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        if (quantile <= 0d) {
+            return min;
+        }
+        if (quantile >= 1d) {
+            return max;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        int i = 0;
+        while (i < size - 1 && (seen += counts[i]) < rank) {
+            i++;
+        }
+        double value = 2d * Math.pow(gamma, offset + i) / (gamma + 1d);
+        return Math.max(min, Math.min(max, value));
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of bins in use, never more than maxBins
+     */
+    int getBinCount() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0, size, 0L);
+        size = 0;
+        count = 0L;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+}
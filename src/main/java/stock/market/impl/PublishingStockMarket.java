@@ -0,0 +1,412 @@
+package stock.market.impl;
+
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
+import stock.market.StockMarket;
+import stock.market.StockMarketListener;
+import stock.market.StockSymbol;
+import stock.market.StockUpdate;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decorator of stock market <b>pushing</b> changes of Volume Weighted Stock Prices (with Dividend Yield and P/E Ratio at that price)
+ * and of GBCE to subscribed {@link StockMarketListener}s. Recording only marks the stock symbol as changed.
+ * Once per publish interval a publisher daemon thread recalculates changed symbols and symbols whose oldest trade expired,
+ * GBCE is recalculated only if a price changed.
+ * <p>
+ * Every subscription keeps values not delivered yet by stock symbol and delivers them on the delivery executor one batch at a time.
+ * Values published meanwhile replace pending ones (<b>conflation</b>), so a slow subscriber sees only the latest values
+ * and never blocks recording. Values are calculated by the publisher thread, so the delegate is a thread-safe {@link ConcurrentStockMarket}.
+ * Ratios of reloaded stock data are published with the next change of the price.
+ */
+public class PublishingStockMarket implements StockMarket, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PublishingStockMarket.class.getName());
+
+    private final ConcurrentStockMarket delegate;
+    private final MarketClock clock;
+    private final Executor deliveryExecutor;
+    private final ExecutorService ownedDeliveryExecutor;
+    private final ScheduledExecutorService publisher;
+    private final Set<String> changedStockSymbols = ConcurrentHashMap.newKeySet();
+
+    /**
+     * accessed only by the publisher thread, slot of a stock symbol is its id
+     */
+    private final ExpiryQueue expiries = new ExpiryQueue(16);
+    private String[] slotToStockSymbol = new String[16];
+
+    /**
+     * written only by the publisher thread while holding lock of this
+     */
+    private final Map<String, StockUpdate> published = new LinkedHashMap<>();
+    private BigDecimal publishedGBCE;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    /**
+     * Subscriptions are delivered by a single daemon thread
+     */
+    public PublishingStockMarket(ConcurrentStockMarket delegate, MarketClock clock, Duration publishInterval) {
+        this(delegate, clock, publishInterval, newDeliveryExecutor(), true);
+    }
+
+    /**
+     * @param publishInterval minimal time between two publications of changes
+     * @param deliveryExecutor executor calling listeners, a pool delivers subscriptions in parallel
+     */
+    public PublishingStockMarket(ConcurrentStockMarket delegate, MarketClock clock, Duration publishInterval, Executor deliveryExecutor) {
+        this(delegate, clock, publishInterval, deliveryExecutor, false);
+    }
+
+    private PublishingStockMarket(ConcurrentStockMarket delegate, MarketClock clock, Duration publishInterval, Executor deliveryExecutor, boolean owned) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate cannot be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        if (publishInterval == null || publishInterval.toMillis() <= 0) {
+            throw new IllegalArgumentException("publishInterval have to be >= 1ms");
+        }
+        if (deliveryExecutor == null) {
+            throw new IllegalArgumentException("deliveryExecutor cannot be null");
+        }
+        this.delegate = delegate;
+        this.clock = clock;
+        this.deliveryExecutor = deliveryExecutor;
+        this.ownedDeliveryExecutor = owned ? (ExecutorService) deliveryExecutor : null;
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-market-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publishSafely, publishInterval.toMillis(), publishInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static ExecutorService newDeliveryExecutor() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "stock-market-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes listener to changes published from now on, values published before are delivered first
+     *
+     * @return subscription closed to unsubscribe
+     */
+    public synchronized Subscription subscribe(StockMarketListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+        Subscription subscription = new Subscription(listener);
+        subscriptions.add(subscription);
+        if (!published.isEmpty()) {
+            subscription.offer(published.values(), publishedGBCE);
+        }
+        return subscription;
+    }
+
+    @Override
+    public StockSymbol resolve(String stockSymbol) {
+        return delegate.resolve(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(String stockSymbol, BigDecimal price) {
+        return delegate.calculateDividedYield(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(StockSymbol stockSymbol, BigDecimal price) {
+        return delegate.calculateDividedYield(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(String stockSymbol, BigDecimal price) {
+        return delegate.calculatePERatio(stockSymbol, price);
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(StockSymbol stockSymbol, BigDecimal price) {
+        return delegate.calculatePERatio(stockSymbol, price);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        delegate.record(trade);
+        changedStockSymbols.add(trade.getStockSymbol());
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<RejectedTrade> rejected = delegate.recordAll(trades);
+        Set<Trade> notRecorded = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.forEach(r -> notRecorded.add(r.getTrade()));
+        for (Trade trade : trades) {
+            if (trade != null && !notRecorded.contains(trade)) {
+                changedStockSymbols.add(trade.getStockSymbol());
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public void record(StockSymbol stockSymbol, Trade trade) {
+        delegate.record(stockSymbol, trade);
+        changedStockSymbols.add(stockSymbol.getName());
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(StockSymbol stockSymbol, Collection<Trade> trades) {
+        List<RejectedTrade> rejected = delegate.recordAll(stockSymbol, trades);
+        if (rejected.size() < trades.size()) {
+            changedStockSymbols.add(stockSymbol.getName());
+        }
+        return rejected;
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol) {
+        return delegate.calculateVolumeWeightedStockPrice(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol) {
+        return delegate.calculateVolumeWeightedStockPrice(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol, Duration horizon) {
+        return delegate.calculateVolumeWeightedStockPrice(stockSymbol, horizon);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol, Duration horizon) {
+        return delegate.calculateVolumeWeightedStockPrice(stockSymbol, horizon);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(String stockSymbol) {
+        return delegate.calculateOrderFlow(stockSymbol);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(StockSymbol stockSymbol) {
+        return delegate.calculateOrderFlow(stockSymbol);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(String stockSymbol, double quantile) {
+        return delegate.calculatePriceQuantile(stockSymbol, quantile);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(StockSymbol stockSymbol, double quantile) {
+        return delegate.calculatePriceQuantile(stockSymbol, quantile);
+    }
+
+    @Override
+    public List<Bar> getBars(String stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return delegate.getBars(stockSymbol, interval, from, to);
+    }
+
+    @Override
+    public List<Bar> getBars(StockSymbol stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return delegate.getBars(stockSymbol, interval, from, to);
+    }
+
+    @Override
+    public BigDecimal calculateGBCE() {
+        return delegate.calculateGBCE();
+    }
+
+    private void publishSafely() {
+        try {
+            publish();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "stock market changes not published", e);
+        }
+    }
+
+    /**
+     * Recalculates changed and expired stock symbols and offers changed values to subscriptions, called by the publisher thread
+     */
+    void publish() {
+        Set<String> stockSymbols = new LinkedHashSet<>();
+        for (Iterator<String> it = changedStockSymbols.iterator(); it.hasNext(); ) {
+            stockSymbols.add(it.next());
+            it.remove();
+        }
+        long now = clock.currentTimeNanos();
+        while (!expiries.isEmpty() && expiries.peekTime() < now) {
+            stockSymbols.add(slotToStockSymbol[expiries.poll()]);
+        }
+        List<StockUpdate> changed = new ArrayList<>();
+        for (String stockSymbol : stockSymbols) {
+            ExpiringPrice price = delegate.calculateExpiringVolumeWeightedStockPrice(stockSymbol);
+            StockUpdate update = calculate(stockSymbol, price.getPrice());
+            schedule(stockSymbol, price.getExpiry());
+            if (!isSame(update, published.get(stockSymbol))) {
+                changed.add(update);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        BigDecimal gbce = delegate.calculateGBCE();
+        synchronized (this) {
+            changed.forEach(update -> published.put(update.getStockSymbol(), update));
+            BigDecimal changedGBCE = publishedGBCE != null && publishedGBCE.compareTo(gbce) == 0 ? null : gbce;
+            publishedGBCE = gbce;
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(changed, changedGBCE);
+            }
+        }
+    }
+
+    private StockUpdate calculate(String stockSymbol, BigDecimal price) {
+        if (price.signum() == 0) {
+            return new StockUpdate(stockSymbol, price, BigDecimal.ZERO, BigDecimal.ZERO);
+        }
+        return new StockUpdate(stockSymbol, price, delegate.calculateDividedYield(stockSymbol, price), delegate.calculatePERatio(stockSymbol, price));
+    }
+
+    private static boolean isSame(StockUpdate update, StockUpdate previous) {
+        return previous != null
+                && update.getVolumeWeightedStockPrice().compareTo(previous.getVolumeWeightedStockPrice()) == 0
+                && update.getDividedYield().compareTo(previous.getDividedYield()) == 0
+                && update.getPeRatio().compareTo(previous.getPeRatio()) == 0;
+    }
+
+    private void schedule(String stockSymbol, LocalDateTime time) {
+        int slot = delegate.resolve(stockSymbol).getId();
+        if (time == null) {
+            expiries.remove(slot);
+            return;
+        }
+        if (slot >= slotToStockSymbol.length) {
+            slotToStockSymbol = Arrays.copyOf(slotToStockSymbol, Math.max(slot + 1, slotToStockSymbol.length * 2));
+        }
+        slotToStockSymbol[slot] = stockSymbol;
+        expiries.schedule(slot, clock.toEpochNanos(time));
+    }
+
+    /**
+     * Stops publishing, values already offered are still delivered
+     */
+    @Override
+    public void close() {
+        publisher.shutdownNow();
+        if (ownedDeliveryExecutor != null) {
+            ownedDeliveryExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Values offered to a listener and not delivered yet
+     */
+    public final class Subscription implements AutoCloseable {
+        private final StockMarketListener listener;
+        private final Map<String, StockUpdate> pendingUpdates = new LinkedHashMap<>();
+        private BigDecimal pendingGBCE;
+        private boolean delivering;
+        private long conflatedCount;
+        private volatile boolean closed;
+
+        private Subscription(StockMarketListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * @param gbce changed GBCE, null if not changed
+         */
+        private synchronized void offer(Collection<StockUpdate> updates, BigDecimal gbce) {
+            for (StockUpdate update : updates) {
+                if (pendingUpdates.put(update.getStockSymbol(), update) != null) {
+                    conflatedCount++;
+                }
+            }
+            if (gbce != null) {
+                if (pendingGBCE != null) {
+                    conflatedCount++;
+                }
+                pendingGBCE = gbce;
+            }
+            if (!delivering) {
+                delivering = true;
+                deliveryExecutor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            List<StockUpdate> updates;
+            BigDecimal gbce;
+            synchronized (this) {
+                updates = new ArrayList<>(pendingUpdates.values());
+                pendingUpdates.clear();
+                gbce = pendingGBCE;
+                pendingGBCE = null;
+            }
+            try {
+                for (StockUpdate update : updates) {
+                    if (!closed) {
+                        listener.onStockUpdate(update);
+                    }
+                }
+                if (gbce != null && !closed) {
+                    listener.onGBCE(gbce);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "stock market listener failed", e);
+            }
+            synchronized (this) {
+                if (pendingUpdates.isEmpty() && pendingGBCE == null) {
+                    delivering = false;
+                } else {
+                    deliveryExecutor.execute(this::deliver);
+                }
+            }
+        }
+
+        /**
+         * @return number of values replaced by newer ones before they were delivered
+         */
+        public synchronized long getConflatedCount() {
+            return conflatedCount;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            synchronized (PublishingStockMarket.this) {
+                subscriptions.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package stock.market.impl;
+
+import stock.market.Trade;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Trade storage keeping valid trades in time-ordered positions or segments, so trades of a time range are found
+ * without visiting the whole window and without removing outdated trades
+ */
+public interface RangeListableTradeStorage extends ListableTradeStorage {
+
+    /**
+     * Lazy view of valid trades with timestamp in [from, to). Outdated trades are skipped, not removed, and trades are not copied
+     * into a list, storages keeping primitive records create trade objects one by one while the stream is consumed.
+     * Order of trades is the order in which the storage keeps them.
+     * The view has to be consumed before the storage is changed.
+     */
+    Stream<Trade> getValidTrades(LocalDateTime from, LocalDateTime to);
+}
@@ -0,0 +1,60 @@
+package stock.market.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Deterministic clock moved forward explicitly, e.g. by timestamps of replayed trades.
+ * Timestamps are converted with the zone offset cached between offset transitions (see {@link ZoneOffsetCache}).
+ */
+public class ReplayMarketClock implements MarketClock {
+
+    private final ZoneId zone;
+    private final ZoneOffsetCache offsets;
+    private volatile long currentTimeNanos;
+
+    public ReplayMarketClock(ZoneId zone, LocalDateTime start) {
+        if (zone == null) {
+            throw new IllegalArgumentException("zone cannot be null");
+        }
+        this.zone = zone;
+        this.offsets = new ZoneOffsetCache(zone);
+        this.currentTimeNanos = toEpochNanos(start);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return currentTimeNanos;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public long toEpochNanos(LocalDateTime timestamp) {
+        return offsets.toEpochNanos(timestamp);
+    }
+
+    @Override
+    public LocalDateTime toLocalDateTime(long epochNanos) {
+        return offsets.toLocalDateTime(epochNanos);
+    }
+
+    public void advance(Duration duration) {
+        advanceTo(currentTimeNanos + duration.toNanos());
+    }
+
+    public void advanceTo(LocalDateTime time) {
+        advanceTo(toEpochNanos(time));
+    }
+
+    public void advanceTo(long epochNanos) {
+        if (epochNanos < currentTimeNanos) {
+            throw new IllegalArgumentException("time cannot go back");
+        }
+        currentTimeNanos = epochNanos;
+    }
+}
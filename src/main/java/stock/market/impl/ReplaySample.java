@@ -0,0 +1,19 @@
+package stock.market.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Volume Weighted Stock Prices and GBCE sampled by {@link TradeReplay} at simulated time
+ */
+@Getter
+@AllArgsConstructor
+public class ReplaySample {
+    private LocalDateTime time;
+    private Map<String, BigDecimal> volumeWeightedStockPrices;
+    private BigDecimal gbce;
+}
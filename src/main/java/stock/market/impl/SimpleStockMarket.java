@@ -1,32 +1,114 @@
 package stock.market.impl;
 
+import stock.market.Bar;
 import stock.market.NotRecognizedStockException;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
 import stock.market.StockMarket;
+import stock.market.StockSymbol;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
- * Facade between calling application and guts
+ * Facade between calling application and guts.
+ * Stock symbols are kept in {@link StockSymbolRegistry} replaced <b>copy-on-write</b> when symbols are added, so reading it never waits.
  * Created by g on 11/16/2016.
  */
 public class SimpleStockMarket implements StockMarket {
 
-    private final Map<String, StockOperations> stockSymbolToOperationDelegator;
+    private volatile StockSymbolRegistry registry;
     private final Function<List<BigDecimal>, BigDecimal> geometricMeanFunction;
 
     public SimpleStockMarket(Map<String, StockOperations> stockSymbolToOperationDelegator, Function<List<BigDecimal>, BigDecimal> geometricMeanFunction) {
-        this.stockSymbolToOperationDelegator = stockSymbolToOperationDelegator;
+        this.registry = new StockSymbolRegistry(stockSymbolToOperationDelegator);
         this.geometricMeanFunction = geometricMeanFunction;
     }
 
+    /**
+     * @return stock symbols known when called
+     */
+    public Set<String> getStockSymbols() {
+        return registry.getStockSymbols();
+    }
+
+    /**
+     * Adds new stock symbols. All symbols are added at once or none if any of them is already known.
+     */
+    public void addStockSymbols(Map<String, StockOperations> added) {
+        reload(Collections.emptyMap(), added);
+    }
+
+    /**
+     * Replaces stock data of known stock symbol, recorded trades are kept
+     */
+    public void updateStockData(String stockSymbol, Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData) {
+        reload(Collections.singletonMap(stockSymbol, operations -> operations.withStockData(dividedYieldProvider, stockData)), Collections.emptyMap());
+    }
+
+    /**
+     * Replaces operations of known stock symbols and adds new stock symbols with a single copy-on-write of the registry,
+     * so readers see all changes or none. Replacing operations are built first, nothing is changed if any of them cannot be built.
+     *
+     * @param updated builds operations replacing current operations of a known stock symbol, e.g. with other stock data
+     * @param added   operations of new stock symbols
+     */
+    public synchronized void reload(Map<String, UnaryOperator<StockOperations>> updated, Map<String, StockOperations> added) {
+        StockSymbolRegistry registry = this.registry;
+        Map<String, StockOperations> replaced = new LinkedHashMap<>();
+        updated.forEach((stockSymbol, update) -> {
+            StockOperations current = registry.get(stockSymbol);
+            if (current == null) {
+                throw new NotRecognizedStockException(stockSymbol);
+            }
+            replaced.put(stockSymbol, update.apply(current));
+        });
+        this.registry = registry.replace(replaced, added);
+    }
+
+    /**
+     * @return registry of stock symbols known when called, it never changes
+     */
+    StockSymbolRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return Volume Weighted Stock Price of the stock symbol with the time after which it changes even without new trades
+     */
+    public ExpiringPrice calculateExpiringVolumeWeightedStockPrice(String stockSymbol) {
+        return getDelegator(stockSymbol).calculateExpiringVolumeWeightedStockPrice();
+    }
+
     private StockOperations getDelegator(String stockSymbol) {
-        return Optional.ofNullable(stockSymbolToOperationDelegator.get(stockSymbol)).orElseThrow(() -> new NotRecognizedStockException(stockSymbol));
+        StockOperations delegator = registry.get(stockSymbol);
+        if (delegator == null) {
+            throw new NotRecognizedStockException(stockSymbol);
+        }
+        return delegator;
+    }
+
+    StockOperations getDelegator(StockSymbol stockSymbol) {
+        if (stockSymbol == null) {
+            throw new IllegalArgumentException("stockSymbol cannot be null");
+        }
+        StockOperations delegator = registry.get(stockSymbol);
+        if (delegator == null) {
+            throw new NotRecognizedStockException(stockSymbol.getName());
+        }
+        return delegator;
     }
 
     private BigDecimal requireValidPrice(BigDecimal price) {
@@ -39,6 +121,30 @@ public class SimpleStockMarket implements StockMarket {
         return price;
     }
 
+    @Override
+    public StockSymbol resolve(String stockSymbol) {
+        StockSymbol resolved = registry.resolve(stockSymbol);
+        if (resolved == null) {
+            throw new NotRecognizedStockException(stockSymbol);
+        }
+        return resolved;
+    }
+
+    @Override
+    public BigDecimal calculateDividedYield(StockSymbol stockSymbol, BigDecimal price) {
+        return getDelegator(stockSymbol).calculateDividedYield(requireValidPrice(price));
+    }
+
+    @Override
+    public BigDecimal calculatePERatio(StockSymbol stockSymbol, BigDecimal price) {
+        return getDelegator(stockSymbol).calculatePERatio(requireValidPrice(price));
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol) {
+        return getDelegator(stockSymbol).calculateVolumeWeightedStockPrice();
+    }
+
     @Override
     public BigDecimal calculateDividedYield(String stockSymbol, BigDecimal price) {
 
@@ -55,14 +161,114 @@ public class SimpleStockMarket implements StockMarket {
         getDelegator(trade.getStockSymbol()).record(trade);
     }
 
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        List<RejectedTrade> rejected = new ArrayList<>();
+        Map<String, List<Trade>> stockSymbolToTrades = new LinkedHashMap<>();
+        for (Trade trade : trades) {
+            if (trade == null) {
+                rejected.add(new RejectedTrade(null, "Trade is not set"));
+            } else {
+                stockSymbolToTrades.computeIfAbsent(trade.getStockSymbol(), s -> new ArrayList<>()).add(trade);
+            }
+        }
+        StockSymbolRegistry registry = this.registry;
+        stockSymbolToTrades.forEach((stockSymbol, stockTrades) -> {
+            StockOperations delegator = registry.get(stockSymbol);
+            if (delegator == null) {
+                stockTrades.forEach(t -> rejected.add(new RejectedTrade(t, "Stock symbol is not recognized: " + stockSymbol)));
+            } else {
+                rejected.addAll(delegator.recordAll(stockTrades));
+            }
+        });
+        return rejected;
+    }
+
+    @Override
+    public void record(StockSymbol stockSymbol, Trade trade) {
+        StockOperations delegator = getDelegator(stockSymbol);
+        if (trade == null) {
+            throw new IllegalArgumentException("trade cannot be null");
+        }
+        if (!stockSymbol.getName().equals(trade.getStockSymbol())) {
+            throw new IllegalArgumentException("Trade stock symbol have to be " + stockSymbol.getName());
+        }
+        delegator.record(trade);
+    }
+
+    /**
+     * Trades are passed to operations of the stock symbol as they are if all of them are of the stock symbol
+     */
+    @Override
+    public List<RejectedTrade> recordAll(StockSymbol stockSymbol, Collection<Trade> trades) {
+        StockOperations delegator = getDelegator(stockSymbol);
+        String name = stockSymbol.getName();
+        if (trades.stream().allMatch(trade -> trade != null && name.equals(trade.getStockSymbol()))) {
+            return delegator.recordAll(trades);
+        }
+        List<RejectedTrade> rejected = new ArrayList<>();
+        List<Trade> stockTrades = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            if (trade == null) {
+                rejected.add(new RejectedTrade(null, "Trade is not set"));
+            } else if (!name.equals(trade.getStockSymbol())) {
+                rejected.add(new RejectedTrade(trade, "Trade stock symbol have to be " + name));
+            } else {
+                stockTrades.add(trade);
+            }
+        }
+        rejected.addAll(delegator.recordAll(stockTrades));
+        return rejected;
+    }
+
     @Override
     public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol) {
         return getDelegator(stockSymbol).calculateVolumeWeightedStockPrice();
     }
 
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(String stockSymbol, Duration horizon) {
+        return getDelegator(stockSymbol).calculateVolumeWeightedStockPrice(horizon);
+    }
+
+    @Override
+    public BigDecimal calculateVolumeWeightedStockPrice(StockSymbol stockSymbol, Duration horizon) {
+        return getDelegator(stockSymbol).calculateVolumeWeightedStockPrice(horizon);
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(String stockSymbol) {
+        return getDelegator(stockSymbol).calculateOrderFlow();
+    }
+
+    @Override
+    public OrderFlow calculateOrderFlow(StockSymbol stockSymbol) {
+        return getDelegator(stockSymbol).calculateOrderFlow();
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(String stockSymbol, double quantile) {
+        return getDelegator(stockSymbol).calculatePriceQuantile(quantile);
+    }
+
+    @Override
+    public BigDecimal calculatePriceQuantile(StockSymbol stockSymbol, double quantile) {
+        return getDelegator(stockSymbol).calculatePriceQuantile(quantile);
+    }
+
+    @Override
+    public List<Bar> getBars(String stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return getDelegator(stockSymbol).getBars(interval, from, to);
+    }
+
+    @Override
+    public List<Bar> getBars(StockSymbol stockSymbol, Duration interval, LocalDateTime from, LocalDateTime to) {
+        return getDelegator(stockSymbol).getBars(interval, from, to);
+    }
+
     @Override
     public BigDecimal calculateGBCE() {
-        List<BigDecimal> stockPrices = stockSymbolToOperationDelegator.values().stream()
+        List<BigDecimal> stockPrices = registry.getOperations().stream()
                 .map(StockOperations::calculateVolumeWeightedStockPrice)
                 .filter(v -> v.compareTo(BigDecimal.ZERO) != 0).collect(Collectors.toList());
         return geometricMeanFunction.apply(stockPrices);
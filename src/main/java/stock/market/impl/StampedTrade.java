@@ -0,0 +1,17 @@
+package stock.market.impl;
+
+import stock.market.Trade;
+
+/**
+ * Trade with its timestamp converted to nanoseconds since epoch once when recorded, so expiry compares plain longs
+ */
+final class StampedTrade {
+
+    final Trade trade;
+    final long epochNanos;
+
+    StampedTrade(Trade trade, long epochNanos) {
+        this.trade = trade;
+        this.epochNanos = epochNanos;
+    }
+}
@@ -1,11 +1,13 @@
 package stock.market.impl;
 
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.math.BigDecimal;
 
 @AllArgsConstructor
+@EqualsAndHashCode
 @Getter
 public class StockData {
     private BigDecimal lastDividend;
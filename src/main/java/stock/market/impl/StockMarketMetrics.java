@@ -0,0 +1,119 @@
+package stock.market.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters collected by {@link MeteredStockMarket} and trade windows of {@link MeteredTradeStorage}.
+ * Metrics are <b>pulled</b>: every getter returns a snapshot computed when called, nothing is computed while recording.
+ * It is a JMX MXBean, so it can be exported as it is.
+ */
+public class StockMarketMetrics implements StockMarketMetricsMXBean {
+
+    private final LatencyHistogram recordLatency = new LatencyHistogram();
+    private final LatencyHistogram recordAllLatency = new LatencyHistogram();
+    private final LatencyHistogram volumeWeightedStockPriceLatency = new LatencyHistogram();
+    private final LatencyHistogram gbceLatency = new LatencyHistogram();
+    private final LongAdder recordedTrades = new LongAdder();
+    private final LongAdder rejectedTrades = new LongAdder();
+    private final CopyOnWriteArrayList<MeteredTradeStorage> tradeStorages = new CopyOnWriteArrayList<>();
+
+    /**
+     * Start time of calls not measured by sampling
+     */
+    static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    void recorded(long startNanos) {
+        measure(recordLatency, startNanos);
+        recordedTrades.increment();
+    }
+
+    void recordedAll(long startNanos, int recorded, int rejected) {
+        measure(recordAllLatency, startNanos);
+        recordedTrades.add(recorded);
+        rejectedTrades.add(rejected);
+    }
+
+    void rejected(long startNanos) {
+        measure(recordLatency, startNanos);
+        rejectedTrades.increment();
+    }
+
+    void calculatedVolumeWeightedStockPrice(long startNanos) {
+        measure(volumeWeightedStockPriceLatency, startNanos);
+    }
+
+    void calculatedGBCE(long startNanos) {
+        measure(gbceLatency, startNanos);
+    }
+
+    private static void measure(LatencyHistogram histogram, long startNanos) {
+        if (startNanos != NOT_MEASURED) {
+            histogram.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    void register(MeteredTradeStorage tradeStorage) {
+        tradeStorages.add(tradeStorage);
+    }
+
+    @Override
+    public LatencySnapshot getRecordLatency() {
+        return recordLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRecordAllLatency() {
+        return recordAllLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getVolumeWeightedStockPriceLatency() {
+        return volumeWeightedStockPriceLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getGBCELatency() {
+        return gbceLatency.snapshot();
+    }
+
+    @Override
+    public long getRecordedTrades() {
+        return recordedTrades.sum();
+    }
+
+    @Override
+    public long getRejectedTrades() {
+        return rejectedTrades.sum();
+    }
+
+    /**
+     * Trade storages without any recorded trade are skipped, windows of storages with the same stock symbol are summed
+     */
+    @Override
+    public Map<String, TradeWindow> getTradeWindows() {
+        Map<String, TradeWindow> result = new TreeMap<>();
+        for (MeteredTradeStorage tradeStorage : tradeStorages) {
+            String stockSymbol = tradeStorage.getStockSymbol();
+            if (stockSymbol != null) {
+                result.merge(stockSymbol, tradeStorage.getTradeWindow(), (a, b) -> new TradeWindow(
+                        a.getRecordedTrades() + b.getRecordedTrades(),
+                        a.getEvictedTrades() + b.getEvictedTrades(),
+                        a.getHeldTrades() + b.getHeldTrades()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        recordLatency.reset();
+        recordAllLatency.reset();
+        volumeWeightedStockPriceLatency.reset();
+        gbceLatency.reset();
+        recordedTrades.reset();
+        rejectedTrades.reset();
+    }
+}
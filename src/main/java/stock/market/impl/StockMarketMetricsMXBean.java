@@ -0,0 +1,25 @@
+package stock.market.impl;
+
+import java.util.Map;
+
+/**
+ * Metrics of {@link MeteredStockMarket} and {@link MeteredTradeStorage} exposed over JMX
+ */
+public interface StockMarketMetricsMXBean {
+    LatencySnapshot getRecordLatency();
+    LatencySnapshot getRecordAllLatency();
+    LatencySnapshot getVolumeWeightedStockPriceLatency();
+    LatencySnapshot getGBCELatency();
+    long getRecordedTrades();
+    long getRejectedTrades();
+
+    /**
+     * @return trade windows of metered trade storages by stock symbol of their trades
+     */
+    Map<String, TradeWindow> getTradeWindows();
+
+    /**
+     * Clears latencies and trade counters, trade windows are kept
+     */
+    void reset();
+}
@@ -1,13 +1,58 @@
 package stock.market.impl;
 
+import stock.market.Bar;
+import stock.market.OrderFlow;
+import stock.market.RejectedTrade;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
 
 public interface StockOperations {
     BigDecimal calculateDividedYield(BigDecimal price);
     BigDecimal calculatePERatio(BigDecimal price);
     void record(Trade trade);
+    List<RejectedTrade> recordAll(Collection<Trade> trades);
     BigDecimal calculateVolumeWeightedStockPrice();
+
+    /**
+     * @param horizon have to be > 0 and <= retention time of trades
+     * @return Volume Weighted Stock Price of trades within the horizon
+     */
+    BigDecimal calculateVolumeWeightedStockPrice(Duration horizon);
+
+    /**
+     * @return Volume Weighted Stock Price and volume of buy and sell trades within the retention time
+     */
+    OrderFlow calculateOrderFlow();
+
+    /**
+     * @param quantile have to be >= 0 and <= 1
+     * @return price quantile of trades within the retention time weighted by quantity, zero if there are no trades
+     */
+    BigDecimal calculatePriceQuantile(double quantile);
+
+    /**
+     * @return OHLCV bars of the interval with start in [from, to) ordered by start, the last one can be still in progress
+     * @throws IllegalArgumentException if bars of the interval are not aggregated (see {@link AggregatingStockOperations})
+     */
+    List<Bar> getBars(Duration interval, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Creates operations with other stock data (and dividend function of its stock type) used to calculate Dividend Yield and P/E Ratio.
+     * Recorded trades are shared with these operations, which are not changed, results calculated for previous data are not shared.
+     *
+     * @throws IllegalArgumentException if dividend cannot be calculated for the stock data
+     */
+    StockOperations withStockData(Function<StockData, BigDecimal> dividedYieldProvider, StockData stockData);
+
+    /**
+     * @return Volume Weighted Stock Price with the time after which it changes even without new trades, totals are computed once for both
+     */
+    ExpiringPrice calculateExpiringVolumeWeightedStockPrice();
 }
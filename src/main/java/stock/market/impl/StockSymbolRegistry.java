@@ -0,0 +1,112 @@
+package stock.market.impl;
+
+import stock.market.StockSymbol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable registry assigning <b>dense ids</b> to stock symbols in order of registration,
+ * so operations of a resolved {@link StockSymbol} are found by array index.
+ * Adding stock symbols or replacing their operations creates a new registry, ids of known symbols are kept.
+ */
+final class StockSymbolRegistry {
+
+    private final Map<String, StockSymbol> stockSymbols;
+    private final StockSymbol[] resolved;
+    private final StockOperations[] operations;
+
+    StockSymbolRegistry(Map<String, StockOperations> stockSymbolToOperationDelegator) {
+        this(Collections.emptyMap(), new StockSymbol[0], new StockOperations[0], stockSymbolToOperationDelegator);
+    }
+
+    private StockSymbolRegistry(Map<String, StockSymbol> known, StockSymbol[] knownResolved, StockOperations[] knownOperations, Map<String, StockOperations> added) {
+        this.stockSymbols = new LinkedHashMap<>(known);
+        this.resolved = Arrays.copyOf(knownResolved, knownResolved.length + added.size());
+        this.operations = Arrays.copyOf(knownOperations, knownOperations.length + added.size());
+        added.forEach((name, operation) -> {
+            int id = stockSymbols.size();
+            StockSymbol stockSymbol = new StockSymbol(id, name);
+            stockSymbols.put(name, stockSymbol);
+            resolved[id] = stockSymbol;
+            operations[id] = operation;
+        });
+    }
+
+    StockSymbolRegistry add(Map<String, StockOperations> added) {
+        for (String name : added.keySet()) {
+            if (stockSymbols.containsKey(name)) {
+                throw new IllegalArgumentException("Stock symbol is already known: " + name);
+            }
+        }
+        return new StockSymbolRegistry(stockSymbols, resolved, operations, added);
+    }
+
+    /**
+     * @param replaced operations of known stock symbols
+     * @param added    operations of new stock symbols
+     */
+    StockSymbolRegistry replace(Map<String, StockOperations> replaced, Map<String, StockOperations> added) {
+        for (String name : replaced.keySet()) {
+            if (!stockSymbols.containsKey(name)) {
+                throw new IllegalArgumentException("Stock symbol is not known: " + name);
+            }
+        }
+        StockSymbolRegistry result = add(added);
+        replaced.forEach((name, operation) -> result.operations[result.stockSymbols.get(name).getId()] = operation);
+        return result;
+    }
+
+    /**
+     * @return resolved stock symbol, null if not known
+     */
+    StockSymbol resolve(String name) {
+        return stockSymbols.get(name);
+    }
+
+    /**
+     * @return operations of stock symbol, null if not known
+     */
+    StockOperations get(String name) {
+        StockSymbol stockSymbol = stockSymbols.get(name);
+        return stockSymbol == null ? null : operations[stockSymbol.getId()];
+    }
+
+    /**
+     * @return operations of stock symbol, null if id and name of stock symbol do not match this registry
+     */
+    StockOperations get(StockSymbol stockSymbol) {
+        int id = stockSymbol.getId();
+        if (id < 0 || id >= operations.length) {
+            return null;
+        }
+        StockSymbol known = resolved[id];
+        if (known != stockSymbol && !known.getName().equals(stockSymbol.getName())) {
+            return null;
+        }
+        return operations[id];
+    }
+
+    /**
+     * @param id have to be >= 0 and < size
+     */
+    StockOperations get(int id) {
+        return operations[id];
+    }
+
+    int size() {
+        return operations.length;
+    }
+
+    Set<String> getStockSymbols() {
+        return Collections.unmodifiableSet(stockSymbols.keySet());
+    }
+
+    List<StockOperations> getOperations() {
+        return Collections.unmodifiableList(Arrays.asList(operations));
+    }
+}
@@ -0,0 +1,47 @@
+package stock.market.impl;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Wall clock with millisecond resolution. Timestamps are converted with the zone offset cached between offset transitions (see {@link ZoneOffsetCache}).
+ */
+public class SystemMarketClock implements MarketClock {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final ZoneId zone;
+    private final ZoneOffsetCache offsets;
+
+    public SystemMarketClock() {
+        this(ZoneId.systemDefault());
+    }
+
+    public SystemMarketClock(ZoneId zone) {
+        if (zone == null) {
+            throw new IllegalArgumentException("zone cannot be null");
+        }
+        this.zone = zone;
+        this.offsets = new ZoneOffsetCache(zone);
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        return System.currentTimeMillis() * NANOS_PER_MILLI;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public long toEpochNanos(LocalDateTime timestamp) {
+        return offsets.toEpochNanos(timestamp);
+    }
+
+    @Override
+    public LocalDateTime toLocalDateTime(long epochNanos) {
+        return offsets.toLocalDateTime(epochNanos);
+    }
+}
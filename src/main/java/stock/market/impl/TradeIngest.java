@@ -0,0 +1,281 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.StockMarket;
+import stock.market.Trade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous ingest stage in front of stock market. Trades are partitioned by stock symbol, every partition is a preallocated
+ * <b>ring buffer</b> with many producers and a <b>single writer</b> thread recording published trades in batches by {@link StockMarket#recordAll},
+ * so validation, stock symbol lookup and storage mutation leave the calling thread. Producers only claim a slot by CAS and publish the trade into it.
+ * <p>
+ * Trades of one stock symbol are always recorded by the same writer, so a stock market that is not thread-safe can be used
+ * as long as it is queried only after {@link #flush()} from a single thread; otherwise use {@link ConcurrentStockMarket}.
+ * Queries needing <b>read-your-writes</b> consistency call {@link #flush()} or {@link #flush(String)} first.
+ */
+public class TradeIngest implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TradeIngest.class.getName());
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int SPINS_BEFORE_PARKING = 100;
+
+    /**
+     * What publishing does when the ring of the partition is full
+     */
+    public enum Backpressure {
+        /**
+         * wait until the writer frees a slot
+         */
+        BLOCK,
+        /**
+         * drop the trade and return false
+         */
+        DROP,
+        /**
+         * throw {@link IllegalStateException}
+         */
+        FAIL
+    }
+
+    private final StockMarket stockMarket;
+    private final Backpressure backpressure;
+    private final int batchSize;
+    private final Consumer<List<RejectedTrade>> rejectedTradesHandler;
+    private final Partition[] partitions;
+    private final LongAdder droppedTrades = new LongAdder();
+    private volatile boolean closed;
+
+    public TradeIngest(StockMarket stockMarket, int partitions, int ringSize, Backpressure backpressure) {
+        this(stockMarket, partitions, ringSize, backpressure, 1024, TradeIngest::logRejectedTrades);
+    }
+
+    /**
+     * @param ringSize slots of a partition, have to be power of two
+     * @param batchSize maximal number of trades recorded at once
+     * @param rejectedTradesHandler called by writer threads with trades rejected by stock market
+     */
+    public TradeIngest(StockMarket stockMarket, int partitions, int ringSize, Backpressure backpressure, int batchSize,
+                       Consumer<List<RejectedTrade>> rejectedTradesHandler) {
+        if (stockMarket == null) {
+            throw new IllegalArgumentException("stockMarket cannot be null");
+        }
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions have to be > 0");
+        }
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("ringSize have to be power of two");
+        }
+        if (backpressure == null) {
+            throw new IllegalArgumentException("backpressure cannot be null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize have to be > 0");
+        }
+        if (rejectedTradesHandler == null) {
+            throw new IllegalArgumentException("rejectedTradesHandler cannot be null");
+        }
+        this.stockMarket = stockMarket;
+        this.backpressure = backpressure;
+        this.batchSize = batchSize;
+        this.rejectedTradesHandler = rejectedTradesHandler;
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(ringSize);
+            Thread writer = new Thread(this.partitions[i], "trade-ingest-" + i);
+            writer.setDaemon(true);
+            this.partitions[i].writer = writer;
+            writer.start();
+        }
+    }
+
+    /**
+     * Publishes trade to be recorded by the writer of its stock symbol. Invalid trades are rejected by the writer.
+     *
+     * @return false if the trade was dropped because the ring is full
+     * @throws IllegalStateException if the ring is full and backpressure is {@link Backpressure#FAIL} or if ingest is closed
+     */
+    public boolean publish(Trade trade) {
+        if (closed) {
+            throw new IllegalStateException("trade ingest is closed");
+        }
+        Partition partition = partitions[partitionOf(trade == null ? null : trade.getStockSymbol())];
+        long sequence = partition.claim();
+        if (sequence < 0) {
+            if (backpressure == Backpressure.FAIL) {
+                throw new IllegalStateException("trade ingest ring is full");
+            }
+            droppedTrades.increment();
+            return false;
+        }
+        partition.publish(sequence, trade);
+        return true;
+    }
+
+    /**
+     * Waits until all trades published before the call are recorded
+     */
+    public void flush() {
+        long[] sequences = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            sequences[i] = partitions[i].claimed.get();
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i].awaitApplied(sequences[i]);
+        }
+    }
+
+    /**
+     * Waits until all trades of the partition of the stock symbol published before the call are recorded
+     */
+    public void flush(String stockSymbol) {
+        Partition partition = partitions[partitionOf(stockSymbol)];
+        partition.awaitApplied(partition.claimed.get());
+    }
+
+    public long getDroppedTrades() {
+        return droppedTrades.sum();
+    }
+
+    private int partitionOf(String stockSymbol) {
+        return stockSymbol == null ? 0 : Math.floorMod(stockSymbol.hashCode(), partitions.length);
+    }
+
+    /**
+     * Stops accepting trades, records trades already published and stops writers.
+     * If the calling thread is interrupted, writers are stopped without waiting for them and the interrupt status is kept.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        for (Partition partition : partitions) {
+            partition.running = false;
+        }
+        try {
+            for (Partition partition : partitions) {
+                partition.writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void logRejectedTrades(List<RejectedTrade> rejected) {
+        rejected.forEach(r -> LOGGER.warning("trade rejected: " + r.getReason()));
+    }
+
+    private static void idle(int spins) {
+        if (spins < SPINS_BEFORE_PARKING) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    private final class Partition implements Runnable {
+        private final Trade[] entries;
+        /**
+         * sequence published into every slot, slot is readable when it equals the sequence the writer waits for
+         */
+        private final AtomicLongArray published;
+        private final int mask;
+        /**
+         * number of claimed slots
+         */
+        private final AtomicLong claimed = new AtomicLong();
+        /**
+         * number of recorded trades, slots below it are free
+         */
+        private final AtomicLong applied = new AtomicLong();
+        private volatile boolean running = true;
+        private Thread writer;
+
+        private Partition(int ringSize) {
+            this.entries = new Trade[ringSize];
+            this.published = new AtomicLongArray(ringSize);
+            for (int i = 0; i < ringSize; i++) {
+                published.set(i, -1L);
+            }
+            this.mask = ringSize - 1;
+        }
+
+        /**
+         * @return claimed sequence or -1 if the ring is full and backpressure does not block
+         */
+        private long claim() {
+            int spins = 0;
+            while (true) {
+                long sequence = claimed.get();
+                if (sequence - applied.get() >= entries.length) {
+                    if (backpressure != Backpressure.BLOCK) {
+                        return -1L;
+                    }
+                    idle(spins++);
+                } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            }
+        }
+
+        private void publish(long sequence, Trade trade) {
+            int index = (int) sequence & mask;
+            entries[index] = trade;
+            published.lazySet(index, sequence);
+        }
+
+        private void awaitApplied(long sequence) {
+            int spins = 0;
+            while (applied.get() < sequence) {
+                if (!writer.isAlive()) {
+                    throw new IllegalStateException("trade ingest is stopped");
+                }
+                idle(spins++);
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Trade> batch = new ArrayList<>(batchSize);
+            long next = 0;
+            int spins = 0;
+            while (running || next < claimed.get()) {
+                while (batch.size() < batchSize && published.get((int) next & mask) == next) {
+                    int index = (int) next & mask;
+                    batch.add(entries[index]);
+                    entries[index] = null;
+                    next++;
+                }
+                if (batch.isEmpty()) {
+                    idle(spins++);
+                    continue;
+                }
+                spins = 0;
+                record(batch);
+                batch.clear();
+                applied.lazySet(next);
+            }
+        }
+
+        private void record(List<Trade> batch) {
+            try {
+                List<RejectedTrade> rejected = stockMarket.recordAll(batch);
+                if (!rejected.isEmpty()) {
+                    rejectedTradesHandler.accept(rejected);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "batch of " + batch.size() + " trades not recorded", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package stock.market.impl;
+
+import stock.market.StockMarket;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only <b>binary journal</b> of recorded trades written through memory-mapped regions of a file.
+ * Every trade takes {@value #RECORD_SIZE} bytes: marker, site (-1 if not set), price scale, stock symbol (up to {@value #MAX_STOCK_SYMBOL_LENGTH} ASCII characters),
+ * append time, timestamp, quantity and unscaled price.
+ * Written regions are forced to disk by a background daemon thread once per commit interval (<b>group commit</b>),
+ * so trades appended within the last interval can be lost by a crash of the machine.
+ * Records are appended in order of append time, so {@link #replay(StockMarket)} finds the tail inside the retention time
+ * by binary search and reads only that tail. Journal is not rotated, the file grows with every trade.
+ */
+public class TradeJournal implements AutoCloseable {
+
+    static final int RECORD_SIZE = 48;
+    static final int MAX_STOCK_SYMBOL_LENGTH = 12;
+
+    private static final byte MARKER = 1;
+    private static final int DEFAULT_REGION_SIZE = RECORD_SIZE * 350_000;
+    private static final int REPLAY_BATCH_SIZE = 10_000;
+    private static final byte NO_SITE = -1;
+    private static final Site[] SITES = Site.values();
+
+    private final FileChannel channel;
+    private final long retentionNanos;
+    private final MarketClock clock;
+    private final long regionSize;
+    private final ScheduledExecutorService committer;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long size;
+    private boolean dirty;
+    private volatile boolean replaying;
+
+    public TradeJournal(Path file, TemporalAmount validTradeRetentionTimeAmount, MarketClock clock, Duration commitInterval) throws IOException {
+        this(file, validTradeRetentionTimeAmount, clock, commitInterval, DEFAULT_REGION_SIZE);
+    }
+
+    TradeJournal(Path file, TemporalAmount validTradeRetentionTimeAmount, MarketClock clock, Duration commitInterval, int regionSize) throws IOException {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        if (commitInterval.toMillis() <= 0) {
+            throw new IllegalArgumentException("commitInterval have to be >= 1ms");
+        }
+        if (regionSize <= 0 || regionSize % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("regionSize have to be > 0 and multiple of " + RECORD_SIZE);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.clock = clock;
+        this.regionSize = regionSize;
+        this.size = findSize();
+        mapRegion(size - size % regionSize);
+        this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trade-journal-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, commitInterval.toMillis(), commitInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @throws IllegalArgumentException if trade cannot be written in journal format
+     */
+    public void validate(Trade trade) {
+        encode(trade);
+    }
+
+    /**
+     * Encodes every field of the trade except append time, so a trade which cannot be written is rejected before anything is changed.
+     * Trade without site is encoded with site -1.
+     *
+     * @return record of {@value #RECORD_SIZE} bytes to append
+     * @throws IllegalArgumentException if trade cannot be written in journal format
+     */
+    byte[] encode(Trade trade) {
+        String stockSymbol = trade.getStockSymbol();
+        if (stockSymbol == null) {
+            throw new IllegalArgumentException("Trade stock symbol is not set");
+        }
+        if (stockSymbol.length() > MAX_STOCK_SYMBOL_LENGTH || !StandardCharsets.US_ASCII.newEncoder().canEncode(stockSymbol)) {
+            throw new IllegalArgumentException("Trade stock symbol have to have at most " + MAX_STOCK_SYMBOL_LENGTH + " ASCII characters");
+        }
+        BigDecimal price = toUnscaledPrice(trade.getPrice());
+        byte[] stockSymbolBytes = stockSymbol.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(0, MARKER);
+        record.put(1, trade.getSite() == null ? NO_SITE : (byte) trade.getSite().ordinal());
+        record.put(2, (byte) price.scale());
+        record.put(3, (byte) stockSymbolBytes.length);
+        for (int i = 0; i < stockSymbolBytes.length; i++) {
+            record.put(4 + i, stockSymbolBytes[i]);
+        }
+        record.putLong(24, clock.toEpochNanos(trade.getTimestamp()));
+        record.putLong(32, trade.getQuantity());
+        record.putLong(40, price.unscaledValue().longValue());
+        return record.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if trade cannot be written in journal format, nothing is appended then
+     */
+    public void append(Trade trade) {
+        append(encode(trade));
+    }
+
+    /**
+     * @throws IllegalArgumentException if any trade cannot be written in journal format, nothing is appended then
+     */
+    public void appendAll(Collection<Trade> trades) {
+        List<byte[]> records = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            records.add(encode(trade));
+        }
+        appendAllEncoded(records);
+    }
+
+    /**
+     * @param record trade encoded by {@link #encode(Trade)}
+     */
+    synchronized void append(byte[] record) {
+        if (!replaying) {
+            write(record, clock.currentTimeNanos());
+        }
+    }
+
+    /**
+     * @param records trades encoded by {@link #encode(Trade)}
+     */
+    synchronized void appendAllEncoded(Collection<byte[]> records) {
+        if (!replaying) {
+            long now = clock.currentTimeNanos();
+            for (byte[] record : records) {
+                write(record, now);
+            }
+        }
+    }
+
+    /**
+     * Marker is written last, so a record is never found partially written
+     */
+    private void write(byte[] record, long appendNanos) {
+        if (size == regionStart + regionSize) {
+            region.force();
+            mapRegion(size);
+        }
+        int position = (int) (size - regionStart);
+        for (int i = 1; i < RECORD_SIZE; i++) {
+            region.put(position + i, record[i]);
+        }
+        region.putLong(position + 16, appendNanos);
+        region.put(position, MARKER);
+        size += RECORD_SIZE;
+        dirty = true;
+    }
+
+    /**
+     * Forces appended trades to disk
+     */
+    public void commit() {
+        MappedByteBuffer toForce;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            toForce = region;
+            dirty = false;
+        }
+        toForce.force();
+    }
+
+    /**
+     * Records trades appended inside the retention time into stock market. Nothing is appended while replaying,
+     * so replay has to be done on startup before trades are recorded.
+     *
+     * @return number of replayed trades
+     */
+    public int replay(StockMarket stockMarket) throws IOException {
+        long end;
+        synchronized (this) {
+            commit();
+            end = size;
+            replaying = true;
+        }
+        try {
+            long threshold = clock.currentTimeNanos() - retentionNanos;
+            int replayed = 0;
+            List<Trade> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+            ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * REPLAY_BATCH_SIZE);
+            for (long position = findFirstAppendedSince(threshold, end); position < end; position += block.limit()) {
+                block.clear();
+                block.limit((int) Math.min(block.capacity(), end - position));
+                read(block, position);
+                for (int offset = 0; offset < block.limit(); offset += RECORD_SIZE) {
+                    if (block.getLong(offset + 24) >= threshold) {
+                        batch.add(toTrade(block, offset));
+                    }
+                }
+                replayed += replay(stockMarket, batch);
+            }
+            return replayed;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * @return all trades appended until now in order of appending, read lazily block by block
+     */
+    public Stream<Trade> trades() {
+        long end;
+        synchronized (this) {
+            end = size;
+        }
+        Iterator<Trade> iterator = new Iterator<Trade>() {
+            private final ByteBuffer block = (ByteBuffer) ByteBuffer.allocate(RECORD_SIZE * REPLAY_BATCH_SIZE).limit(0);
+            private long position;
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                return position + offset < end;
+            }
+
+            @Override
+            public Trade next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (offset == block.limit()) {
+                    position += offset;
+                    offset = 0;
+                    block.clear();
+                    block.limit((int) Math.min(block.capacity(), end - position));
+                    try {
+                        read(block, position);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                Trade trade = toTrade(block, offset);
+                offset += RECORD_SIZE;
+                return trade;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static int replay(StockMarket stockMarket, List<Trade> batch) {
+        int replayed = batch.size() - stockMarket.recordAll(batch).size();
+        batch.clear();
+        return replayed;
+    }
+
+    private long findFirstAppendedSince(long threshold, long end) throws IOException {
+        long low = 0;
+        long high = end / RECORD_SIZE;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (read(middle * RECORD_SIZE).getLong(16) < threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low * RECORD_SIZE;
+    }
+
+    /**
+     * Records are written as a prefix of the file followed by zeros, so the end is found by binary search of markers
+     */
+    private long findSize() throws IOException {
+        long low = 0;
+        long high = channel.size() / RECORD_SIZE;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (read(middle * RECORD_SIZE).get(0) == MARKER) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low * RECORD_SIZE;
+    }
+
+    private ByteBuffer read(long position) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        read(record, position);
+        return record;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private Trade toTrade(ByteBuffer block, int offset) {
+        byte[] stockSymbol = new byte[block.get(offset + 3)];
+        for (int i = 0; i < stockSymbol.length; i++) {
+            stockSymbol[i] = block.get(offset + 4 + i);
+        }
+        return new Trade(new String(stockSymbol, StandardCharsets.US_ASCII),
+                clock.toLocalDateTime(block.getLong(offset + 24)),
+                block.getLong(offset + 32),
+                block.get(offset + 1) == NO_SITE ? null : SITES[block.get(offset + 1)],
+                BigDecimal.valueOf(block.getLong(offset + 40), block.get(offset + 2)));
+    }
+
+    private void mapRegion(long start) {
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+            regionStart = start;
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot map trade journal", e);
+        }
+    }
+
+    private static BigDecimal toUnscaledPrice(BigDecimal price) {
+        BigDecimal result = price.unscaledValue().bitLength() < Long.SIZE ? price : price.stripTrailingZeros();
+        if (result.unscaledValue().bitLength() >= Long.SIZE || result.scale() < Byte.MIN_VALUE || result.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Trade price have to fit in long with scale of one byte");
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        committer.shutdownNow();
+        commit();
+        channel.close();
+    }
+}
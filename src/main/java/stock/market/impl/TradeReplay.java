@@ -0,0 +1,107 @@
+package stock.market.impl;
+
+import stock.market.StockMarket;
+import stock.market.StockSymbol;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Replays historical trades into stock market as fast as possible. Time of the market is a {@link ReplayMarketClock}
+ * moved forward by trade timestamps, so trades expire as they would in real time.
+ * Volume Weighted Stock Prices and GBCE are sampled at every multiple of the sampling interval passed by the replay.
+ * Trades are streamed and recorded in batches of bounded size, so memory does not depend on the number of replayed trades.
+ * Stock market and its trade storages have to use the same clock.
+ */
+public class TradeReplay {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final StockMarket stockMarket;
+    private final ReplayMarketClock clock;
+    private final long samplingIntervalNanos;
+    private final List<StockSymbol> sampledStockSymbols;
+    private final Consumer<ReplaySample> sampleConsumer;
+
+    private final List<Trade> batch = new ArrayList<>(BATCH_SIZE);
+    private long latestTimestamp = Long.MIN_VALUE;
+    private long recorded;
+
+    public TradeReplay(StockMarket stockMarket, ReplayMarketClock clock, Duration samplingInterval,
+                       Collection<String> sampledStockSymbols, Consumer<ReplaySample> sampleConsumer) {
+        if (stockMarket == null) {
+            throw new IllegalArgumentException("stockMarket cannot be null");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        if (samplingInterval.toNanos() <= 0) {
+            throw new IllegalArgumentException("samplingInterval have to be > 0");
+        }
+        if (sampleConsumer == null) {
+            throw new IllegalArgumentException("sampleConsumer cannot be null");
+        }
+        this.stockMarket = stockMarket;
+        this.clock = clock;
+        this.samplingIntervalNanos = samplingInterval.toNanos();
+        this.sampledStockSymbols = sampledStockSymbols.stream().map(stockMarket::resolve).collect(Collectors.toList());
+        this.sampleConsumer = sampleConsumer;
+    }
+
+    /**
+     * Replays trades ordered (at least roughly) by timestamp. Trades older than the time already reached are recorded as late trades.
+     *
+     * @return number of recorded trades, invalid trades are skipped
+     */
+    public long replay(Iterator<Trade> trades) {
+        recorded = 0;
+        long nextSample = Math.floorDiv(clock.currentTimeNanos(), samplingIntervalNanos) * samplingIntervalNanos + samplingIntervalNanos;
+        while (trades.hasNext()) {
+            Trade trade = trades.next();
+            if (trade != null && trade.getTimestamp() != null) {
+                long timestamp = clock.toEpochNanos(trade.getTimestamp());
+                while (timestamp >= nextSample) {
+                    flush();
+                    clock.advanceTo(Math.max(nextSample, clock.currentTimeNanos()));
+                    sample(nextSample);
+                    nextSample += samplingIntervalNanos;
+                }
+                latestTimestamp = Math.max(latestTimestamp, timestamp);
+            }
+            batch.add(trade);
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+        flush();
+        return recorded;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (latestTimestamp > clock.currentTimeNanos()) {
+            clock.advanceTo(latestTimestamp);
+        }
+        recorded += batch.size() - stockMarket.recordAll(batch).size();
+        batch.clear();
+    }
+
+    private void sample(long time) {
+        Map<String, BigDecimal> volumeWeightedStockPrices = new LinkedHashMap<>();
+        for (StockSymbol stockSymbol : sampledStockSymbols) {
+            volumeWeightedStockPrices.put(stockSymbol.getName(), stockMarket.calculateVolumeWeightedStockPrice(stockSymbol));
+        }
+        sampleConsumer.accept(new ReplaySample(clock.toLocalDateTime(time), volumeWeightedStockPrices, stockMarket.calculateGBCE()));
+    }
+}
@@ -1,10 +1,47 @@
 package stock.market.impl;
 
+import stock.market.RejectedTrade;
+import stock.market.Site;
 import stock.market.Trade;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Storage of valid trades of one stock symbol. Storages keeping trades can list them (see {@link ListableTradeStorage}),
+ * storages keeping trades ordered in time segments can also stream trades of a time range (see {@link RangeListableTradeStorage}).
+ */
 public interface TradeStorage {
     void record(Trade trade);
-    List<Trade> getValidTrades();
+    List<RejectedTrade> recordAll(Collection<Trade> trades);
+    TradeTotals getValidTradeTotals();
+
+    /**
+     * @param horizon have to be > 0 and <= retention time
+     * @return totals of trades valid within the horizon
+     */
+    TradeTotals getValidTradeTotals(Duration horizon);
+
+    /**
+     * Expiry of totals of one site is the expiry of totals of all trades where storage does not track the oldest trade of the site,
+     * so it is never later than the time the totals change.
+     *
+     * @return totals of valid trades of the site
+     */
+    TradeTotals getValidTradeTotals(Site site);
+
+    /**
+     * Quantile weighted by quantity
+     *
+     * @param quantile have to be >= 0 and <= 1, 0.5 is the median
+     * @return price below which the quantile of valid quantity was traded, zero if there are no valid trades
+     */
+    BigDecimal getValidTradePriceQuantile(double quantile);
+
+    /**
+     * @return number of trades removed as outdated since the storage was created, can be read from any thread
+     */
+    long getEvictedTradeCount();
 }
@@ -0,0 +1,315 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps trades <b>off-heap</b> in slabs of direct memory with fixed-width records (epoch nanos, quantity, fixed-point price, site),
+ * so the window adds no objects to the old generation. Trades are appended in recording order, every slab knows
+ * its oldest and newest timestamp and its totals of all, buy and sell trades. Slab whose newest trade is outdated is reclaimed as a whole and reused.
+ * The first slab is small and every next one doubles up to the maximum, so symbols with few trades reserve little direct memory.
+ * Reclaimed slabs beyond the free pool are freed explicitly by {@link DirectBuffers}, not left to the garbage collector.
+ * VWAP adds totals of slabs valid as a whole and reads records only of slabs on the retention boundary.
+ * Trade objects are materialized again only by {@link #getValidTrades()} and lazily by {@link #getValidTrades(LocalDateTime, LocalDateTime)}.
+ */
+public class TradeStorageWithOffHeapSlabs implements RangeListableTradeStorage {
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int PRICE_SCALE = TradeStorageWithPrimitiveColumns.PRICE_SCALE;
+    private final static int MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES = 5000;
+    private static final int DEFAULT_SLAB_RECORDS = 4096;
+    private static final int MIN_SLAB_RECORDS = 64;
+    private static final int MAX_FREE_SLABS = 4;
+    private static final Site[] SITES = Site.values();
+    private static final byte NO_SITE = -1;
+
+    private int operationSinceLastRemovingOldTrades;
+    private final long retentionNanos;
+    private final MarketClock clock;
+    private final int maxSlabRecords;
+
+    private final Deque<Slab> slabs = new ArrayDeque<>();
+    private final Deque<Slab> freeSlabs = new ArrayDeque<>();
+    private String stockSymbol;
+    private volatile long evictedTradeCount;
+
+    public TradeStorageWithOffHeapSlabs(TemporalAmount validTradeRetentionTimeAmount) {
+        this(validTradeRetentionTimeAmount, new SystemMarketClock());
+    }
+
+    public TradeStorageWithOffHeapSlabs(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        this(validTradeRetentionTimeAmount, clock, DEFAULT_SLAB_RECORDS);
+    }
+
+    /**
+     * @param maxSlabRecords records of the largest slab, the first slab has {@value #MIN_SLAB_RECORDS} records or less
+     */
+    TradeStorageWithOffHeapSlabs(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock, int maxSlabRecords) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        if (maxSlabRecords <= 0) {
+            throw new IllegalArgumentException("maxSlabRecords have to be > 0");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.clock = clock;
+        this.maxSlabRecords = maxSlabRecords;
+    }
+
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        long price = TradeStorageWithPrimitiveColumns.toFixedPoint(trade.getPrice());
+        operationSinceLastRemovingOldTrades++;
+        removeOldTradesIfNeeded();
+        add(trade, price);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        operationSinceLastRemovingOldTrades += trades.size();
+        removeOldTradesIfNeeded();
+        return TradeValidator.forEachValid(trades, trade -> add(trade, TradeStorageWithPrimitiveColumns.toFixedPoint(trade.getPrice())));
+    }
+
+    private void add(Trade trade, long price) {
+        Slab slab = slabs.peekLast();
+        if (slab == null || slab.count == slab.capacity) {
+            slab = freeSlabs.isEmpty() ? new Slab(nextSlabRecords(slab)) : freeSlabs.poll();
+            slabs.addLast(slab);
+        }
+        slab.add(clock.toEpochNanos(trade.getTimestamp()), trade.getQuantity(), price,
+                trade.getSite() == null ? NO_SITE : (byte) trade.getSite().ordinal());
+        stockSymbol = trade.getStockSymbol();
+    }
+
+    private int nextSlabRecords(Slab last) {
+        return last == null ? Math.min(MIN_SLAB_RECORDS, maxSlabRecords) : (int) Math.min(2L * last.capacity, maxSlabRecords);
+    }
+
+    /**
+     * @return copy of valid trades ordered by timestamp
+     */
+    @Override
+    public List<Trade> getValidTrades() {
+        long threshold = removeOldTrades();
+        List<Trade> result = new ArrayList<>();
+        for (Slab slab : slabs) {
+            for (int i = 0; i < slab.count; i++) {
+                int offset = i * RECORD_SIZE;
+                long timestamp = slab.buffer.getLong(offset);
+                if (timestamp >= threshold) {
+                    result.add(toTrade(slab, offset));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Trade::getTimestamp));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Slabs without trades in the range are skipped by their oldest and newest timestamp, records of other slabs are filtered.
+     * Trades come in recording order.
+     */
+    @Override
+    public Stream<Trade> getValidTrades(LocalDateTime from, LocalDateTime to) {
+        long start = Math.max(clock.currentTimeNanos() - retentionNanos, clock.toEpochNanos(from));
+        long end = clock.toEpochNanos(to);
+        return slabs.stream()
+                .filter(slab -> slab.newest >= start && slab.oldest < end)
+                .flatMap(slab -> IntStream.range(0, slab.count)
+                        .map(i -> i * RECORD_SIZE)
+                        .filter(offset -> slab.buffer.getLong(offset) >= start && slab.buffer.getLong(offset) < end)
+                        .mapToObj(offset -> toTrade(slab, offset)));
+    }
+
+    private Trade toTrade(Slab slab, int offset) {
+        byte site = slab.buffer.get(offset + 24);
+        return new Trade(stockSymbol,
+                clock.toLocalDateTime(slab.buffer.getLong(offset)),
+                slab.buffer.getLong(offset + 8),
+                site < 0 ? null : SITES[site],
+                BigDecimal.valueOf(slab.buffer.getLong(offset + 16), PRICE_SCALE));
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        long threshold = removeOldTrades();
+        return totals(threshold, retentionNanos, null);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        if (horizon == null || horizon.toNanos() <= 0 || horizon.toNanos() > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        long threshold = removeOldTrades() + retentionNanos - horizon.toNanos();
+        return totals(threshold, horizon.toNanos(), null);
+    }
+
+    /**
+     * Expiry of whole slabs is the expiry of their oldest trade of both sites
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        long threshold = removeOldTrades();
+        return totals(threshold, retentionNanos, site);
+    }
+
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
+    /**
+     * @return direct memory of slabs in use and in the free pool
+     */
+    long getReservedBytes() {
+        long records = 0L;
+        for (Slab slab : slabs) {
+            records += slab.capacity;
+        }
+        for (Slab slab : freeSlabs) {
+            records += slab.capacity;
+        }
+        return records * RECORD_SIZE;
+    }
+
+    /**
+     * @param site site of summed trades, null sums all trades
+     */
+    private TradeTotals totals(long threshold, long horizonNanos, Site site) {
+        FixedPointTurnover turnover = new FixedPointTurnover();
+        long quantity = 0L;
+        long oldest = Long.MAX_VALUE;
+        for (Slab slab : slabs) {
+            if (slab.oldest >= threshold) {
+                long slabQuantity = site == null ? slab.quantity : slab.siteQuantities[site.ordinal()];
+                if (slabQuantity > 0L) {
+                    turnover.add(site == null ? slab.turnover : slab.siteTurnovers[site.ordinal()]);
+                    quantity += slabQuantity;
+                    oldest = Math.min(oldest, slab.oldest);
+                }
+            } else if (slab.newest >= threshold) {
+                for (int offset = 0; offset < slab.count * RECORD_SIZE; offset += RECORD_SIZE) {
+                    long timestamp = slab.buffer.getLong(offset);
+                    if (timestamp >= threshold && (site == null || slab.buffer.get(offset + 24) == site.ordinal())) {
+                        turnover.add(slab.buffer.getLong(offset + 16), slab.buffer.getLong(offset + 8));
+                        quantity += slab.buffer.getLong(offset + 8);
+                        oldest = Math.min(oldest, timestamp);
+                    }
+                }
+            }
+        }
+        return new TradeTotals(turnover.toBigDecimal(PRICE_SCALE), quantity,
+                oldest == Long.MAX_VALUE ? null : clock.toLocalDateTime(oldest + horizonNanos));
+    }
+
+    private void removeOldTradesIfNeeded() {
+        if (operationSinceLastRemovingOldTrades > MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES) {
+            removeOldTrades();
+        }
+    }
+
+    /**
+     * @return retention threshold in nanoseconds since epoch
+     */
+    private long removeOldTrades() {
+        long threshold = clock.currentTimeNanos() - retentionNanos;
+        int evicted = 0;
+        for (Iterator<Slab> it = slabs.iterator(); it.hasNext(); ) {
+            Slab slab = it.next();
+            if (slab.newest < threshold) {
+                it.remove();
+                evicted += slab.count;
+                slab.clear();
+                if (freeSlabs.size() < MAX_FREE_SLABS) {
+                    freeSlabs.add(slab);
+                } else {
+                    DirectBuffers.free(slab.buffer);
+                }
+            }
+        }
+        if (evicted > 0) {
+            evictedTradeCount += evicted;
+        }
+        operationSinceLastRemovingOldTrades = 0;
+        return threshold;
+    }
+
+    public void setOperationSinceLastRemovingOldTrades(int operationSinceLastRemovingOldTrades) {
+        this.operationSinceLastRemovingOldTrades = operationSinceLastRemovingOldTrades;
+    }
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private int count;
+        private long oldest = Long.MAX_VALUE;
+        private long newest = Long.MIN_VALUE;
+        private final FixedPointTurnover turnover = new FixedPointTurnover();
+        private long quantity;
+        private final FixedPointTurnover[] siteTurnovers = new FixedPointTurnover[SITES.length];
+        private final long[] siteQuantities = new long[SITES.length];
+
+        private Slab(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            this.capacity = capacity;
+            for (int i = 0; i < SITES.length; i++) {
+                siteTurnovers[i] = new FixedPointTurnover();
+            }
+        }
+
+        private void add(long timestamp, long quantity, long price, byte site) {
+            long newQuantity = Math.addExact(this.quantity, quantity);
+            int offset = count * RECORD_SIZE;
+            buffer.putLong(offset, timestamp);
+            buffer.putLong(offset + 8, quantity);
+            buffer.putLong(offset + 16, price);
+            buffer.put(offset + 24, site);
+            count++;
+            oldest = Math.min(oldest, timestamp);
+            newest = Math.max(newest, timestamp);
+            turnover.add(price, quantity);
+            this.quantity = newQuantity;
+            if (site != NO_SITE) {
+                siteTurnovers[site].add(price, quantity);
+                siteQuantities[site] += quantity;
+            }
+        }
+
+        private void clear() {
+            count = 0;
+            oldest = Long.MAX_VALUE;
+            newest = Long.MIN_VALUE;
+            turnover.clear();
+            quantity = 0L;
+            for (int i = 0; i < SITES.length; i++) {
+                siteTurnovers[i].clear();
+                siteQuantities[i] = 0L;
+            }
+        }
+    }
+}
@@ -1,57 +1,122 @@
 package stock.market.impl;
 
+import stock.market.RejectedTrade;
+import stock.market.Site;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
-public class TradeStorageWithOverflowInsurance implements TradeStorage {
+/**
+ * Keeps valid trades in a list in recording order. Timestamps are converted to nanoseconds since epoch once when a trade is recorded,
+ * so removing outdated trades compares plain longs.
+ */
+public class TradeStorageWithOverflowInsurance implements ListableTradeStorage {
 
     private final static int MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES = 5000;
     private int operationSinceLastRemovingOldTrades;
 
-    private final List<Trade> trades = new LinkedList<>();
-    private final TemporalAmount validTradeRetentionTimeAmount;
+    private final List<StampedTrade> trades = new LinkedList<>();
+    private final long retentionNanos;
+    private final MarketClock clock;
+    private volatile long evictedTradeCount;
 
     public TradeStorageWithOverflowInsurance(TemporalAmount validTradeRetentionTimeAmount) {
-        this.validTradeRetentionTimeAmount = validTradeRetentionTimeAmount;
+        this(validTradeRetentionTimeAmount, new SystemMarketClock());
+    }
+
+    public TradeStorageWithOverflowInsurance(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.clock = clock;
     }
 
     @Override
     public void record(Trade trade) {
-        validate(trade);
+        TradeValidator.validate(trade);
         operationSinceLastRemovingOldTrades++;
         removeOldTradesIfNeeded();
-        trades.add(trade);
+        add(trade);
     }
 
-    private void validate(Trade trade) {
-        if (trade.getPrice() == null) {
-            throw new IllegalArgumentException("Trade price is not set");
-        }
-        if (trade.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Trade price have to be > 0");
-        }
-        if (trade.getQuantity() == null) {
-            throw new IllegalArgumentException("Trade quantity is not set");
-        }
-        if (trade.getQuantity() <= 0) {
-            throw new IllegalArgumentException("Trade quantity have to be > 0");
-        }
-        if (trade.getTimestamp() == null) {
-            throw new IllegalArgumentException("Trade timestamp is not set");
-        }
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        operationSinceLastRemovingOldTrades += trades.size();
+        removeOldTradesIfNeeded();
+        return TradeValidator.forEachValid(trades, this::add);
+    }
 
+    private void add(Trade trade) {
+        trades.add(new StampedTrade(trade, clock.toEpochNanos(trade.getTimestamp())));
     }
 
+    /**
+     * @return copy of valid trades in recording order
+     */
     @Override
     public List<Trade> getValidTrades() {
         removeOldTrades();
-        return trades;
+        List<Trade> result = new ArrayList<>(trades.size());
+        trades.forEach(stamped -> result.add(stamped.trade));
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        removeOldTrades();
+        return totals(Long.MIN_VALUE, retentionNanos, null);
+    }
+
+    /**
+     * Trades are filtered one by one, {@link TradeStorageWithTimeBuckets} keeps totals of horizons
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        if (horizon == null || horizon.isNegative() || horizon.isZero() || horizon.toNanos() > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        removeOldTrades();
+        return totals(clock.currentTimeNanos() - horizon.toNanos(), horizon.toNanos(), null);
+    }
+
+    /**
+     * Trades are filtered one by one
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        removeOldTrades();
+        return totals(Long.MIN_VALUE, retentionNanos, site);
+    }
+
+    /**
+     * @param threshold trades older than threshold are not summed
+     * @param site      site of summed trades, null sums all trades
+     */
+    private TradeTotals totals(long threshold, long horizonNanos, Site site) {
+        BigDecimal turnover = BigDecimal.ZERO;
+        long quantity = 0L;
+        long oldest = Long.MAX_VALUE;
+        for (StampedTrade stamped : trades) {
+            Trade trade = stamped.trade;
+            if (stamped.epochNanos >= threshold && (site == null || trade.getSite() == site)) {
+                turnover = turnover.add(trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity())));
+                quantity += trade.getQuantity();
+                oldest = Math.min(oldest, stamped.epochNanos);
+            }
+        }
+        return new TradeTotals(turnover, quantity, oldest == Long.MAX_VALUE ? null : clock.toLocalDateTime(oldest + horizonNanos));
     }
 
     private void removeOldTradesIfNeeded() {
@@ -65,15 +130,25 @@ public class TradeStorageWithOverflowInsurance implements TradeStorage {
     }
 
     private void removeOldTrades() {
-        LocalDateTime threshold = LocalDateTime.now().minus(validTradeRetentionTimeAmount);
-        for (Iterator<Trade> it = trades.iterator(); it.hasNext(); ) {
-            if (it.next().getTimestamp().isBefore(threshold)) {
+        long threshold = clock.currentTimeNanos() - retentionNanos;
+        int evicted = 0;
+        for (Iterator<StampedTrade> it = trades.iterator(); it.hasNext(); ) {
+            if (it.next().epochNanos < threshold) {
                 it.remove();
+                evicted++;
             }
         }
+        if (evicted > 0) {
+            evictedTradeCount += evicted;
+        }
         operationSinceLastRemovingOldTrades = 0;
     }
 
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
     public void setOperationSinceLastRemovingOldTrades(int operationSinceLastRemovingOldTrades) {
         this.operationSinceLastRemovingOldTrades = operationSinceLastRemovingOldTrades;
     }
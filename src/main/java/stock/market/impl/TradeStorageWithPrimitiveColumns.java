@@ -0,0 +1,272 @@
+package stock.market.impl;
+
+import stock.market.Site;
+import stock.market.RejectedTrade;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps trades in <b>primitive columns</b> (epoch nanos, quantity, fixed-point price) of a growing ring ordered by timestamp.
+ * Prices are stored with {@value #PRICE_SCALE} decimal places and totals are accumulated exactly in 128 bits,
+ * so recording and VWAP reading allocate nothing apart from the final result. Totals of buy and sell trades are kept running as well.
+ * Trade objects are materialized again only by {@link #getValidTrades()} and lazily by {@link #getValidTrades(LocalDateTime, LocalDateTime)}.
+ */
+public class TradeStorageWithPrimitiveColumns implements RangeListableTradeStorage {
+
+    static final int PRICE_SCALE = 8;
+
+    private final static int MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES = 5000;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Site[] SITES = Site.values();
+
+    private int operationSinceLastRemovingOldTrades;
+    private final long retentionNanos;
+    private final MarketClock clock;
+
+    private String stockSymbol;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] quantities = new long[INITIAL_CAPACITY];
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private byte[] sites = new byte[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    private final FixedPointTurnover turnover = new FixedPointTurnover();
+    private long quantity;
+    private final FixedPointTurnover[] siteTurnovers = new FixedPointTurnover[SITES.length];
+    private final long[] siteQuantities = new long[SITES.length];
+    private volatile long evictedTradeCount;
+
+    public TradeStorageWithPrimitiveColumns(TemporalAmount validTradeRetentionTimeAmount) {
+        this(validTradeRetentionTimeAmount, new SystemMarketClock());
+    }
+
+    public TradeStorageWithPrimitiveColumns(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.clock = clock;
+        for (int i = 0; i < SITES.length; i++) {
+            siteTurnovers[i] = new FixedPointTurnover();
+        }
+    }
+
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        long price = toFixedPoint(trade.getPrice());
+        operationSinceLastRemovingOldTrades++;
+        removeOldTradesIfNeeded();
+        add(trade, price);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        operationSinceLastRemovingOldTrades += trades.size();
+        removeOldTradesIfNeeded();
+        return TradeValidator.forEachValid(trades, trade -> add(trade, toFixedPoint(trade.getPrice())));
+    }
+
+    /**
+     * Total quantity is checked for overflow before anything is changed
+     */
+    private void add(Trade trade, long price) {
+        long newQuantity = Math.addExact(quantity, trade.getQuantity());
+        ensureCapacity();
+        long timestamp = clock.toEpochNanos(trade.getTimestamp());
+        int position = size;
+        while (position > 0 && timestamps[index(position - 1)] > timestamp) {
+            move(index(position - 1), index(position));
+            position--;
+        }
+        int index = index(position);
+        timestamps[index] = timestamp;
+        quantities[index] = trade.getQuantity();
+        prices[index] = price;
+        sites[index] = (byte) (trade.getSite() == null ? -1 : trade.getSite().ordinal());
+        size++;
+        stockSymbol = trade.getStockSymbol();
+        turnover.add(price, trade.getQuantity());
+        quantity = newQuantity;
+        if (trade.getSite() != null) {
+            siteTurnovers[trade.getSite().ordinal()].add(price, trade.getQuantity());
+            siteQuantities[trade.getSite().ordinal()] += trade.getQuantity();
+        }
+    }
+
+    /**
+     * @return copy of valid trades ordered by timestamp
+     */
+    @Override
+    public List<Trade> getValidTrades() {
+        removeOldTrades();
+        List<Trade> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(toTrade(index(i)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Trades are ordered by timestamp, so both ends of the range are found by binary search
+     */
+    @Override
+    public Stream<Trade> getValidTrades(LocalDateTime from, LocalDateTime to) {
+        long threshold = Math.max(clock.currentTimeNanos() - retentionNanos, clock.toEpochNanos(from));
+        int start = firstPositionNotBefore(threshold);
+        int end = firstPositionNotBefore(clock.toEpochNanos(to));
+        return IntStream.range(start, Math.max(start, end)).mapToObj(position -> toTrade(index(position)));
+    }
+
+    private int firstPositionNotBefore(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[index(middle)] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private Trade toTrade(int index) {
+        return new Trade(stockSymbol,
+                clock.toLocalDateTime(timestamps[index]),
+                quantities[index],
+                sites[index] < 0 ? null : SITES[sites[index]],
+                BigDecimal.valueOf(prices[index], PRICE_SCALE));
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        removeOldTrades();
+        return new TradeTotals(turnover.toBigDecimal(PRICE_SCALE), quantity, size == 0 ? null : clock.toLocalDateTime(timestamps[head] + retentionNanos));
+    }
+
+    /**
+     * Trades are ordered by timestamp, so only trades within the horizon are summed from the newest one
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        if (horizon == null || horizon.toNanos() <= 0 || horizon.toNanos() > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        removeOldTrades();
+        long threshold = clock.currentTimeNanos() - horizon.toNanos();
+        FixedPointTurnover horizonTurnover = new FixedPointTurnover();
+        long horizonQuantity = 0L;
+        int position = size;
+        while (position > 0 && timestamps[index(position - 1)] >= threshold) {
+            int index = index(--position);
+            horizonTurnover.add(prices[index], quantities[index]);
+            horizonQuantity += quantities[index];
+        }
+        return new TradeTotals(horizonTurnover.toBigDecimal(PRICE_SCALE), horizonQuantity,
+                position == size ? null : clock.toLocalDateTime(timestamps[index(position)] + horizon.toNanos()));
+    }
+
+    /**
+     * Expiry is the expiry of the oldest trade of both sites
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        removeOldTrades();
+        int index = site.ordinal();
+        return new TradeTotals(siteTurnovers[index].toBigDecimal(PRICE_SCALE), siteQuantities[index],
+                siteQuantities[index] == 0L ? null : clock.toLocalDateTime(timestamps[head] + retentionNanos));
+    }
+
+    private void removeOldTradesIfNeeded() {
+        if (operationSinceLastRemovingOldTrades > MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES) {
+            removeOldTrades();
+        }
+    }
+
+    private void removeOldTrades() {
+        long threshold = clock.currentTimeNanos() - retentionNanos;
+        int evicted = 0;
+        while (size > 0 && timestamps[head] < threshold) {
+            turnover.subtract(prices[head], quantities[head]);
+            quantity -= quantities[head];
+            if (sites[head] >= 0) {
+                siteTurnovers[sites[head]].subtract(prices[head], quantities[head]);
+                siteQuantities[sites[head]] -= quantities[head];
+            }
+            head = (head + 1) % timestamps.length;
+            size--;
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictedTradeCount += evicted;
+        }
+        operationSinceLastRemovingOldTrades = 0;
+    }
+
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
+    private void ensureCapacity() {
+        int capacity = timestamps.length;
+        if (size < capacity) {
+            return;
+        }
+        long[] newTimestamps = new long[capacity * 2];
+        long[] newQuantities = new long[capacity * 2];
+        long[] newPrices = new long[capacity * 2];
+        byte[] newSites = new byte[capacity * 2];
+        for (int i = 0; i < size; i++) {
+            int index = index(i);
+            newTimestamps[i] = timestamps[index];
+            newQuantities[i] = quantities[index];
+            newPrices[i] = prices[index];
+            newSites[i] = sites[index];
+        }
+        timestamps = newTimestamps;
+        quantities = newQuantities;
+        prices = newPrices;
+        sites = newSites;
+        head = 0;
+    }
+
+    private void move(int from, int to) {
+        timestamps[to] = timestamps[from];
+        quantities[to] = quantities[from];
+        prices[to] = prices[from];
+        sites[to] = sites[from];
+    }
+
+    private int index(int position) {
+        return (head + position) % timestamps.length;
+    }
+
+    static long toFixedPoint(BigDecimal price) {
+        try {
+            return price.setScale(PRICE_SCALE, BigDecimal.ROUND_UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Trade price have to fit in long with " + PRICE_SCALE + " decimal places", e);
+        }
+    }
+
+    public void setOperationSinceLastRemovingOldTrades(int operationSinceLastRemovingOldTrades) {
+        this.operationSinceLastRemovingOldTrades = operationSinceLastRemovingOldTrades;
+    }
+}
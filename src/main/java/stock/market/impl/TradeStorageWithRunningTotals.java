@@ -0,0 +1,171 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps <b>running totals</b> of valid trades, so Volume Weighted Stock Price is read in constant time.
+ * Totals are increased when trade is recorded and decreased when trade expires, totals of buy and sell trades are kept the same way.
+ * Trades are ordered by timestamp converted to nanoseconds since epoch once when recorded, so expiring only touches trades that are really outdated
+ * and compares plain longs.
+ */
+public class TradeStorageWithRunningTotals implements ListableTradeStorage {
+
+    private final static int MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES = 5000;
+    private int operationSinceLastRemovingOldTrades;
+
+    private final PriorityQueue<StampedTrade> trades = new PriorityQueue<>(Comparator.comparingLong(stamped -> stamped.epochNanos));
+    private final long retentionNanos;
+    private final MarketClock clock;
+
+    private BigDecimal turnover = BigDecimal.ZERO;
+    private long quantity;
+    private final BigDecimal[] siteTurnovers = new BigDecimal[Site.values().length];
+    private final long[] siteQuantities = new long[Site.values().length];
+    private volatile long evictedTradeCount;
+
+    public TradeStorageWithRunningTotals(TemporalAmount validTradeRetentionTimeAmount) {
+        this(validTradeRetentionTimeAmount, new SystemMarketClock());
+    }
+
+    public TradeStorageWithRunningTotals(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.clock = clock;
+        Arrays.fill(siteTurnovers, BigDecimal.ZERO);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        operationSinceLastRemovingOldTrades++;
+        removeOldTradesIfNeeded();
+        add(trade);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        operationSinceLastRemovingOldTrades += trades.size();
+        removeOldTradesIfNeeded();
+        return TradeValidator.forEachValid(trades, this::add);
+    }
+
+    private void add(Trade trade) {
+        trades.add(new StampedTrade(trade, clock.toEpochNanos(trade.getTimestamp())));
+        BigDecimal tradeTurnover = trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity()));
+        turnover = turnover.add(tradeTurnover);
+        quantity += trade.getQuantity();
+        if (trade.getSite() != null) {
+            int site = trade.getSite().ordinal();
+            siteTurnovers[site] = siteTurnovers[site].add(tradeTurnover);
+            siteQuantities[site] += trade.getQuantity();
+        }
+    }
+
+    /**
+     * @return copy of valid trades ordered by timestamp
+     */
+    @Override
+    public List<Trade> getValidTrades() {
+        removeOldTrades();
+        List<StampedTrade> sorted = new ArrayList<>(trades);
+        sorted.sort(trades.comparator());
+        List<Trade> result = new ArrayList<>(sorted.size());
+        sorted.forEach(stamped -> result.add(stamped.trade));
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        removeOldTrades();
+        return new TradeTotals(turnover, quantity, trades.isEmpty() ? null : clock.toLocalDateTime(trades.peek().epochNanos + retentionNanos));
+    }
+
+    /**
+     * Trades are filtered one by one, {@link TradeStorageWithTimeBuckets} keeps totals of horizons
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        if (horizon == null || horizon.isNegative() || horizon.isZero() || horizon.toNanos() > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        removeOldTrades();
+        long threshold = clock.currentTimeNanos() - horizon.toNanos();
+        BigDecimal horizonTurnover = BigDecimal.ZERO;
+        long horizonQuantity = 0L;
+        long oldest = Long.MAX_VALUE;
+        for (StampedTrade stamped : trades) {
+            if (stamped.epochNanos >= threshold) {
+                Trade trade = stamped.trade;
+                horizonTurnover = horizonTurnover.add(trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity())));
+                horizonQuantity += trade.getQuantity();
+                oldest = Math.min(oldest, stamped.epochNanos);
+            }
+        }
+        return new TradeTotals(horizonTurnover, horizonQuantity, oldest == Long.MAX_VALUE ? null : clock.toLocalDateTime(oldest + horizon.toNanos()));
+    }
+
+    /**
+     * Expiry is the expiry of the oldest trade of both sites
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        removeOldTrades();
+        int index = site.ordinal();
+        return new TradeTotals(siteTurnovers[index], siteQuantities[index],
+                siteQuantities[index] == 0L ? null : clock.toLocalDateTime(trades.peek().epochNanos + retentionNanos));
+    }
+
+    private void removeOldTradesIfNeeded() {
+        if (operationSinceLastRemovingOldTrades > MAX_OPERATIONS_BETWEEN_REMOVING_OLD_TRADES) {
+            removeOldTrades();
+        }
+    }
+
+    private void removeOldTrades() {
+        long threshold = clock.currentTimeNanos() - retentionNanos;
+        int evicted = 0;
+        while (!trades.isEmpty() && trades.peek().epochNanos < threshold) {
+            Trade trade = trades.poll().trade;
+            BigDecimal tradeTurnover = trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity()));
+            turnover = turnover.subtract(tradeTurnover);
+            quantity -= trade.getQuantity();
+            if (trade.getSite() != null) {
+                int site = trade.getSite().ordinal();
+                siteTurnovers[site] = siteTurnovers[site].subtract(tradeTurnover);
+                siteQuantities[site] -= trade.getQuantity();
+            }
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictedTradeCount += evicted;
+        }
+        operationSinceLastRemovingOldTrades = 0;
+    }
+
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
+    public void setOperationSinceLastRemovingOldTrades(int operationSinceLastRemovingOldTrades) {
+        this.operationSinceLastRemovingOldTrades = operationSinceLastRemovingOldTrades;
+    }
+}
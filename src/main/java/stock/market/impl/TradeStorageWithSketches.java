@@ -0,0 +1,262 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.temporal.TemporalAmount;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <b>Memory-bounded</b> storage keeping no trades, only a preallocated ring of time buckets covering twice the retention time,
+ * so trades stamped ahead of the clock by up to the retention time never share a bucket with a valid one.
+ * Every bucket keeps exact fixed-point totals of all, buy and sell trades and a {@link PriceSketch} of its prices,
+ * so memory per stock symbol does not grow with the number of trades. Window quantiles are read from bucket sketches merged into one.
+ * Buckets expire as a whole, so a bucket on the retention boundary is counted until its end is outdated
+ * and the window is up to one bucket width longer than the retention time. VWAP is exact for trades of valid buckets.
+ * Valid trades cannot be listed.
+ */
+public class TradeStorageWithSketches implements TradeStorage {
+
+    static final int MAX_BINS = 128;
+
+    private static final int PRICE_SCALE = TradeStorageWithPrimitiveColumns.PRICE_SCALE;
+    private static final double PRICE_UNIT = Math.pow(10, PRICE_SCALE);
+    private static final int DEFAULT_BUCKETS = 60;
+    private static final double DEFAULT_RELATIVE_ACCURACY = 0.005;
+    private static final int WINDOW_MAX_BINS = MAX_BINS * 4;
+    private static final long EMPTY_BUCKET = Long.MIN_VALUE;
+    private static final int SITES = Site.values().length;
+
+    private final long retentionNanos;
+    private final long bucketWidthNanos;
+    private final MarketClock clock;
+    private final Bucket[] buckets;
+    /**
+     * key of the oldest bucket which can be live, buckets with lower keys are dropped
+     */
+    private long oldestKey = Long.MIN_VALUE;
+    private final PriceSketch window;
+    private volatile long evictedTradeCount;
+
+    public TradeStorageWithSketches(TemporalAmount validTradeRetentionTimeAmount) {
+        this(validTradeRetentionTimeAmount, new SystemMarketClock());
+    }
+
+    /**
+     * Retention time is split into {@value #DEFAULT_BUCKETS} buckets, quantiles have relative error below 0.5%
+     */
+    public TradeStorageWithSketches(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        this(validTradeRetentionTimeAmount, Duration.from(validTradeRetentionTimeAmount).dividedBy(DEFAULT_BUCKETS), clock, DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * @param relativeAccuracy relative error of quantiles, have to be > 0 and < 1
+     */
+    public TradeStorageWithSketches(TemporalAmount validTradeRetentionTimeAmount, Duration bucketWidth, MarketClock clock, double relativeAccuracy) {
+        if (bucketWidth.toMillis() <= 0) {
+            throw new IllegalArgumentException("bucketWidth have to be >= 1ms");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.bucketWidthNanos = bucketWidth.toNanos();
+        this.clock = clock;
+        int size = 2 * (int) ((retentionNanos + bucketWidthNanos - 1) / bucketWidthNanos) + 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket(relativeAccuracy);
+        }
+        this.window = new PriceSketch(relativeAccuracy, WINDOW_MAX_BINS);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        removeOldBuckets(clock.currentTimeNanos());
+        add(trade, TradeStorageWithPrimitiveColumns.toFixedPoint(trade.getPrice()));
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        removeOldBuckets(clock.currentTimeNanos());
+        return TradeValidator.forEachValid(trades, trade -> add(trade, TradeStorageWithPrimitiveColumns.toFixedPoint(trade.getPrice())));
+    }
+
+    /**
+     * Old buckets have to be removed before, so the bucket of a key inside the ring is either empty or holds the same key
+     */
+    private void add(Trade trade, long price) {
+        long key = toBucketKey(clock.toEpochNanos(trade.getTimestamp()));
+        if (key < oldestKey) {
+            evictedTradeCount++;
+            return;
+        }
+        if (key >= oldestKey + buckets.length) {
+            throw new IllegalArgumentException("Trade timestamp is too far in the future");
+        }
+        Bucket bucket = buckets[toIndex(key)];
+        bucket.key = key;
+        bucket.add(price, trade.getQuantity(), trade.getSite());
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        return totals(retentionNanos, null);
+    }
+
+    /**
+     * @param horizon have to be > 0 and <= retention time, buckets on the horizon boundary are counted as a whole
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        if (horizon == null || horizon.toNanos() <= 0 || horizon.toNanos() > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        return totals(horizon.toNanos(), null);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        return totals(retentionNanos, site);
+    }
+
+    /**
+     * Sketches of valid buckets are merged, so the quantile has relative error below the relative accuracy, 0 and 1 are exact
+     */
+    @Override
+    public BigDecimal getValidTradePriceQuantile(double quantile) {
+        TradeValidator.validateQuantile(quantile);
+        long thresholdKey = removeOldBuckets(clock.currentTimeNanos());
+        window.clear();
+        for (Bucket bucket : buckets) {
+            if (bucket.key >= thresholdKey) {
+                window.merge(bucket.prices);
+            }
+        }
+        if (window.getCount() == 0L) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(Math.round(window.quantile(quantile) * PRICE_UNIT), PRICE_SCALE);
+    }
+
+    /**
+     * @param site site of summed trades, null sums all trades
+     */
+    private TradeTotals totals(long horizonNanos, Site site) {
+        long now = clock.currentTimeNanos();
+        removeOldBuckets(now);
+        long thresholdKey = toBucketKey(now - horizonNanos);
+        FixedPointTurnover turnover = new FixedPointTurnover();
+        long quantity = 0L;
+        long oldestTradedKey = Long.MAX_VALUE;
+        for (Bucket bucket : buckets) {
+            long bucketQuantity = site == null ? bucket.quantity : bucket.siteQuantities[site.ordinal()];
+            if (bucket.key >= thresholdKey && bucketQuantity > 0L) {
+                turnover.add(site == null ? bucket.turnover : bucket.siteTurnovers[site.ordinal()]);
+                quantity += bucketQuantity;
+                oldestTradedKey = Math.min(oldestTradedKey, bucket.key);
+            }
+        }
+        return new TradeTotals(turnover.toBigDecimal(PRICE_SCALE), quantity,
+                oldestTradedKey == Long.MAX_VALUE ? null : clock.toLocalDateTime((oldestTradedKey + 1) * bucketWidthNanos + horizonNanos));
+    }
+
+    /**
+     * Buckets are visited from the oldest live key, the whole ring only when the clock jumped by more than the ring
+     *
+     * @return key of the oldest valid bucket
+     */
+    private long removeOldBuckets(long now) {
+        long thresholdKey = toBucketKey(now - retentionNanos);
+        if (thresholdKey <= oldestKey) {
+            return thresholdKey;
+        }
+        if (thresholdKey - buckets.length >= oldestKey) {
+            for (Bucket bucket : buckets) {
+                if (bucket.key != EMPTY_BUCKET && bucket.key < thresholdKey) {
+                    drop(bucket);
+                }
+            }
+        } else {
+            for (long key = oldestKey; key < thresholdKey; key++) {
+                Bucket bucket = buckets[toIndex(key)];
+                if (bucket.key == key) {
+                    drop(bucket);
+                }
+            }
+        }
+        oldestKey = thresholdKey;
+        return thresholdKey;
+    }
+
+    private void drop(Bucket bucket) {
+        if (bucket.tradeCount > 0) {
+            evictedTradeCount += bucket.tradeCount;
+        }
+        bucket.clear();
+    }
+
+    /**
+     * Trades of dropped buckets and trades older than the oldest bucket are counted
+     */
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
+    private long toBucketKey(long epochNanos) {
+        return Math.floorDiv(epochNanos, bucketWidthNanos);
+    }
+
+    private int toIndex(long key) {
+        return (int) Math.floorMod(key, (long) buckets.length);
+    }
+
+    private static final class Bucket {
+        private long key = EMPTY_BUCKET;
+        private int tradeCount;
+        private final FixedPointTurnover turnover = new FixedPointTurnover();
+        private long quantity;
+        private final FixedPointTurnover[] siteTurnovers = new FixedPointTurnover[SITES];
+        private final long[] siteQuantities = new long[SITES];
+        private final PriceSketch prices;
+
+        private Bucket(double relativeAccuracy) {
+            this.prices = new PriceSketch(relativeAccuracy, MAX_BINS);
+            for (int i = 0; i < SITES; i++) {
+                siteTurnovers[i] = new FixedPointTurnover();
+            }
+        }
+
+        private void add(long price, long quantity, Site site) {
+            this.quantity = Math.addExact(this.quantity, quantity);
+            tradeCount++;
+            turnover.add(price, quantity);
+            if (site != null) {
+                siteTurnovers[site.ordinal()].add(price, quantity);
+                siteQuantities[site.ordinal()] += quantity;
+            }
+            prices.add(price / PRICE_UNIT, quantity);
+        }
+
+        private void clear() {
+            key = EMPTY_BUCKET;
+            tradeCount = 0;
+            turnover.clear();
+            quantity = 0L;
+            for (int i = 0; i < SITES; i++) {
+                siteTurnovers[i].clear();
+                siteQuantities[i] = 0L;
+            }
+            prices.clear();
+        }
+    }
+}
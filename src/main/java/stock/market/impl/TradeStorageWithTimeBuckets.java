@@ -0,0 +1,426 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps trades in <b>fixed-width time buckets</b> placed in a preallocated ring covering the retention time and as much time ahead of the market clock.
+ * Outdated buckets are dropped as a whole and reused, only the bucket on the retention boundary is filtered trade by trade.
+ * Expiry advances from the oldest live bucket, so it visits only buckets outdated since the last expiry.
+ * Trades older than the oldest live bucket are already outdated and are not stored. Trades more than the retention time ahead of the market clock
+ * are rejected, so a trade never replaces a live bucket of the same place in the ring.
+ * Totals of shorter <b>horizons</b> given on construction are kept running over the same buckets: recording adds a trade to every horizon
+ * and a bucket is subtracted from a horizon once it falls out of it, so VWAP of every horizon is read without scanning buckets.
+ * Totals of other horizons are summed from buckets. Totals of buy and sell trades are kept running in buckets and over the retention time.
+ * Timestamps are converted to nanoseconds since epoch once when a trade is recorded and kept in buckets next to trades,
+ * so trades of boundary buckets are filtered by plain long comparisons.
+ */
+public class TradeStorageWithTimeBuckets implements RangeListableTradeStorage {
+
+    private static final Duration DEFAULT_BUCKET_WIDTH = Duration.ofSeconds(1);
+    private static final long EMPTY_BUCKET = Long.MIN_VALUE;
+    private static final int INITIAL_BUCKET_CAPACITY = 16;
+    private static final int SITES = Site.values().length;
+
+    private final long retentionNanos;
+    private final long bucketWidthNanos;
+    private final MarketClock clock;
+    private final Bucket[] buckets;
+    /**
+     * key of the oldest bucket which can be live, buckets with lower keys are dropped
+     */
+    private long oldestKey = Long.MIN_VALUE;
+
+    private BigDecimal turnover = BigDecimal.ZERO;
+    private long quantity;
+    private final BigDecimal[] siteTurnovers = new BigDecimal[SITES];
+    private final long[] siteQuantities = new long[SITES];
+    private volatile long evictedTradeCount;
+
+    private final long[] horizonNanos;
+    private final long[] horizonFromKeys;
+    private final BigDecimal[] horizonTurnovers;
+    private final long[] horizonQuantities;
+
+    public TradeStorageWithTimeBuckets(TemporalAmount validTradeRetentionTimeAmount) {
+        this(validTradeRetentionTimeAmount, DEFAULT_BUCKET_WIDTH);
+    }
+
+    public TradeStorageWithTimeBuckets(TemporalAmount validTradeRetentionTimeAmount, Duration bucketWidth) {
+        this(validTradeRetentionTimeAmount, bucketWidth, new SystemMarketClock());
+    }
+
+    public TradeStorageWithTimeBuckets(TemporalAmount validTradeRetentionTimeAmount, MarketClock clock) {
+        this(validTradeRetentionTimeAmount, DEFAULT_BUCKET_WIDTH, clock);
+    }
+
+    public TradeStorageWithTimeBuckets(TemporalAmount validTradeRetentionTimeAmount, Duration bucketWidth, MarketClock clock) {
+        this(validTradeRetentionTimeAmount, bucketWidth, clock, Collections.emptyList());
+    }
+
+    /**
+     * @param horizons horizons shorter than the retention time with totals kept running
+     */
+    public TradeStorageWithTimeBuckets(TemporalAmount validTradeRetentionTimeAmount, Duration bucketWidth, MarketClock clock, List<Duration> horizons) {
+        if (bucketWidth.toMillis() <= 0) {
+            throw new IllegalArgumentException("bucketWidth have to be >= 1ms");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock cannot be null");
+        }
+        this.retentionNanos = Duration.from(validTradeRetentionTimeAmount).toNanos();
+        this.bucketWidthNanos = bucketWidth.toNanos();
+        this.clock = clock;
+        int size = 2 * (int) ((retentionNanos + bucketWidthNanos - 1) / bucketWidthNanos) + 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.horizonNanos = new long[horizons.size()];
+        for (int i = 0; i < horizonNanos.length; i++) {
+            horizonNanos[i] = requireValidHorizon(horizons.get(i));
+        }
+        this.horizonFromKeys = new long[horizonNanos.length];
+        Arrays.fill(horizonFromKeys, Long.MIN_VALUE);
+        this.horizonTurnovers = new BigDecimal[horizonNanos.length];
+        Arrays.fill(horizonTurnovers, BigDecimal.ZERO);
+        this.horizonQuantities = new long[horizonNanos.length];
+        Arrays.fill(siteTurnovers, BigDecimal.ZERO);
+    }
+
+    @Override
+    public void record(Trade trade) {
+        TradeValidator.validate(trade);
+        removeOldBuckets(clock.currentTimeNanos());
+        add(trade);
+    }
+
+    @Override
+    public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+        removeOldBuckets(clock.currentTimeNanos());
+        return TradeValidator.forEachValid(trades, this::add);
+    }
+
+    /**
+     * Old buckets have to be removed before, so the bucket of a key inside the ring is either empty or holds the same key
+     */
+    private void add(Trade trade) {
+        long timestamp = clock.toEpochNanos(trade.getTimestamp());
+        long key = toBucketKey(timestamp);
+        if (key < oldestKey) {
+            evictedTradeCount++;
+            return;
+        }
+        if (key >= oldestKey + buckets.length) {
+            throw new IllegalArgumentException("Trade timestamp is too far in the future");
+        }
+        Bucket bucket = buckets[toIndex(key)];
+        bucket.key = key;
+        BigDecimal tradeTurnover = trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity()));
+        bucket.add(trade, timestamp);
+        bucket.turnover = bucket.turnover.add(tradeTurnover);
+        bucket.quantity += trade.getQuantity();
+        turnover = turnover.add(tradeTurnover);
+        quantity += trade.getQuantity();
+        if (trade.getSite() != null) {
+            int site = trade.getSite().ordinal();
+            bucket.siteTurnovers[site] = bucket.siteTurnovers[site].add(tradeTurnover);
+            bucket.siteQuantities[site] += trade.getQuantity();
+            siteTurnovers[site] = siteTurnovers[site].add(tradeTurnover);
+            siteQuantities[site] += trade.getQuantity();
+        }
+        for (int i = 0; i < horizonNanos.length; i++) {
+            if (key >= horizonFromKeys[i]) {
+                horizonTurnovers[i] = horizonTurnovers[i].add(tradeTurnover);
+                horizonQuantities[i] += trade.getQuantity();
+            }
+        }
+    }
+
+    /**
+     * @return copy of valid trades, ordered by bucket and by recording order inside a bucket
+     */
+    @Override
+    public List<Trade> getValidTrades() {
+        long threshold = removeOldBuckets(clock.currentTimeNanos());
+        long thresholdKey = toBucketKey(threshold);
+        List<Trade> result = new ArrayList<>();
+        for (long key = thresholdKey; key < thresholdKey + buckets.length; key++) {
+            Bucket bucket = buckets[toIndex(key)];
+            if (bucket.key != key) {
+                continue;
+            }
+            if (key != thresholdKey) {
+                result.addAll(bucket.trades);
+                continue;
+            }
+            for (int i = 0; i < bucket.trades.size(); i++) {
+                if (bucket.timestamps[i] >= threshold) {
+                    result.add(bucket.trades.get(i));
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Only buckets of the range are visited, trades are filtered only in the first and the last of them
+     */
+    @Override
+    public Stream<Trade> getValidTrades(LocalDateTime from, LocalDateTime to) {
+        long threshold = clock.currentTimeNanos() - retentionNanos;
+        long start = Math.max(threshold, clock.toEpochNanos(from));
+        long end = clock.toEpochNanos(to);
+        if (start >= end) {
+            return Stream.empty();
+        }
+        long startKey = toBucketKey(start);
+        long endKey = Math.min(toBucketKey(end - 1), toBucketKey(threshold) + buckets.length - 1);
+        return LongStream.rangeClosed(startKey, endKey)
+                .filter(key -> buckets[toIndex(key)].key == key)
+                .mapToObj(key -> {
+                    Bucket bucket = buckets[toIndex(key)];
+                    if (key != startKey && key != endKey) {
+                        return bucket.trades.stream();
+                    }
+                    return IntStream.range(0, bucket.trades.size())
+                            .filter(i -> bucket.timestamps[i] >= start && bucket.timestamps[i] < end)
+                            .mapToObj(bucket.trades::get);
+                })
+                .flatMap(trades -> trades);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals() {
+        long threshold = removeOldBuckets(clock.currentTimeNanos());
+        return totals(turnover, quantity, threshold, retentionNanos, null);
+    }
+
+    @Override
+    public TradeTotals getValidTradeTotals(Site site) {
+        if (site == null) {
+            throw new IllegalArgumentException("site cannot be null");
+        }
+        long threshold = removeOldBuckets(clock.currentTimeNanos());
+        return totals(siteTurnovers[site.ordinal()], siteQuantities[site.ordinal()], threshold, retentionNanos, site);
+    }
+
+    /**
+     * @param horizon have to be > 0 and <= retention time
+     */
+    @Override
+    public TradeTotals getValidTradeTotals(Duration horizon) {
+        long horizonNanos = requireValidHorizon(horizon);
+        long now = clock.currentTimeNanos();
+        removeOldBuckets(now);
+        long threshold = now - horizonNanos;
+        if (horizonNanos == retentionNanos) {
+            return totals(turnover, quantity, threshold, horizonNanos, null);
+        }
+        for (int i = 0; i < this.horizonNanos.length; i++) {
+            if (this.horizonNanos[i] == horizonNanos) {
+                advance(i, toBucketKey(threshold));
+                return totals(horizonTurnovers[i], horizonQuantities[i], threshold, horizonNanos, null);
+            }
+        }
+        long thresholdKey = toBucketKey(threshold);
+        BigDecimal horizonTurnover = BigDecimal.ZERO;
+        long horizonQuantity = 0L;
+        for (long key = thresholdKey; key < thresholdKey + buckets.length; key++) {
+            Bucket bucket = buckets[toIndex(key)];
+            if (bucket.key == key) {
+                horizonTurnover = horizonTurnover.add(bucket.turnover);
+                horizonQuantity += bucket.quantity;
+            }
+        }
+        return totals(horizonTurnover, horizonQuantity, threshold, horizonNanos, null);
+    }
+
+    /**
+     * @param turnover turnover of all buckets from the one holding threshold
+     * @param quantity quantity of all buckets from the one holding threshold
+     * @param site site of summed trades, null if all trades are summed
+     * @return totals without trades of the boundary bucket older than threshold
+     */
+    private TradeTotals totals(BigDecimal turnover, long quantity, long threshold, long horizonNanos, Site site) {
+        long thresholdKey = toBucketKey(threshold);
+        BigDecimal outdatedTurnover = BigDecimal.ZERO;
+        long outdatedQuantity = 0L;
+        long oldest = Long.MAX_VALUE;
+        for (long key = thresholdKey; key < thresholdKey + buckets.length && oldest == Long.MAX_VALUE; key++) {
+            Bucket bucket = buckets[toIndex(key)];
+            if (bucket.key != key) {
+                continue;
+            }
+            for (int i = 0; i < bucket.trades.size(); i++) {
+                Trade trade = bucket.trades.get(i);
+                if (site != null && trade.getSite() != site) {
+                    continue;
+                }
+                long timestamp = bucket.timestamps[i];
+                if (timestamp < threshold) {
+                    outdatedTurnover = outdatedTurnover.add(trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity())));
+                    outdatedQuantity += trade.getQuantity();
+                } else if (timestamp < oldest) {
+                    oldest = timestamp;
+                }
+            }
+        }
+        return new TradeTotals(turnover.subtract(outdatedTurnover), quantity - outdatedQuantity,
+                oldest == Long.MAX_VALUE ? null : clock.toLocalDateTime(oldest + horizonNanos));
+    }
+
+    /**
+     * Subtracts buckets older than thresholdKey from running totals of the horizon
+     */
+    private void advance(int horizon, long thresholdKey) {
+        long fromKey = horizonFromKeys[horizon];
+        if (fromKey >= thresholdKey) {
+            return;
+        }
+        if (fromKey < thresholdKey - buckets.length) {
+            for (Bucket bucket : buckets) {
+                if (bucket.key != EMPTY_BUCKET && bucket.key >= fromKey && bucket.key < thresholdKey) {
+                    subtract(horizon, bucket);
+                }
+            }
+        } else {
+            for (long key = fromKey; key < thresholdKey; key++) {
+                Bucket bucket = buckets[toIndex(key)];
+                if (bucket.key == key) {
+                    subtract(horizon, bucket);
+                }
+            }
+        }
+        horizonFromKeys[horizon] = thresholdKey;
+    }
+
+    private void subtract(int horizon, Bucket bucket) {
+        horizonTurnovers[horizon] = horizonTurnovers[horizon].subtract(bucket.turnover);
+        horizonQuantities[horizon] -= bucket.quantity;
+    }
+
+    /**
+     * Drops buckets from the oldest live one up to the bucket holding the retention threshold,
+     * the whole ring is visited only if no bucket was dropped for more than the retention time
+     *
+     * @return retention threshold in nanoseconds since epoch
+     */
+    private long removeOldBuckets(long now) {
+        long threshold = now - retentionNanos;
+        long thresholdKey = toBucketKey(threshold);
+        if (thresholdKey <= oldestKey) {
+            return threshold;
+        }
+        if (thresholdKey - buckets.length >= oldestKey) {
+            for (Bucket bucket : buckets) {
+                if (bucket.key != EMPTY_BUCKET && bucket.key < thresholdKey) {
+                    drop(bucket);
+                }
+            }
+        } else {
+            for (long key = oldestKey; key < thresholdKey; key++) {
+                Bucket bucket = buckets[toIndex(key)];
+                if (bucket.key == key) {
+                    drop(bucket);
+                }
+            }
+        }
+        oldestKey = thresholdKey;
+        return threshold;
+    }
+
+    private void drop(Bucket bucket) {
+        turnover = turnover.subtract(bucket.turnover);
+        quantity -= bucket.quantity;
+        for (int i = 0; i < SITES; i++) {
+            siteTurnovers[i] = siteTurnovers[i].subtract(bucket.siteTurnovers[i]);
+            siteQuantities[i] -= bucket.siteQuantities[i];
+        }
+        for (int i = 0; i < horizonNanos.length; i++) {
+            if (bucket.key >= horizonFromKeys[i]) {
+                subtract(i, bucket);
+            }
+        }
+        if (!bucket.trades.isEmpty()) {
+            evictedTradeCount += bucket.trades.size();
+        }
+        bucket.clear();
+    }
+
+    /**
+     * Trades of dropped buckets and trades older than the oldest bucket are counted, trades of the bucket on the retention boundary are not
+     */
+    @Override
+    public long getEvictedTradeCount() {
+        return evictedTradeCount;
+    }
+
+    private long requireValidHorizon(Duration horizon) {
+        if (horizon == null) {
+            throw new IllegalArgumentException("horizon cannot be null");
+        }
+        long nanos = horizon.toNanos();
+        if (nanos <= 0 || nanos > retentionNanos) {
+            throw new IllegalArgumentException("horizon have to be > 0 and <= retention time");
+        }
+        return nanos;
+    }
+
+    private long toBucketKey(long epochNanos) {
+        return Math.floorDiv(epochNanos, bucketWidthNanos);
+    }
+
+    private int toIndex(long key) {
+        return (int) Math.floorMod(key, (long) buckets.length);
+    }
+
+    private static final class Bucket {
+        private long key = EMPTY_BUCKET;
+        private final List<Trade> trades = new ArrayList<>();
+        /**
+         * timestamps[i] is timestamp of trades.get(i) in nanoseconds since epoch, allocated with the first trade and reused after the bucket is dropped
+         */
+        private long[] timestamps = new long[0];
+        private BigDecimal turnover = BigDecimal.ZERO;
+        private long quantity;
+        private final BigDecimal[] siteTurnovers = new BigDecimal[SITES];
+        private final long[] siteQuantities = new long[SITES];
+
+        private Bucket() {
+            Arrays.fill(siteTurnovers, BigDecimal.ZERO);
+        }
+
+        private void add(Trade trade, long timestamp) {
+            int size = trades.size();
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, Math.max(INITIAL_BUCKET_CAPACITY, size * 2));
+            }
+            timestamps[size] = timestamp;
+            trades.add(trade);
+        }
+
+        private void clear() {
+            key = EMPTY_BUCKET;
+            trades.clear();
+            turnover = BigDecimal.ZERO;
+            quantity = 0L;
+            Arrays.fill(siteTurnovers, BigDecimal.ZERO);
+            Arrays.fill(siteQuantities, 0L);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package stock.market.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAmount;
+import java.util.Collection;
+
+/**
+ * Sums needed to calculate Volume Weighted Stock Price: Σ(price × quantity) and Σ(quantity).
+ * Expiry is the time after which the oldest valid trade becomes outdated, so totals change even without new trades.
+ * It is null if there are no valid trades.
+ */
+@AllArgsConstructor
+@Getter
+public class TradeTotals {
+    public static final TradeTotals EMPTY = new TradeTotals(BigDecimal.ZERO, 0L, null);
+
+    private final BigDecimal turnover;
+    private final long quantity;
+    private final LocalDateTime expiry;
+
+    public static TradeTotals of(Collection<Trade> trades, TemporalAmount validTradeRetentionTimeAmount) {
+        BigDecimal turnover = BigDecimal.ZERO;
+        long quantity = 0L;
+        LocalDateTime oldest = null;
+        for (Trade trade : trades) {
+            turnover = turnover.add(trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity())));
+            quantity += trade.getQuantity();
+            if (oldest == null || trade.getTimestamp().isBefore(oldest)) {
+                oldest = trade.getTimestamp();
+            }
+        }
+        return new TradeTotals(turnover, quantity, oldest == null ? null : oldest.plus(validTradeRetentionTimeAmount));
+    }
+
+    /**
+     * @return totals of trades not older than threshold
+     */
+    public static TradeTotals of(Collection<Trade> trades, LocalDateTime threshold, TemporalAmount horizon) {
+        BigDecimal turnover = BigDecimal.ZERO;
+        long quantity = 0L;
+        LocalDateTime oldest = null;
+        for (Trade trade : trades) {
+            if (!trade.getTimestamp().isBefore(threshold)) {
+                turnover = turnover.add(trade.getPrice().multiply(BigDecimal.valueOf(trade.getQuantity())));
+                quantity += trade.getQuantity();
+                if (oldest == null || trade.getTimestamp().isBefore(oldest)) {
+                    oldest = trade.getTimestamp();
+                }
+            }
+        }
+        return new TradeTotals(turnover, quantity, oldest == null ? null : oldest.plus(horizon));
+    }
+
+    public boolean isEmpty() {
+        return quantity == 0L;
+    }
+}
@@ -0,0 +1,62 @@
+package stock.market.impl;
+
+import stock.market.RejectedTrade;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Validation of fields used by trade storages
+ */
+final class TradeValidator {
+
+    private TradeValidator() {
+    }
+
+    /**
+     * Pass every valid trade to the consumer, trades rejected by validation or by the consumer are returned.
+     * Trades overflowing totals of the consumer are rejected as well, so the rest of the batch is still recorded.
+     */
+    static List<RejectedTrade> forEachValid(Collection<Trade> trades, Consumer<Trade> consumer) {
+        List<RejectedTrade> rejected = new ArrayList<>();
+        for (Trade trade : trades) {
+            try {
+                validate(trade);
+                consumer.accept(trade);
+            } catch (IllegalArgumentException e) {
+                rejected.add(new RejectedTrade(trade, e.getMessage()));
+            } catch (ArithmeticException e) {
+                rejected.add(new RejectedTrade(trade, "Trade cannot be added to totals: " + e.getMessage()));
+            }
+        }
+        return rejected;
+    }
+
+    static void validateQuantile(double quantile) {
+        if (!(quantile >= 0d && quantile <= 1d)) {
+            throw new IllegalArgumentException("quantile have to be >= 0 and <= 1");
+        }
+    }
+
+    static void validate(Trade trade) {
+        if (trade.getPrice() == null) {
+            throw new IllegalArgumentException("Trade price is not set");
+        }
+        if (trade.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Trade price have to be > 0");
+        }
+        if (trade.getQuantity() == null) {
+            throw new IllegalArgumentException("Trade quantity is not set");
+        }
+        if (trade.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Trade quantity have to be > 0");
+        }
+        if (trade.getTimestamp() == null) {
+            throw new IllegalArgumentException("Trade timestamp is not set");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package stock.market.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Trades recorded into a trade storage, trades evicted from it as outdated and trades it still holds
+ */
+@AllArgsConstructor
+@Getter
+public class TradeWindow {
+    private final long recordedTrades;
+    private final long evictedTrades;
+    private final long heldTrades;
+}
@@ -0,0 +1,92 @@
+package stock.market.impl;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Offset of a zone <b>cached</b> with the range of time between two offset transitions in which it applies,
+ * so timestamps inside the range are converted by plain arithmetic without looking up zone rules.
+ * Local date-times in a gap or an overlap of a transition get the offset before the transition, as by {@link ZoneRules#getOffset(LocalDateTime)}.
+ * Range is replaced when a time out of it is converted. Module is thread-safe, ranges are immutable and published through a volatile field.
+ */
+final class ZoneOffsetCache {
+
+    private static final Range NONE = new Range(ZoneOffset.UTC, 0L, 0L, 0L, 0L);
+
+    private final ZoneRules rules;
+    private volatile Range range = NONE;
+
+    ZoneOffsetCache(ZoneId zone) {
+        this.rules = zone.getRules();
+    }
+
+    long toEpochNanos(LocalDateTime timestamp) {
+        long localSecond = timestamp.toEpochSecond(ZoneOffset.UTC);
+        Range range = this.range;
+        long offsetSeconds;
+        if (localSecond >= range.fromLocalSecond && localSecond < range.toLocalSecond) {
+            offsetSeconds = range.offset.getTotalSeconds();
+        } else {
+            offsetSeconds = rules.getOffset(timestamp).getTotalSeconds();
+            this.range = rangeOf(Instant.ofEpochSecond(localSecond - offsetSeconds));
+        }
+        return (localSecond - offsetSeconds) * MarketClock.NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    LocalDateTime toLocalDateTime(long epochNanos) {
+        long second = Math.floorDiv(epochNanos, MarketClock.NANOS_PER_SECOND);
+        int nano = (int) Math.floorMod(epochNanos, MarketClock.NANOS_PER_SECOND);
+        Range range = this.range;
+        if (second < range.fromSecond || second >= range.toSecond) {
+            range = rangeOf(Instant.ofEpochSecond(second));
+            this.range = range;
+        }
+        return LocalDateTime.ofEpochSecond(second, nano, range.offset);
+    }
+
+    private Range rangeOf(Instant instant) {
+        ZoneOffset offset = rules.getOffset(instant);
+        if (rules.isFixedOffset()) {
+            return new Range(offset, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusNanos(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        return new Range(offset,
+                previous == null ? Long.MIN_VALUE : previous.toEpochSecond(),
+                next == null ? Long.MAX_VALUE : next.toEpochSecond(),
+                previous == null ? Long.MIN_VALUE : toLocalSecond(later(previous.getDateTimeBefore(), previous.getDateTimeAfter())),
+                next == null ? Long.MAX_VALUE : toLocalSecond(later(next.getDateTimeBefore(), next.getDateTimeAfter())));
+    }
+
+    private static LocalDateTime later(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    private static long toLocalSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Offset applying to instants in [fromSecond, toSecond) and to local date-times in [fromLocalSecond, toLocalSecond),
+     * local date-times are counted in seconds as if they were in UTC
+     */
+    private static final class Range {
+        private final ZoneOffset offset;
+        private final long fromSecond;
+        private final long toSecond;
+        private final long fromLocalSecond;
+        private final long toLocalSecond;
+
+        private Range(ZoneOffset offset, long fromSecond, long toSecond, long fromLocalSecond, long toLocalSecond) {
+            this.offset = offset;
+            this.fromSecond = fromSecond;
+            this.toSecond = toSecond;
+            this.fromLocalSecond = fromLocalSecond;
+            this.toLocalSecond = toLocalSecond;
+        }
+    }
+}
@@ -1,60 +1,355 @@
 package stock.market.main;
 
+import stock.market.impl.AggregatingStockOperations;
+import stock.market.impl.BarAggregator;
 import stock.market.impl.BasicStockOperations;
+import stock.market.impl.CachingStockOperations;
+import stock.market.impl.SimpleStockMarket;
 import stock.market.impl.StockData;
 import stock.market.impl.StockOperations;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
- * Load Stock Data from csv resource
+ * Load Stock Data from csv resource.
+ * File is <b>memory-mapped</b> and split on line boundaries into chunks parsed in parallel, each row is scanned once without splitting.
+ * Malformed rows, duplicated stock symbols and rows of which the dividend cannot be calculated are reported with line numbers.
+ * Stock data can be reloaded into running stock market (see {@link StockDataWatcher}).
+ * Operations of every stock symbol can aggregate OHLCV bars (see {@link AggregatingStockOperations}).
  */
 public class StockDataLoader {
 
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    private static final int COLUMNS = 5;
+    private static final int MAX_REPORTED_PROBLEMS = 10;
+
     private final URI csvFileLocation;
     private final TradeStorageFactory tradeStorageFactory;
 
     private final Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction;
+    private final int priceCacheSize;
+    private final List<Duration> barIntervals;
+    private final int barHistorySize;
+    private final int chunkSize;
+    private Map<String, Row> stockSymbolToLoadedRow = Collections.emptyMap();
 
     public StockDataLoader(URI csvFileLocation, TradeStorageFactory tradeStorageFactory, Map<String, Function<StockData, BigDecimal>> typeToDividedYieldFunction) {
+        this(csvFileLocation, tradeStorageFactory, typeToDividedYieldFunction, 0);
+    }
+
+    /**
+     * @param priceCacheSize number of prices per stock symbol with cached Dividend Yield and P/E Ratio, 0 disables cache
+     */
+    public StockDataLoader(URI csvFileLocation, TradeStorageFactory tradeStorageFactory, Map<String, Function<StockData, BigDecimal>> typeToDividedYieldFunction, int priceCacheSize) {
+        this(csvFileLocation, tradeStorageFactory, typeToDividedYieldFunction, priceCacheSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param priceCacheSize number of prices per stock symbol with cached Dividend Yield and P/E Ratio, 0 disables cache
+     * @param barIntervals   intervals of OHLCV bars aggregated for every stock symbol, empty disables bars
+     * @param barHistorySize number of completed bars kept for every interval
+     */
+    public StockDataLoader(URI csvFileLocation, TradeStorageFactory tradeStorageFactory, Map<String, Function<StockData, BigDecimal>> typeToDividedYieldFunction, int priceCacheSize,
+                           List<Duration> barIntervals, int barHistorySize) {
+        this(csvFileLocation, tradeStorageFactory, typeToDividedYieldFunction, priceCacheSize, barIntervals, barHistorySize, DEFAULT_CHUNK_SIZE);
+    }
+
+    StockDataLoader(URI csvFileLocation, TradeStorageFactory tradeStorageFactory, Map<String, Function<StockData, BigDecimal>> typeToDividedYieldFunction, int priceCacheSize, int chunkSize) {
+        this(csvFileLocation, tradeStorageFactory, typeToDividedYieldFunction, priceCacheSize, Collections.emptyList(), 1, chunkSize);
+    }
+
+    private StockDataLoader(URI csvFileLocation, TradeStorageFactory tradeStorageFactory, Map<String, Function<StockData, BigDecimal>> typeToDividedYieldFunction, int priceCacheSize,
+                            List<Duration> barIntervals, int barHistorySize, int chunkSize) {
+        if (priceCacheSize < 0) {
+            throw new IllegalArgumentException("priceCacheSize have to be >= 0");
+        }
+        if (barIntervals == null) {
+            throw new IllegalArgumentException("barIntervals cannot be null");
+        }
+        if (barHistorySize <= 0) {
+            throw new IllegalArgumentException("barHistorySize have to be > 0");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize have to be > 0");
+        }
         this.csvFileLocation = csvFileLocation;
         this.tradeStorageFactory = tradeStorageFactory;
         this.typeToDividedFactorFunction = typeToDividedYieldFunction;
+        this.priceCacheSize = priceCacheSize;
+        this.barIntervals = new ArrayList<>(barIntervals);
+        this.barHistorySize = barHistorySize;
+        this.chunkSize = chunkSize;
     }
 
-    public Map<String, StockOperations> loadData() throws IOException {
+    public synchronized Map<String, StockOperations> loadData() throws IOException {
+        List<Row> rows = loadRows();
+        Map<String, StockOperations> result = new LinkedHashMap<>((int) (rows.size() / 0.75f) + 1);
+        for (Row row : rows) {
+            result.put(row.stockSymbol, createOperation(row));
+        }
+        remember(rows);
+        return result;
+    }
+
+    /**
+     * Loads stock data again into running stock market. Stock data of known stock symbols is updated only if changed
+     * and their recorded trades are kept, new stock symbols are added. Stock symbols missing in the file are kept.
+     * Operations of all changed and new stock symbols are built and validated first and swapped in at once
+     * (see {@link SimpleStockMarket#reload(Map, Map)}), so nothing is changed if any row cannot be loaded.
+     */
+    public synchronized void reload(SimpleStockMarket stockMarket) throws IOException {
+        List<Row> rows = loadRows();
+        Set<String> known = stockMarket.getStockSymbols();
+        Map<String, StockOperations> added = new LinkedHashMap<>();
+        Map<String, UnaryOperator<StockOperations>> updated = new LinkedHashMap<>();
+        for (Row row : rows) {
+            if (!known.contains(row.stockSymbol)) {
+                added.put(row.stockSymbol, createOperation(row));
+            } else if (!row.sameAs(stockSymbolToLoadedRow.get(row.stockSymbol))) {
+                updated.put(row.stockSymbol, operations -> withStockData(operations, row));
+            }
+        }
+        if (!added.isEmpty() || !updated.isEmpty()) {
+            stockMarket.reload(updated, added);
+        }
+        remember(rows);
+    }
+
+    private void remember(List<Row> rows) {
+        Map<String, Row> loaded = new HashMap<>((int) (rows.size() / 0.75f) + 1);
+        rows.forEach(row -> loaded.put(row.stockSymbol, row));
+        stockSymbolToLoadedRow = loaded;
+    }
+
+    private List<Row> loadRows() throws IOException {
+        List<Chunk> chunks = parseChunks(map());
+        List<Problem> problems = new ArrayList<>();
+        int rows = 0;
+        for (Chunk chunk : chunks) {
+            problems.addAll(chunk.problems);
+            rows += chunk.rows.size();
+        }
+        List<Row> result = new ArrayList<>(rows);
+        Map<String, Integer> symbolToLine = new HashMap<>((int) (rows / 0.75f) + 1);
+        for (Chunk chunk : chunks) {
+            for (Row row : chunk.rows) {
+                Integer firstLine = symbolToLine.putIfAbsent(row.stockSymbol, row.line);
+                if (firstLine != null) {
+                    problems.add(new Problem(row.line, "duplicated stock symbol " + row.stockSymbol + " (first defined at line " + firstLine + ")"));
+                } else {
+                    result.add(row);
+                }
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException("cannot load data from source: " + csvFileLocation + ", " + describe(problems));
+        }
+        return result;
+    }
+
+    private ByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFileLocation), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("cannot load data from source: " + csvFileLocation + ", file is bigger than 2GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Splits buffer into chunks ending on line boundaries and parses them in parallel, line numbers are fixed up afterwards
+     */
+    private List<Chunk> parseChunks(ByteBuffer buffer) {
+        List<ByteBuffer> slices = new ArrayList<>();
+        int start = 0;
+        int size = buffer.limit();
+        while (start < size) {
+            int end = Math.min(start + chunkSize, size);
+            while (end < size && buffer.get(end - 1) != '\n') {
+                end++;
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start).limit(end);
+            slices.add(slice.slice());
+            start = end;
+        }
+        List<Chunk> chunks = IntStream.range(0, slices.size()).parallel()
+                .mapToObj(i -> parse(slices.get(i), i == 0))
+                .collect(Collectors.toList());
+        int firstLine = 1;
+        for (Chunk chunk : chunks) {
+            chunk.shiftLines(firstLine - 1);
+            firstLine += chunk.lines;
+        }
+        return chunks;
+    }
+
+    private Chunk parse(ByteBuffer bytes, boolean withHeader) {
+        Chunk chunk = new Chunk();
+        CharBuffer chars;
         try {
-            try (Stream<String> stream = Files.lines(Paths.get(csvFileLocation))) {
-                return stream.skip(1).collect(Collectors.toMap(this::getStockSymbol, this::createOperation));
+            chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+        } catch (CharacterCodingException e) {
+            chunk.problems.add(new Problem(1, "content is not UTF-8"));
+            return chunk;
+        }
+        char[] content = new char[chars.remaining()];
+        chars.get(content);
+        int lineStart = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            chunk.lines++;
+            int end = lineEnd > lineStart && content[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (!withHeader || chunk.lines > 1) {
+                parseLine(chunk, content, lineStart, end);
             }
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("cannot load data from source: " + csvFileLocation, e);
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private void parseLine(Chunk chunk, char[] content, int start, int end) {
+        int line = chunk.lines;
+        if (start == end) {
+            return;
+        }
+        int[] columnStarts = new int[COLUMNS + 1];
+        int columns = 1;
+        for (int i = start; i < end; i++) {
+            if (content[i] == ',') {
+                if (columns == COLUMNS) {
+                    chunk.problems.add(new Problem(line, "expected " + COLUMNS + " columns"));
+                    return;
+                }
+                columnStarts[columns++] = i + 1;
+            }
+        }
+        if (columns != COLUMNS) {
+            chunk.problems.add(new Problem(line, "expected " + COLUMNS + " columns"));
+            return;
+        }
+        columnStarts[0] = start;
+        columnStarts[COLUMNS] = end + 1;
+        if (columnStarts[1] - 1 == start) {
+            chunk.problems.add(new Problem(line, "stock symbol is not set"));
+            return;
+        }
+        String type = new String(content, columnStarts[1], columnStarts[2] - 1 - columnStarts[1]);
+        if (!typeToDividedFactorFunction.containsKey(type)) {
+            chunk.problems.add(new Problem(line, "unknown stock type " + type));
+            return;
+        }
+        try {
+            BigDecimal lastDividend = toBigDecimal(content, columnStarts[2], columnStarts[3] - 1);
+            BigDecimal fixedDividend = toBigDecimal(content, columnStarts[3], columnStarts[4] - 1);
+            BigDecimal parValue = toBigDecimal(content, columnStarts[4], columnStarts[5] - 1);
+            String stockSymbol = new String(content, start, columnStarts[1] - 1 - start);
+            chunk.rows.add(new Row(line, stockSymbol, type, new StockData(lastDividend, fixedDividend, parValue)));
+        } catch (NumberFormatException e) {
+            chunk.problems.add(new Problem(line, "invalid number"));
+        }
+    }
+
+    private StockOperations createOperation(Row row) {
+        StockOperations operations;
+        try {
+            operations = new BasicStockOperations(typeToDividedFactorFunction.get(row.type), row.stockData, tradeStorageFactory.create());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("cannot load data from source: " + csvFileLocation + ", line " + row.line, e);
+        }
+        if (!barIntervals.isEmpty()) {
+            operations = new AggregatingStockOperations(operations, new BarAggregator(barIntervals, barHistorySize));
         }
+        return priceCacheSize == 0 ? operations : new CachingStockOperations(operations, priceCacheSize);
     }
 
-    private String getStockSymbol(String stockDefinition) {
-        return stockDefinition.split(",")[0];
+    private StockOperations withStockData(StockOperations operations, Row row) {
+        try {
+            return operations.withStockData(typeToDividedFactorFunction.get(row.type), row.stockData);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("cannot load data from source: " + csvFileLocation + ", line " + row.line, e);
+        }
+    }
+
+    private static BigDecimal toBigDecimal(char[] content, int start, int end) {
+        return start == end ? null : new BigDecimal(content, start, end - start);
+    }
+
+    private static String describe(List<Problem> problems) {
+        String described = problems.stream()
+                .sorted(Comparator.comparingInt((Problem p) -> p.line))
+                .limit(MAX_REPORTED_PROBLEMS)
+                .map(Problem::toString)
+                .collect(Collectors.joining(", "));
+        return problems.size() > MAX_REPORTED_PROBLEMS ? described + " and " + (problems.size() - MAX_REPORTED_PROBLEMS) + " more problems" : described;
+    }
+
+    private static final class Chunk {
+        private int lines;
+        private final List<Row> rows = new ArrayList<>();
+        private final List<Problem> problems = new ArrayList<>();
+
+        private void shiftLines(int offset) {
+            rows.forEach(row -> row.line += offset);
+            problems.forEach(problem -> problem.line += offset);
+        }
     }
 
-    private StockOperations createOperation(String stockDefinition) {
-        String[] columns = stockDefinition.split(",");
-        String type = columns[1];
-        BigDecimal lastDividend = toBigDecimal(columns[2]);
-        BigDecimal fixedDividend = toBigDecimal(columns[3]);
-        BigDecimal parValue = toBigDecimal(columns[4]);
-        StockData stockData = new StockData(lastDividend, fixedDividend, parValue);
-        return new BasicStockOperations(typeToDividedFactorFunction.get(type), stockData, tradeStorageFactory.create());
+    private static final class Row {
+        private int line;
+        private final String stockSymbol;
+        private final String type;
+        private final StockData stockData;
+
+        private Row(int line, String stockSymbol, String type, StockData stockData) {
+            this.line = line;
+            this.stockSymbol = stockSymbol;
+            this.type = type;
+            this.stockData = stockData;
+        }
+
+        private boolean sameAs(Row loaded) {
+            return loaded != null && type.equals(loaded.type) && stockData.equals(loaded.stockData);
+        }
     }
 
-    private BigDecimal toBigDecimal(String value) {
-        return value.isEmpty() ? null : new BigDecimal(value);
+    private static final class Problem {
+        private int line;
+        private final String message;
+
+        private Problem(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
     }
 }
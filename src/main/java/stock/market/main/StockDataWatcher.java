@@ -0,0 +1,89 @@
+package stock.market.main;
+
+import stock.market.impl.SimpleStockMarket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches directory of stock data csv file and reloads stock data into running stock market when the file is changed
+ * (see {@link StockDataLoader#reload(SimpleStockMarket)}). Reloading runs in a daemon thread, trades are recorded meanwhile.
+ */
+public class StockDataWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(StockDataWatcher.class.getName());
+
+    private final Path csvFile;
+    private final StockDataLoader stockDataLoader;
+    private final SimpleStockMarket stockMarket;
+    private WatchService watchService;
+
+    public StockDataWatcher(URI csvFileLocation, StockDataLoader stockDataLoader, SimpleStockMarket stockMarket) {
+        if (stockDataLoader == null) {
+            throw new IllegalArgumentException("stockDataLoader cannot be null");
+        }
+        if (stockMarket == null) {
+            throw new IllegalArgumentException("stockMarket cannot be null");
+        }
+        this.csvFile = Paths.get(csvFileLocation).toAbsolutePath();
+        this.stockDataLoader = stockDataLoader;
+        this.stockMarket = stockMarket;
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        csvFile.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watch(watchService), "stock-data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= csvFile.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    void reload() {
+        try {
+            stockDataLoader.reload(stockMarket);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "stock data not reloaded from " + csvFile, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package stock.market.main;
+
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Streams trades from csv file with header and columns: Stock Symbol, Timestamp (ISO-8601), Quantity, Site, Price.
+ * File is read lazily line by line, so it can be bigger than memory. Stream has to be closed.
+ */
+public class TradeCsvReader {
+
+    private static final int COLUMNS = 5;
+
+    public Stream<Trade> read(Path csvFile) throws IOException {
+        AtomicLong line = new AtomicLong(1);
+        return Files.lines(csvFile, StandardCharsets.UTF_8)
+                .skip(1)
+                .map(row -> parse(row, line.incrementAndGet()))
+                .filter(trade -> trade != null);
+    }
+
+    private static Trade parse(String row, long line) {
+        if (row.isEmpty()) {
+            return null;
+        }
+        int[] columnStarts = new int[COLUMNS + 1];
+        int columns = 1;
+        for (int i = row.indexOf(','); i >= 0; i = row.indexOf(',', i + 1)) {
+            if (columns == COLUMNS) {
+                throw malformed(line, "expected " + COLUMNS + " columns", null);
+            }
+            columnStarts[columns++] = i + 1;
+        }
+        if (columns != COLUMNS) {
+            throw malformed(line, "expected " + COLUMNS + " columns", null);
+        }
+        columnStarts[COLUMNS] = row.length() + 1;
+        try {
+            return new Trade(column(row, columnStarts, 0),
+                    LocalDateTime.parse(column(row, columnStarts, 1)),
+                    Long.valueOf(column(row, columnStarts, 2)),
+                    Site.valueOf(column(row, columnStarts, 3)),
+                    new BigDecimal(column(row, columnStarts, 4)));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw malformed(line, e.getMessage(), e);
+        }
+    }
+
+    private static String column(String row, int[] columnStarts, int column) {
+        return row.substring(columnStarts[column], columnStarts[column + 1] - 1);
+    }
+
+    private static IllegalArgumentException malformed(long line, String reason, Exception cause) {
+        return new IllegalArgumentException("malformed trade at line " + line + ": " + reason, cause);
+    }
+}
@@ -0,0 +1,70 @@
+package stock.market.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import stock.market.Bar;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AggregatingStockOperationsTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    @Mock
+    private StockOperations delegate;
+
+    private AggregatingStockOperations operations;
+
+    @Before
+    public void setUp() throws Exception {
+        operations = new AggregatingStockOperations(delegate, new BarAggregator(singletonList(Duration.ofMinutes(1)), 10));
+    }
+
+    @Test
+    public void shouldAggregateOnlyTradesRecordedByDelegate() throws Exception {
+        //given
+        Trade recorded = new Trade("TEA", START, 2L, Site.Buy, BigDecimal.TEN);
+        Trade rejected = new Trade("TEA", START, 5L, Site.Buy, BigDecimal.ONE);
+        when(delegate.recordAll(asList(recorded, rejected))).thenReturn(singletonList(new RejectedTrade(rejected, "rejected")));
+        //when
+        operations.recordAll(asList(recorded, rejected));
+        operations.record(new Trade("TEA", START.plusSeconds(1), 1L, Site.Sell, new BigDecimal("20")));
+        //then
+        List<Bar> bars = operations.getBars(Duration.ofMinutes(1), START, START.plusMinutes(1));
+        assertThat(bars).hasSize(1);
+        assertThat(bars.get(0).getLow()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(bars.get(0).getClose()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(bars.get(0).getVolume()).isEqualTo(3L);
+        verify(delegate).record(any(Trade.class));
+    }
+
+    @Test
+    public void shouldNotAggregateTradeRejectedByDelegate() throws Exception {
+        //given
+        Trade trade = new Trade("TEA", START, 2L, Site.Buy, BigDecimal.TEN);
+        doThrow(new IllegalArgumentException("rejected")).when(delegate).record(trade);
+        //when
+        try {
+            operations.record(trade);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        //then
+        assertThat(operations.getBars(Duration.ofMinutes(1), START, START.plusMinutes(1))).isEmpty();
+    }
+}
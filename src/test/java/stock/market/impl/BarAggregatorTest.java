@@ -0,0 +1,105 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.Bar;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BarAggregatorTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private BarAggregator aggregator = new BarAggregator(asList(Duration.ofSeconds(1), Duration.ofMinutes(1)), 2);
+
+    @Test
+    public void shouldAggregateBarsOfAllIntervals() throws Exception {
+        //given
+        aggregator.add(trade(START.plus(100, MILLIS), 2L, "10"));
+        aggregator.add(trade(START.plus(900, MILLIS), 1L, "12"));
+        aggregator.add(trade(START.plus(500, MILLIS), 1L, "9"));
+        aggregator.add(trade(START.plus(2500, MILLIS), 4L, "11"));
+        //when
+        List<Bar> seconds = aggregator.getBars(Duration.ofSeconds(1), START, START.plusMinutes(1));
+        List<Bar> minutes = aggregator.getBars(Duration.ofMinutes(1), START, START.plusMinutes(1));
+        //then
+        assertThat(seconds).hasSize(2);
+        assertBar(seconds.get(0), START, "10", "12", "9", "12", 4L);
+        assertBar(seconds.get(1), START.plusSeconds(2), "11", "11", "11", "11", 4L);
+        assertThat(minutes).hasSize(1);
+        assertBar(minutes.get(0), START, "10", "12", "9", "11", 8L);
+        assertThat(minutes.get(0).getInterval()).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void shouldUpdateBarOfLateTradeOnlyIfKept() throws Exception {
+        //given
+        aggregator.add(trade(START, 1L, "10"));
+        aggregator.add(trade(START.plusSeconds(1), 1L, "10"));
+        aggregator.add(trade(START.plusSeconds(2), 1L, "10"));
+        aggregator.add(trade(START.plusSeconds(3), 1L, "10"));
+        //when
+        aggregator.add(trade(START.plusSeconds(1).plus(1, MILLIS), 5L, "20"));
+        aggregator.add(trade(START.plus(1, MILLIS), 5L, "20"));
+        //then
+        List<Bar> seconds = aggregator.getBars(Duration.ofSeconds(1), START, START.plusSeconds(10));
+        assertThat(seconds).hasSize(3);
+        assertBar(seconds.get(0), START.plusSeconds(1), "10", "20", "10", "20", 6L);
+        assertThat(aggregator.getSkippedTradeCount()).isEqualTo(1L);
+        assertThat(aggregator.getBars(Duration.ofMinutes(1), START, START.plusMinutes(1)).get(0).getVolume()).isEqualTo(14L);
+    }
+
+    @Test
+    public void shouldReturnBarsOfTimeRange() throws Exception {
+        //given
+        aggregator.add(trade(START, 1L, "10"));
+        aggregator.add(trade(START.plusSeconds(1), 1L, "11"));
+        aggregator.add(trade(START.plusSeconds(2), 1L, "12"));
+        //when
+        List<Bar> bars = aggregator.getBars(Duration.ofSeconds(1), START.plusSeconds(1), START.plusSeconds(2));
+        //then
+        assertThat(bars).hasSize(1);
+        assertThat(bars.get(0).getStart()).isEqualTo(START.plusSeconds(1));
+    }
+
+    @Test
+    public void shouldValidateInterval() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("interval is not aggregated: PT5M");
+
+        aggregator.getBars(Duration.ofMinutes(5), START, START.plusMinutes(5));
+    }
+
+    @Test
+    public void shouldValidateHistorySize() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("historySize have to be > 0");
+
+        new BarAggregator(asList(Duration.ofSeconds(1)), 0);
+    }
+
+    private static Trade trade(LocalDateTime timestamp, long quantity, String price) {
+        return new Trade("IBM", timestamp, quantity, Site.Buy, new BigDecimal(price));
+    }
+
+    private static void assertBar(Bar bar, LocalDateTime start, String open, String high, String low, String close, long volume) {
+        assertThat(bar.getStart()).isEqualTo(start);
+        assertThat(bar.getOpen()).isEqualByComparingTo(new BigDecimal(open));
+        assertThat(bar.getHigh()).isEqualByComparingTo(new BigDecimal(high));
+        assertThat(bar.getLow()).isEqualByComparingTo(new BigDecimal(low));
+        assertThat(bar.getClose()).isEqualByComparingTo(new BigDecimal(close));
+        assertThat(bar.getVolume()).isEqualTo(volume);
+    }
+}
@@ -7,12 +7,13 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import stock.market.OrderFlow;
 import stock.market.Site;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collections;
 import java.util.function.Function;
 
 import static java.math.BigDecimal.*;
@@ -37,8 +38,8 @@ public class BasicStockOperationsTest {
 
     @Before
     public void setUp() throws Exception {
-        operations = new BasicStockOperations(dividedYieldProvider, stockData, tradeStorage);
         when(dividedYieldProvider.apply(any())).thenReturn(DIVIDED_YIELD_RESULT);
+        operations = new BasicStockOperations(dividedYieldProvider, stockData, tradeStorage);
     }
 
     @Test
@@ -65,6 +66,14 @@ public class BasicStockOperationsTest {
         new BasicStockOperations(dividedYieldProvider, stockData, null);
     }
 
+    @Test
+    public void shouldNotAcceptStockDataWithoutDividend() {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("dividend cannot be calculated from stock data");
+
+        new BasicStockOperations(stockData -> null, stockData, tradeStorage);
+    }
+
     @Test
     public void shouldDelegateCalculateDividedYield() {
         //given
@@ -76,6 +85,33 @@ public class BasicStockOperationsTest {
     }
 
 
+    @Test
+    public void shouldApplyDividedYieldProviderOnlyWhenStockDataIsSet() {
+        //given
+        StockData updatedStockData = new StockData(ONE, null, null);
+        when(dividedYieldProvider.apply(updatedStockData)).thenReturn(new BigDecimal("5"));
+        operations.calculateDividedYield(ONE);
+        //when
+        StockOperations updated = operations.withStockData(dividedYieldProvider, updatedStockData);
+        BigDecimal result = updated.calculateDividedYield(ONE);
+        //then
+        assertThat(result).isEqualByComparingTo(new BigDecimal("5"));
+        assertThat(operations.calculateDividedYield(ONE)).isEqualByComparingTo(DIVIDED_YIELD_RESULT);
+        verify(dividedYieldProvider, times(1)).apply(stockData);
+        verify(dividedYieldProvider, times(1)).apply(updatedStockData);
+    }
+
+    @Test
+    public void shouldShareTradesWithOperationsOfOtherStockData() {
+        //given
+        Trade trade = new Trade("IBM", LocalDateTime.now(), 1L, Site.Buy, TEN);
+        StockOperations updated = operations.withStockData(dividedYieldProvider, new StockData(ONE, null, null));
+        //when
+        updated.record(trade);
+        //then
+        verify(tradeStorage, times(1)).record(trade);
+    }
+
     @Test
     public void shouldCalculatePERatio() {
         //given
@@ -89,6 +125,7 @@ public class BasicStockOperationsTest {
     public void shouldCalculatePERatioEvenIfDividendIsZero() {
         //given
         when(dividedYieldProvider.apply(any())).thenReturn(ZERO);
+        operations = new BasicStockOperations(dividedYieldProvider, stockData, tradeStorage);
         //when
         BigDecimal result = operations.calculatePERatio(ONE);
         //then
@@ -106,12 +143,22 @@ public class BasicStockOperationsTest {
         verify(tradeStorage, times(1)).record(trade);
     }
 
+    @Test
+    public void shouldDelegateRecordAll() {
+        //given
+        Trade trade = mock(Trade.class);
+        //when
+        operations.recordAll(asList(trade));
+        //then
+        verify(tradeStorage, times(1)).recordAll(asList(trade));
+    }
+
     @Test
     public void shouldCalculateVolumeWeightedStockPrice() {
         //given
         Trade trade1 = new Trade("IBM", LocalDateTime.now(), 2L, Site.Sell, ONE);
         Trade trade2 = new Trade("IBM", LocalDateTime.now().minus(1, SECONDS), 1L, Site.Buy, TEN);
-        when(tradeStorage.getValidTrades()).thenReturn(asList(trade1, trade2));
+        when(tradeStorage.getValidTradeTotals()).thenReturn(TradeTotals.of(asList(trade1, trade2), Duration.ofMinutes(5)));
 
         //when
         BigDecimal result = operations.calculateVolumeWeightedStockPrice();
@@ -119,10 +166,22 @@ public class BasicStockOperationsTest {
         assertThat(result).isEqualByComparingTo(new BigDecimal("4"));
     }
 
+    @Test
+    public void shouldCalculateVolumeWeightedStockPriceOfHorizon() {
+        //given
+        Trade trade = new Trade("IBM", LocalDateTime.now(), 2L, Site.Sell, TEN);
+        when(tradeStorage.getValidTradeTotals(Duration.ofMinutes(1))).thenReturn(TradeTotals.of(asList(trade), Duration.ofMinutes(1)));
+
+        //when
+        BigDecimal result = operations.calculateVolumeWeightedStockPrice(Duration.ofMinutes(1));
+        //then
+        assertThat(result).isEqualByComparingTo(TEN);
+    }
+
     @Test
     public void shouldCalculateVolumeWeightedStockPriceSupportNoTradesCase() {
         //given
-        when(tradeStorage.getValidTrades()).thenReturn(Collections.emptyList());
+        when(tradeStorage.getValidTradeTotals()).thenReturn(TradeTotals.EMPTY);
 
         //when
         BigDecimal result = operations.calculateVolumeWeightedStockPrice();
@@ -130,4 +189,48 @@ public class BasicStockOperationsTest {
         assertThat(result).isEqualByComparingTo(ZERO);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldCalculateOrderFlow() {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+        when(tradeStorage.getValidTradeTotals(Site.Buy)).thenReturn(TradeTotals.of(asList(
+                new Trade("IBM", now, 2L, Site.Buy, TEN), new Trade("IBM", now, 1L, Site.Buy, new BigDecimal("40"))), Duration.ofMinutes(1)));
+        when(tradeStorage.getValidTradeTotals(Site.Sell)).thenReturn(TradeTotals.of(asList(
+                new Trade("IBM", now, 1L, Site.Sell, new BigDecimal("30"))), Duration.ofMinutes(1)));
+        //when
+        OrderFlow result = operations.calculateOrderFlow();
+        //then
+        assertThat(result.getBuyVolumeWeightedStockPrice()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(result.getBuyVolume()).isEqualTo(3L);
+        assertThat(result.getSellVolumeWeightedStockPrice()).isEqualByComparingTo(new BigDecimal("30"));
+        assertThat(result.getSellVolume()).isEqualTo(1L);
+        assertThat(result.getImbalance()).isEqualByComparingTo(new BigDecimal("0.5"));
+    }
+
+    @Test
+    public void shouldCalculateOrderFlowSupportNoTradesCase() {
+        //given
+        when(tradeStorage.getValidTradeTotals(Site.Buy)).thenReturn(TradeTotals.EMPTY);
+        when(tradeStorage.getValidTradeTotals(Site.Sell)).thenReturn(TradeTotals.EMPTY);
+        //when
+        OrderFlow result = operations.calculateOrderFlow();
+        //then
+        assertThat(result.getBuyVolumeWeightedStockPrice()).isEqualByComparingTo(ZERO);
+        assertThat(result.getSellVolumeWeightedStockPrice()).isEqualByComparingTo(ZERO);
+        assertThat(result.getImbalance()).isEqualByComparingTo(ZERO);
+    }
+
+    @Test
+    public void shouldCalculateVolumeWeightedStockPriceAndExpiryFromTheSameTotals() {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+        when(tradeStorage.getValidTradeTotals()).thenReturn(TradeTotals.of(asList(
+                new Trade("IBM", now.minus(10, SECONDS), 1L, Site.Buy, TEN), new Trade("IBM", now, 1L, Site.Sell, new BigDecimal("30"))), Duration.ofMinutes(1)));
+        //when
+        ExpiringPrice result = operations.calculateExpiringVolumeWeightedStockPrice();
+        //then
+        assertThat(result.getPrice()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(result.getExpiry()).isEqualTo(now.minus(10, SECONDS).plusMinutes(1));
+        verify(tradeStorage, times(1)).getValidTradeTotals();
+    }
+}
@@ -0,0 +1,90 @@
+package stock.market.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.TEN;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingStockOperationsTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    @Mock
+    private StockOperations delegate;
+    private CachingStockOperations operations;
+
+    @Before
+    public void setUp() throws Exception {
+        operations = new CachingStockOperations(delegate, 2);
+        when(delegate.calculateDividedYield(any())).thenReturn(TEN);
+        when(delegate.calculatePERatio(any())).thenReturn(ONE);
+    }
+
+    @Test
+    public void shouldValidateConstructorMaxSize() {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("maxSize have to be > 0");
+
+        new CachingStockOperations(delegate, 0);
+    }
+
+    @Test
+    public void shouldCalculateRatiosOncePerPrice() {
+        //given
+        operations.calculateDividedYield(ONE);
+        operations.calculatePERatio(ONE);
+        //when
+        BigDecimal dividedYield = operations.calculateDividedYield(ONE);
+        BigDecimal peRatio = operations.calculatePERatio(ONE);
+        //then
+        assertThat(dividedYield).isEqualTo(TEN);
+        assertThat(peRatio).isEqualTo(ONE);
+        verify(delegate, times(1)).calculateDividedYield(ONE);
+        verify(delegate, times(1)).calculatePERatio(ONE);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedPrice() {
+        //given
+        operations.calculateDividedYield(ONE);
+        operations.calculateDividedYield(TEN);
+        operations.calculateDividedYield(ONE);
+        //when
+        operations.calculateDividedYield(new BigDecimal("2"));
+        operations.calculateDividedYield(ONE);
+        operations.calculateDividedYield(TEN);
+        //then
+        assertThat(operations.size()).isEqualTo(2);
+        verify(delegate, times(1)).calculateDividedYield(ONE);
+        verify(delegate, times(2)).calculateDividedYield(TEN);
+    }
+
+    @Test
+    public void shouldNotShareCacheWithOperationsOfOtherStockData() {
+        //given
+        StockData stockData = new StockData(ONE, null, null);
+        StockOperations updatedDelegate = mock(StockOperations.class);
+        when(delegate.withStockData(any(CommonDividedFactorFunction.class), eq(stockData))).thenReturn(updatedDelegate);
+        when(updatedDelegate.calculateDividedYield(ONE)).thenReturn(TEN);
+        operations.calculateDividedYield(ONE);
+        //when
+        StockOperations updated = operations.withStockData(new CommonDividedFactorFunction(), stockData);
+        BigDecimal result = updated.calculateDividedYield(ONE);
+        //then
+        assertThat(result).isEqualTo(TEN);
+        assertThat(operations.size()).isEqualTo(1);
+        verify(delegate, times(1)).calculateDividedYield(ONE);
+        verify(updatedDelegate, times(1)).calculateDividedYield(ONE);
+    }
+}
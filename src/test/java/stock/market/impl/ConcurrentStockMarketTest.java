@@ -0,0 +1,221 @@
+package stock.market.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrentStockMarketTest {
+
+    @Mock
+    private Function<List<BigDecimal>, BigDecimal> geometricMeanFunction;
+    @Mock
+    private StockOperations teaOperations;
+    @Mock
+    private StockOperations popOperations;
+
+    private ConcurrentStockMarket stockMarket;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, StockOperations> stockSymbolToOperationDelegator = new HashMap<>();
+        stockSymbolToOperationDelegator.put("TEA", teaOperations);
+        stockSymbolToOperationDelegator.put("POP", popOperations);
+        stockMarket = new ConcurrentStockMarket(stockSymbolToOperationDelegator, geometricMeanFunction);
+        when(teaOperations.calculateExpiringVolumeWeightedStockPrice()).thenReturn(ExpiringPrice.EMPTY);
+        when(popOperations.calculateExpiringVolumeWeightedStockPrice()).thenReturn(ExpiringPrice.EMPTY);
+    }
+
+    @Test
+    public void shouldDelegateRecordAndPublishVolumeWeightedStockPrice() throws Exception {
+        //given
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+        when(teaOperations.calculateExpiringVolumeWeightedStockPrice()).thenReturn(new ExpiringPrice(BigDecimal.TEN, LocalDateTime.now().plusHours(1)));
+        //when
+        stockMarket.record(trade);
+        //then
+        verify(teaOperations).record(trade);
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice("TEA")).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice("TEA")).isEqualByComparingTo(BigDecimal.TEN);
+        verify(teaOperations, times(1)).calculateExpiringVolumeWeightedStockPrice();
+    }
+
+    @Test
+    public void shouldRefreshPublishedVolumeWeightedStockPriceAfterExpiry() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        Map<String, StockOperations> stockSymbolToOperationDelegator = new HashMap<>();
+        stockSymbolToOperationDelegator.put("TEA", new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock)));
+        ConcurrentStockMarket market = new ConcurrentStockMarket(stockSymbolToOperationDelegator, new LogarithmBasedGeometricMeanFunction(), clock);
+        market.record(new Trade("TEA", start, 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        clock.advance(Duration.ofSeconds(30));
+        BigDecimal beforeExpiry = market.calculateVolumeWeightedStockPrice("TEA");
+        clock.advance(Duration.ofSeconds(31));
+        BigDecimal afterExpiry = market.calculateVolumeWeightedStockPrice("TEA");
+        //then
+        assertThat(beforeExpiry).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(afterExpiry).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(market.calculateGBCE()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldCalculateGBCEWhileSymbolIsWritten() throws Exception {
+        //given
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            written.await();
+            return null;
+        }).when(teaOperations).record(trade);
+        when(popOperations.calculateExpiringVolumeWeightedStockPrice()).thenReturn(new ExpiringPrice(new BigDecimal("11"), null));
+        when(geometricMeanFunction.apply(asList(new BigDecimal("11")))).thenReturn(new BigDecimal("11"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> stockMarket.record(trade));
+        writing.await();
+        //when
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        written.countDown();
+        writer.get();
+        executor.shutdown();
+        assertThat(result).isEqualByComparingTo(new BigDecimal("11"));
+    }
+
+    @Test
+    public void shouldCalculateGBCEFromNonZeroPrices() throws Exception {
+        //given
+        BigDecimal expectedResult = new BigDecimal("3.34");
+        when(teaOperations.calculateExpiringVolumeWeightedStockPrice()).thenReturn(new ExpiringPrice(new BigDecimal("11"), null));
+        when(geometricMeanFunction.apply(asList(new BigDecimal("11")))).thenReturn(expectedResult);
+        //when
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        assertThat(result).isEqualTo(expectedResult);
+    }
+
+    @Test
+    public void shouldRecordConcurrently() throws Exception {
+        //given
+        Map<String, StockOperations> stockSymbolToOperationDelegator = new HashMap<>();
+        List<String> symbols = asList("TEA", "POP", "ALE", "GIN");
+        for (String symbol : symbols) {
+            stockSymbolToOperationDelegator.put(symbol, new BasicStockOperations(new CommonDividedFactorFunction(),
+                    new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMinutes(5))));
+        }
+        ConcurrentStockMarket market = new ConcurrentStockMarket(stockSymbolToOperationDelegator, new DoubleBasedGeometricMeanFunctionWithLimitedPrecision());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int i = 0; i < 8; i++) {
+            String symbol = symbols.get(i % symbols.size());
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    market.record(new Trade(symbol, LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN));
+                    market.calculateGBCE();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        for (String symbol : symbols) {
+            assertThat(market.calculateVolumeWeightedStockPrice(symbol)).isEqualByComparingTo(BigDecimal.TEN);
+        }
+        assertThat(market.calculateGBCE().doubleValue()).isEqualTo(10d);
+    }
+
+    @Test
+    public void shouldCalculateSameGBCEInParallel() throws Exception {
+        //given
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Map<String, StockOperations> sequentialOperations = new HashMap<>();
+        Map<String, StockOperations> parallelOperations = new HashMap<>();
+        Random random = new Random(11);
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String symbol = "S" + i;
+            sequentialOperations.put(symbol, createOperations());
+            parallelOperations.put(symbol, createOperations());
+            if (i % 10 != 0) {
+                trades.add(new Trade(symbol, LocalDateTime.now(), 1L + random.nextInt(1000), Site.Buy, BigDecimal.valueOf(1 + random.nextInt(100_000), 2)));
+            }
+        }
+        ConcurrentStockMarket sequential = new ConcurrentStockMarket(sequentialOperations, new LogarithmBasedGeometricMeanFunction());
+        ConcurrentStockMarket parallel = new ConcurrentStockMarket(parallelOperations, new LogarithmBasedGeometricMeanFunction(), pool);
+        sequential.recordAll(trades);
+        parallel.recordAll(trades);
+        //when
+        BigDecimal result = parallel.calculateGBCE();
+        //then
+        assertThat(result).isEqualTo(sequential.calculateGBCE());
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldCalculateGBCEInParallelWhileRecording() throws Exception {
+        //given
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Map<String, StockOperations> stockSymbolToOperationDelegator = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            stockSymbolToOperationDelegator.put("S" + i, createOperations());
+        }
+        ConcurrentStockMarket market = new ConcurrentStockMarket(stockSymbolToOperationDelegator, new DoubleBasedGeometricMeanFunctionWithLimitedPrecision(), pool);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        //when
+        for (int i = 0; i < 4; i++) {
+            int first = i;
+            futures.add(executor.submit(() -> {
+                for (int j = first; j < 2000; j += 4) {
+                    market.record(new Trade("S" + (j % 200), LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN));
+                    if (j % 50 == first) {
+                        market.calculateGBCE();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        //then
+        assertThat(market.calculateGBCE().doubleValue()).isEqualTo(10d);
+        pool.shutdown();
+    }
+
+    private static StockOperations createOperations() {
+        return new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMinutes(5)));
+    }
+}
@@ -0,0 +1,30 @@
+package stock.market.impl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DirectBuffersTest {
+
+    @Test
+    public void shouldFreeDirectBuffer() throws Exception {
+        //given
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        //when
+        boolean freed = DirectBuffers.free(buffer);
+        //then
+        assertThat(freed).isTrue();
+    }
+
+    @Test
+    public void shouldNotFreeHeapBuffer() throws Exception {
+        //given
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        //when
+        boolean freed = DirectBuffers.free(buffer);
+        //then
+        assertThat(freed).isFalse();
+    }
+}
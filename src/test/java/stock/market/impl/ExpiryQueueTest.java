@@ -0,0 +1,125 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ExpiryQueueTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private final ExpiryQueue queue = new ExpiryQueue(4);
+
+    @Test
+    public void shouldPollSlotsInOrderOfTime() throws Exception {
+        //given
+        queue.schedule(0, 30L);
+        queue.schedule(1, 10L);
+        queue.schedule(2, 20L);
+        //when
+        List<Integer> polled = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            polled.add(queue.poll());
+        }
+        //then
+        assertThat(polled).isEqualTo(asList(1, 2, 0));
+    }
+
+    @Test
+    public void shouldMoveRescheduledSlotInPlace() throws Exception {
+        //given
+        queue.schedule(0, 10L);
+        queue.schedule(1, 20L);
+        //when
+        for (long time = 30L; time < 1000L; time++) {
+            queue.schedule(0, time);
+        }
+        //then
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.peekTime()).isEqualTo(20L);
+        assertThat(queue.poll()).isEqualTo(1);
+        assertThat(queue.peekTime()).isEqualTo(999L);
+    }
+
+    @Test
+    public void shouldRemoveSlot() throws Exception {
+        //given
+        queue.schedule(0, 10L);
+        queue.schedule(1, 20L);
+        queue.schedule(2, 30L);
+        //when
+        queue.remove(0);
+        queue.remove(0);
+        //then
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.poll()).isEqualTo(1);
+        assertThat(queue.poll()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldGrowWithSlots() throws Exception {
+        //when
+        for (int slot = 0; slot < 100; slot++) {
+            queue.schedule(slot, 1000L - slot);
+        }
+        //then
+        assertThat(queue.size()).isEqualTo(100);
+        assertThat(queue.poll()).isEqualTo(99);
+    }
+
+    @Test
+    public void shouldKeepOrderOfRandomlyRescheduledSlots() throws Exception {
+        //given
+        Random random = new Random(7);
+        long[] times = new long[50];
+        boolean[] queued = new boolean[times.length];
+        for (int i = 0; i < 10_000; i++) {
+            int slot = random.nextInt(times.length);
+            if (random.nextInt(5) == 0) {
+                queue.remove(slot);
+                queued[slot] = false;
+            } else {
+                times[slot] = random.nextInt(1000);
+                queue.schedule(slot, times[slot]);
+                queued[slot] = true;
+            }
+        }
+        PriorityQueue<Long> expected = new PriorityQueue<>();
+        for (int slot = 0; slot < times.length; slot++) {
+            if (queued[slot]) {
+                expected.add(times[slot]);
+            }
+        }
+        //when
+        List<Long> polled = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            long time = queue.peekTime();
+            int slot = queue.poll();
+            assertThat(times[slot]).isEqualTo(time);
+            polled.add(time);
+        }
+        //then
+        List<Long> expectedTimes = new ArrayList<>();
+        while (!expected.isEmpty()) {
+            expectedTimes.add(expected.poll());
+        }
+        assertThat(polled).isEqualTo(expectedTimes);
+    }
+
+    @Test
+    public void shouldNotAcceptNegativeSlot() throws Exception {
+        //given
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("slot have to be >= 0");
+        //when
+        queue.schedule(-1, 10L);
+    }
+}
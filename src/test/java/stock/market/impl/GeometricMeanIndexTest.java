@@ -0,0 +1,74 @@
+package stock.market.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GeometricMeanIndexTest {
+
+    private GeometricMeanIndex index = new GeometricMeanIndex(4);
+
+    @Test
+    public void shouldCalculateGeometricMeanOfNonZeroValues() throws Exception {
+        //given
+        index.update(0, new BigDecimal("2"));
+        index.update(1, BigDecimal.ZERO);
+        index.update(3, new BigDecimal("8"));
+        //when
+        BigDecimal result = index.value();
+        //then
+        Assert.assertEquals(4d, result.doubleValue(), 4d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldReplacePreviousValueOfSlot() throws Exception {
+        //given
+        index.update(0, new BigDecimal("2"));
+        index.update(1, new BigDecimal("1000"));
+        index.update(1, new BigDecimal("8"));
+        index.update(2, new BigDecimal("3"));
+        index.update(2, BigDecimal.ZERO);
+        //when
+        BigDecimal result = index.value();
+        //then
+        Assert.assertEquals(4d, result.doubleValue(), 4d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldReturnZeroIfThereAreNoNonZeroValues() throws Exception {
+        index.update(2, BigDecimal.ZERO);
+
+        assertThat(index.value()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldStayWithinToleranceOfMultiplyingValues() throws Exception {
+        //given
+        int size = 40;
+        index = new GeometricMeanIndex(size);
+        BigDecimal[] values = new BigDecimal[size];
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            int slot = random.nextInt(size);
+            values[slot] = BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+            index.update(slot, values[slot]);
+        }
+        List<BigDecimal> nonZero = new ArrayList<>();
+        for (BigDecimal value : values) {
+            if (value != null) {
+                nonZero.add(value);
+            }
+        }
+        //when
+        double expected = new DoubleBasedGeometricMeanFunctionWithLimitedPrecision().apply(nonZero).doubleValue();
+        double result = index.value().doubleValue();
+        //then
+        Assert.assertEquals(expected, result, expected * GeometricMeanIndex.TOLERANCE);
+    }
+}
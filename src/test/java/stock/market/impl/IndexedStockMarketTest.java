@@ -0,0 +1,127 @@
+package stock.market.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.NotRecognizedStockException;
+import stock.market.Site;
+import stock.market.StockSymbol;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IndexedStockMarketTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private IndexedStockMarket stockMarket;
+    private ReplayMarketClock clock;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+        Map<String, StockOperations> stockSymbolToOperationDelegator = new LinkedHashMap<>();
+        for (String symbol : asList("TEA", "POP", "ALE")) {
+            stockSymbolToOperationDelegator.put(symbol, new BasicStockOperations(new CommonDividedFactorFunction(),
+                    new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMillis(300), clock)));
+        }
+        stockMarket = new IndexedStockMarket(stockSymbolToOperationDelegator, clock);
+    }
+
+    @Test
+    public void shouldCalculateGBCEOfRecordedTrades() throws Exception {
+        //given
+        stockMarket.record(new Trade("TEA", START, 2L, Site.Buy, new BigDecimal("2")));
+        stockMarket.recordAll(asList(new Trade("POP", START, 1L, Site.Buy, new BigDecimal("12.5")),
+                new Trade("POP", START, 1L, Site.Buy, new BigDecimal("12.5"))));
+        //when
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        Assert.assertEquals(5d, result.doubleValue(), 5d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldCalculateGBCEOfTradesRecordedForResolvedStockSymbols() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        StockSymbol pop = stockMarket.resolve("POP");
+        stockMarket.record(tea, new Trade("TEA", START, 2L, Site.Buy, new BigDecimal("2")));
+        stockMarket.recordAll(pop, asList(new Trade("POP", START, 1L, Site.Buy, new BigDecimal("12.5")),
+                new Trade("POP", START, 1L, Site.Buy, new BigDecimal("12.5"))));
+        //when
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        Assert.assertEquals(5d, result.doubleValue(), 5d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldRemoveExpiredTradesFromGBCE() throws Exception {
+        //given
+        stockMarket.record(new Trade("TEA", START, 2L, Site.Buy, new BigDecimal("2")));
+        stockMarket.record(new Trade("POP", START.plusSeconds(10), 1L, Site.Buy, new BigDecimal("8")));
+        Assert.assertEquals(4d, stockMarket.calculateGBCE().doubleValue(), 4d * GeometricMeanIndex.TOLERANCE);
+        //when
+        clock.advance(Duration.ofMillis(400));
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        Assert.assertEquals(8d, result.doubleValue(), 8d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldIncludeAddedStockSymbolsInGBCE() throws Exception {
+        //given
+        stockMarket.record(new Trade("TEA", START, 2L, Site.Buy, new BigDecimal("2")));
+        stockMarket.addStockSymbols(Collections.singletonMap("GIN", new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMillis(300), clock))));
+        //when
+        stockMarket.record(new Trade("GIN", START, 1L, Site.Buy, new BigDecimal("8")));
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        Assert.assertEquals(4d, result.doubleValue(), 4d * GeometricMeanIndex.TOLERANCE);
+    }
+
+    @Test
+    public void shouldIncludeStockSymbolsAddedByAnotherThreadInGBCE() throws Exception {
+        //given
+        stockMarket.record(new Trade("TEA", START, 2L, Site.Buy, new BigDecimal("2")));
+        StockOperations gin = new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMillis(300), clock));
+        gin.record(new Trade("GIN", START, 1L, Site.Buy, new BigDecimal("8")));
+        Thread reload = new Thread(() -> stockMarket.reload(Collections.singletonMap("TEA", operations -> operations.withStockData(
+                new CommonDividedFactorFunction(), new StockData(BigDecimal.TEN, null, null))), Collections.singletonMap("GIN", gin)));
+        reload.start();
+        reload.join();
+        //when
+        BigDecimal result = stockMarket.calculateGBCE();
+        //then
+        Assert.assertEquals(4d, result.doubleValue(), 4d * GeometricMeanIndex.TOLERANCE);
+        assertThat(stockMarket.calculateDividedYield("TEA", BigDecimal.ONE)).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice("TEA")).isEqualByComparingTo(new BigDecimal("2"));
+    }
+
+    @Test
+    public void shouldReturnZeroGBCEWithoutTrades() throws Exception {
+        assertThat(stockMarket.calculateGBCE()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldThrowExceptionIfStockSymbolNotFound() {
+        expectedEx.expect(NotRecognizedStockException.class);
+        expectedEx.expectMessage("IBM");
+
+        stockMarket.record(new Trade("IBM", LocalDateTime.now(), 2L, Site.Buy, new BigDecimal("2")));
+    }
+}
@@ -0,0 +1,48 @@
+package stock.market.impl;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void shouldReportPercentilesOfRecordedLatencies() throws Exception {
+        //given
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        //when
+        LatencySnapshot snapshot = histogram.snapshot();
+        //then
+        assertThat(snapshot.getCount()).isEqualTo(1000L);
+        assertThat(snapshot.getMedianNanos()).isEqualTo(503L);
+        assertThat(snapshot.getP99Nanos()).isEqualTo(991L);
+        assertThat(snapshot.getP999Nanos()).isEqualTo(1007L);
+        assertThat(snapshot.getMaxNanos()).isEqualTo(1007L);
+    }
+
+    @Test
+    public void shouldKeepRelativeErrorBelowOneBucket() throws Exception {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long reported = LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value));
+            assertThat(reported).isGreaterThanOrEqualTo(value);
+            assertThat((double) (reported - value) / value).isLessThan(1.0 / 32);
+        }
+        assertThat(LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldReportZerosIfNothingRecorded() throws Exception {
+        //given
+        histogram.record(100L);
+        //when
+        histogram.reset();
+        LatencySnapshot snapshot = histogram.snapshot();
+        //then
+        assertThat(snapshot.getCount()).isEqualTo(0L);
+        assertThat(snapshot.getMaxNanos()).isEqualTo(0L);
+    }
+}
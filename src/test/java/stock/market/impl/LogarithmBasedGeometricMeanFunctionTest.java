@@ -0,0 +1,87 @@
+package stock.market.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LogarithmBasedGeometricMeanFunctionTest {
+    private static final double DELTA = 0.01d;
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private LogarithmBasedGeometricMeanFunction calculator;
+
+    @Before
+    public void setUp() throws Exception {
+        calculator = new LogarithmBasedGeometricMeanFunction();
+    }
+
+    private void assertCalculationWithDelta(String expectedResult, String arguments) {
+        List<BigDecimal> bigDecimals = Arrays.stream(arguments.split(", ")).map(BigDecimal::new).collect(Collectors.toList());
+        BigDecimal result = calculator.apply(bigDecimals);
+        Assert.assertEquals(Double.valueOf(expectedResult), result.doubleValue(), DELTA);
+    }
+
+    @Test
+    public void shouldCalculateCorrectValue() throws Exception {
+        assertCalculationWithDelta("4", "2, 8");
+        assertCalculationWithDelta("3.71", "3.71, 3.71, 1369, 0.01");
+    }
+
+    @Test
+    public void shouldNotOverflowForManyValues() throws Exception {
+        //given
+        List<BigDecimal> values = Collections.nCopies(5000, new BigDecimal("12345.67"));
+        //when
+        BigDecimal result = calculator.apply(values);
+        //then
+        Assert.assertEquals(12345.67d, result.doubleValue(), DELTA);
+    }
+
+    @Test
+    public void shouldSupportValuesOutsideOfDoubleRange() throws Exception {
+        assertCalculationWithDelta("1", "1E+400, 1E-400");
+    }
+
+    @Test
+    public void shouldGiveSameResultInParallel() throws Exception {
+        //given
+        Random random = new Random(3);
+        List<BigDecimal> values = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            values.add(BigDecimal.valueOf(1 + random.nextInt(1_000_000), 2));
+        }
+        LogarithmBasedGeometricMeanFunction parallel = new LogarithmBasedGeometricMeanFunction(1000, new ForkJoinPool(4));
+        //when
+        BigDecimal result = parallel.apply(values);
+        //then
+        assertThat(result).isEqualByComparingTo(parallel.apply(values));
+        Assert.assertEquals(calculator.apply(values).doubleValue(), result.doubleValue(), DELTA);
+    }
+
+    @Test
+    public void shouldReturnZeroForNoValues() throws Exception {
+        assertThat(calculator.apply(Collections.emptyList())).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldValidateParallelThreshold() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("parallelThreshold have to be > 0");
+
+        new LogarithmBasedGeometricMeanFunction(0, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,163 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.StockMarket;
+import stock.market.Trade;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static java.time.LocalDateTime.now;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MeteredStockMarketTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private StockMarket delegate = mock(StockMarket.class);
+    private StockMarketMetrics metrics = new StockMarketMetrics();
+    private MeteredStockMarket stockMarket = new MeteredStockMarket(delegate, metrics, 1);
+
+    @Test
+    public void shouldMeasureLatencyOfVolumeWeightedStockPriceAndGBCE() throws Exception {
+        //given
+        when(delegate.calculateVolumeWeightedStockPrice("TEA")).thenReturn(BigDecimal.TEN);
+        when(delegate.calculateGBCE()).thenReturn(BigDecimal.ONE);
+        //when
+        BigDecimal vwap = stockMarket.calculateVolumeWeightedStockPrice("TEA");
+        stockMarket.calculateVolumeWeightedStockPrice("TEA");
+        BigDecimal gbce = stockMarket.calculateGBCE();
+        //then
+        assertThat(vwap).isEqualTo(BigDecimal.TEN);
+        assertThat(gbce).isEqualTo(BigDecimal.ONE);
+        assertThat(metrics.getVolumeWeightedStockPriceLatency().getCount()).isEqualTo(2L);
+        assertThat(metrics.getGBCELatency().getCount()).isEqualTo(1L);
+        assertThat(metrics.getRecordLatency().getCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldCountRecordedAndRejectedTrades() throws Exception {
+        //given
+        Trade trade = new Trade("TEA", now(), 1L, Site.Buy, BigDecimal.ONE);
+        Trade invalid = new Trade("TEA", now(), 0L, Site.Buy, BigDecimal.ONE);
+        doThrow(new IllegalArgumentException("Trade quantity have to be > 0")).when(delegate).record(invalid);
+        when(delegate.recordAll(anyCollection())).thenReturn(Collections.singletonList(new RejectedTrade(invalid, "invalid")));
+        stockMarket.record(trade);
+        stockMarket.recordAll(Arrays.asList(trade, trade, invalid));
+        expectedEx.expect(IllegalArgumentException.class);
+        try {
+            //when
+            stockMarket.record(invalid);
+        } finally {
+            //then
+            assertThat(metrics.getRecordedTrades()).isEqualTo(3L);
+            assertThat(metrics.getRejectedTrades()).isEqualTo(2L);
+            assertThat(metrics.getRecordLatency().getCount()).isEqualTo(2L);
+            assertThat(metrics.getRecordAllLatency().getCount()).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    public void shouldReportTradeWindowsOfMeteredTradeStorages() throws Exception {
+        //given
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), LocalDateTime.of(2016, 10, 3, 12, 0));
+        MeteredTradeStorage tea = new MeteredTradeStorage(new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock), metrics);
+        new MeteredTradeStorage(new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock), metrics);
+        tea.record(new Trade("TEA", clock.toLocalDateTime(clock.currentTimeNanos()), 1L, Site.Buy, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(61));
+        tea.recordAll(Arrays.asList(new Trade("TEA", clock.toLocalDateTime(clock.currentTimeNanos()), 1L, Site.Buy, BigDecimal.ONE)));
+        tea.getValidTradeTotals();
+        //when
+        Map<String, TradeWindow> windows = metrics.getTradeWindows();
+        //then
+        assertThat(windows).hasSize(1);
+        assertThat(windows.get("TEA").getRecordedTrades()).isEqualTo(2L);
+        assertThat(windows.get("TEA").getEvictedTrades()).isEqualTo(1L);
+        assertThat(windows.get("TEA").getHeldTrades()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldExposeMetricsOverJmx() throws Exception {
+        //given
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("stock.market:type=StockMarketMetrics,name=test");
+        server.registerMBean(metrics, name);
+        stockMarket.calculateGBCE();
+        try {
+            //when
+            CompositeData latency = (CompositeData) server.getAttribute(name, "GBCELatency");
+            //then
+            assertThat(latency.get("count")).isEqualTo(1L);
+            assertThat(server.getAttribute(name, "TradeWindows")).isNotNull();
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void shouldMeasureEveryNthCallButCountAllTrades() throws Exception {
+        //given
+        stockMarket = new MeteredStockMarket(delegate, metrics, 4);
+        Trade trade = new Trade("TEA", now(), 1L, Site.Buy, BigDecimal.ONE);
+        //when
+        for (int i = 0; i < 10; i++) {
+            stockMarket.record(trade);
+        }
+        //then
+        assertThat(metrics.getRecordLatency().getCount()).isEqualTo(2L);
+        assertThat(metrics.getRecordedTrades()).isEqualTo(10L);
+    }
+
+    @Test
+    public void shouldMeasureEveryNthCallOfEveryThread() throws Exception {
+        //given
+        stockMarket = new MeteredStockMarket(delegate, metrics, 4);
+        Trade trade = new Trade("TEA", now(), 1L, Site.Buy, BigDecimal.ONE);
+        Runnable producer = () -> {
+            for (int i = 0; i < 8; i++) {
+                stockMarket.record(trade);
+            }
+        };
+        Thread first = new Thread(producer);
+        Thread second = new Thread(producer);
+        //when
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        //then
+        assertThat(metrics.getRecordLatency().getCount()).isEqualTo(4L);
+        assertThat(metrics.getRecordedTrades()).isEqualTo(16L);
+    }
+
+    @Test
+    public void shouldValidateSamplingPeriod() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("samplingPeriod have to be power of two");
+        new MeteredStockMarket(delegate, metrics, 3);
+    }
+
+    @Test
+    public void shouldValidateMetrics() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("metrics cannot be null");
+        new MeteredStockMarket(delegate, null);
+    }
+}
@@ -0,0 +1,112 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PriceSketchTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private PriceSketch sketch = new PriceSketch(0.01, 128);
+
+    @Test
+    public void shouldReportQuantilesWithinRelativeAccuracy() throws Exception {
+        //given
+        Random random = new Random(1);
+        double[] prices = new double[10_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 100d + random.nextGaussian() * 5d;
+            sketch.add(prices[i], 1L);
+        }
+        Arrays.sort(prices);
+        //when
+        double median = sketch.quantile(0.5);
+        double percentile99 = sketch.quantile(0.99);
+        //then
+        assertThat(Math.abs(median / prices[4999] - 1d)).isLessThanOrEqualTo(0.01);
+        assertThat(Math.abs(percentile99 / prices[9899] - 1d)).isLessThanOrEqualTo(0.01);
+        assertThat(sketch.quantile(0d)).isEqualTo(prices[0]);
+        assertThat(sketch.quantile(1d)).isEqualTo(prices[prices.length - 1]);
+    }
+
+    @Test
+    public void shouldWeightPricesByQuantity() throws Exception {
+        //given
+        sketch.add(10d, 1L);
+        sketch.add(20d, 8L);
+        sketch.add(30d, 1L);
+        //when
+        double percentile10 = sketch.quantile(0.1);
+        double median = sketch.quantile(0.5);
+        //then
+        assertThat(Math.abs(percentile10 / 10d - 1d)).isLessThanOrEqualTo(0.01);
+        assertThat(Math.abs(median / 20d - 1d)).isLessThanOrEqualTo(0.01);
+        assertThat(sketch.getCount()).isEqualTo(10L);
+    }
+
+    @Test
+    public void shouldCollapseLowestBinsToKeepMemoryBounded() throws Exception {
+        //given
+        sketch = new PriceSketch(0.01, 16);
+        //when
+        for (int i = 1; i <= 1000; i++) {
+            sketch.add(i, 1L);
+        }
+        //then
+        assertThat(sketch.getBinCount()).isEqualTo(16);
+        assertThat(sketch.getCount()).isEqualTo(1000L);
+        assertThat(Math.abs(sketch.quantile(0.99) / 990d - 1d)).isLessThanOrEqualTo(0.01);
+        assertThat(sketch.quantile(0d)).isEqualTo(1d);
+    }
+
+    @Test
+    public void shouldMergeToSameQuantilesAsAddingAllPrices() throws Exception {
+        //given
+        PriceSketch low = new PriceSketch(0.01, 128);
+        PriceSketch high = new PriceSketch(0.01, 128);
+        for (int i = 0; i < 100; i++) {
+            low.add(50d + i * 0.1, 2L);
+            high.add(60d + i * 0.1, 1L);
+            sketch.add(50d + i * 0.1, 2L);
+            sketch.add(60d + i * 0.1, 1L);
+        }
+        PriceSketch merged = new PriceSketch(0.01, 128);
+        //when
+        merged.merge(high);
+        merged.merge(low);
+        //then
+        assertThat(merged.getCount()).isEqualTo(300L);
+        for (double quantile : new double[]{0d, 0.25, 0.5, 0.75, 0.99, 1d}) {
+            assertThat(merged.quantile(quantile)).isEqualTo(sketch.quantile(quantile));
+        }
+    }
+
+    @Test
+    public void shouldStartEmptyAfterClear() throws Exception {
+        //given
+        sketch.add(10d, 1L);
+        sketch.add(1000d, 1L);
+        //when
+        sketch.clear();
+        sketch.add(5d, 1L);
+        //then
+        assertThat(sketch.getCount()).isEqualTo(1L);
+        assertThat(sketch.getBinCount()).isEqualTo(1);
+        assertThat(sketch.quantile(1d)).isEqualTo(5d);
+    }
+
+    @Test
+    public void shouldNotMergeSketchesOfDifferentAccuracy() throws Exception {
+        //given
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("sketches have to have the same relative accuracy");
+        //when
+        sketch.merge(new PriceSketch(0.02, 128));
+    }
+}
@@ -0,0 +1,227 @@
+package stock.market.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.StockMarketListener;
+import stock.market.StockUpdate;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PublishingStockMarketTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private ReplayMarketClock clock;
+    private ConcurrentStockMarket delegate;
+    private PublishingStockMarket stockMarket;
+    private final RecordingListener listener = new RecordingListener();
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+        Map<String, StockOperations> operations = new LinkedHashMap<>();
+        for (String stockSymbol : new String[]{"TEA", "POP"}) {
+            operations.put(stockSymbol, new BasicStockOperations(new CommonDividedFactorFunction(),
+                    new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock)));
+        }
+        delegate = new ConcurrentStockMarket(operations, new LogarithmBasedGeometricMeanFunction(), clock);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (stockMarket != null) {
+            stockMarket.close();
+        }
+    }
+
+    @Test
+    public void shouldPushChangedVolumeWeightedStockPriceRatiosAndGBCE() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        stockMarket.subscribe(listener);
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(2)));
+        stockMarket.recordAll(Arrays.asList(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(4)), new Trade("POP", START, 1L, Site.Sell, BigDecimal.valueOf(8))));
+        //when
+        stockMarket.publish();
+        //then
+        assertThat(listener.updates).hasSize(2);
+        StockUpdate tea = listener.updates.stream().filter(u -> u.getStockSymbol().equals("TEA")).findFirst().get();
+        assertThat(tea.getVolumeWeightedStockPrice()).isEqualByComparingTo(BigDecimal.valueOf(3));
+        assertThat(tea.getDividedYield()).isEqualByComparingTo(delegate.calculateDividedYield("TEA", BigDecimal.valueOf(3)));
+        assertThat(tea.getPeRatio()).isEqualByComparingTo(delegate.calculatePERatio("TEA", BigDecimal.valueOf(3)));
+        assertThat(listener.updates.stream().anyMatch(u -> u.getStockSymbol().equals("POP"))).isTrue();
+        assertThat(listener.gbces).hasSize(1);
+        assertThat(listener.gbces.get(0)).isEqualByComparingTo(delegate.calculateGBCE());
+    }
+
+    @Test
+    public void shouldNotPushUnchangedValues() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        stockMarket.subscribe(listener);
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(2)));
+        stockMarket.publish();
+        //when
+        stockMarket.publish();
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(2)));
+        stockMarket.publish();
+        //then
+        assertThat(listener.updates).hasSize(1);
+        assertThat(listener.gbces).hasSize(1);
+    }
+
+    @Test
+    public void shouldPushVolumeWeightedStockPriceOfExpiredTrades() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        stockMarket.subscribe(listener);
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(2)));
+        stockMarket.publish();
+        //when
+        clock.advance(Duration.ofMinutes(2));
+        stockMarket.publish();
+        //then
+        assertThat(listener.updates).hasSize(2);
+        assertThat(listener.updates.get(1).getVolumeWeightedStockPrice()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(listener.updates.get(1).getDividedYield()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(listener.gbces).hasSize(2);
+        assertThat(listener.gbces.get(1)).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldConflateValuesOfSlowSubscriber() throws Exception {
+        //given
+        List<Runnable> deliveries = new ArrayList<>();
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), deliveries::add);
+        PublishingStockMarket.Subscription subscription = stockMarket.subscribe(listener);
+        for (int i = 1; i <= 3; i++) {
+            stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(i * 10)));
+            stockMarket.publish();
+        }
+        //when
+        deliveries.get(0).run();
+        //then
+        assertThat(deliveries).hasSize(1);
+        assertThat(listener.updates).hasSize(1);
+        assertThat(listener.updates.get(0).getVolumeWeightedStockPrice()).isEqualByComparingTo(BigDecimal.valueOf(20));
+        assertThat(listener.gbces).hasSize(1);
+        assertThat(subscription.getConflatedCount()).isEqualTo(4L);
+    }
+
+    @Test
+    public void shouldPushPublishedValuesToNewSubscriberAndStopAfterClose() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(2)));
+        stockMarket.publish();
+        //when
+        PublishingStockMarket.Subscription subscription = stockMarket.subscribe(listener);
+        subscription.close();
+        stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(4)));
+        stockMarket.publish();
+        //then
+        assertThat(listener.updates).hasSize(1);
+        assertThat(listener.updates.get(0).getVolumeWeightedStockPrice()).isEqualByComparingTo(BigDecimal.valueOf(2));
+        assertThat(listener.gbces).hasSize(1);
+    }
+
+    @Test
+    public void shouldNotPublishRejectedTrades() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        stockMarket.subscribe(listener);
+        //when
+        List<RejectedTrade> rejected = stockMarket.recordAll(Arrays.asList(new Trade("XXX", START, 1L, Site.Buy, BigDecimal.ONE),
+                new Trade("POP", START, 0L, Site.Buy, BigDecimal.ONE), null));
+        stockMarket.publish();
+        //then
+        assertThat(rejected).hasSize(3);
+        assertThat(listener.updates).isEmpty();
+        assertThat(listener.gbces).isEmpty();
+    }
+
+    @Test
+    public void shouldRecordWhileSubscriberIsBlocked() throws Exception {
+        //given
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch received = new CountDownLatch(1);
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofMillis(1));
+        stockMarket.subscribe(new StockMarketListener() {
+            @Override
+            public void onStockUpdate(StockUpdate update) {
+                await(blocked);
+                if (update.getVolumeWeightedStockPrice().compareTo(new BigDecimal("50.5")) == 0) {
+                    received.countDown();
+                }
+            }
+
+            @Override
+            public void onGBCE(BigDecimal gbce) {
+            }
+        });
+        //when
+        for (int i = 0; i < 1000; i++) {
+            stockMarket.record(new Trade("TEA", START, 1L, Site.Buy, BigDecimal.valueOf(1 + i % 100)));
+            if (i == 0) {
+                Thread.sleep(50);
+            }
+        }
+        blocked.countDown();
+        //then
+        assertThat(received.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldNotAcceptEmptyListener() throws Exception {
+        //given
+        stockMarket = new PublishingStockMarket(delegate, clock, Duration.ofHours(1), Runnable::run);
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("listener cannot be null");
+        //when
+        stockMarket.subscribe(null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingListener implements StockMarketListener {
+        private final List<StockUpdate> updates = new CopyOnWriteArrayList<>();
+        private final List<BigDecimal> gbces = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onStockUpdate(StockUpdate update) {
+            updates.add(update);
+        }
+
+        @Override
+        public void onGBCE(BigDecimal gbce) {
+            gbces.add(gbce);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReplayMarketClockTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 30, 0, 30);
+
+    private ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+
+    @Test
+    public void shouldAdvanceByDuration() throws Exception {
+        //when
+        clock.advance(Duration.ofMillis(1500));
+        //then
+        assertThat(clock.toLocalDateTime(clock.currentTimeNanos())).isEqualTo(START.plusNanos(1_500_000_000L));
+    }
+
+    @Test
+    public void shouldCountTimeAcrossDaylightSavingChange() throws Exception {
+        //given
+        long start = clock.currentTimeNanos();
+        //when
+        clock.advanceTo(LocalDateTime.of(2016, 10, 30, 2, 30));
+        //then
+        assertThat(clock.currentTimeNanos() - start).isEqualTo(Duration.ofHours(3).toNanos());
+    }
+
+    @Test
+    public void shouldConvertTimestampBothWays() throws Exception {
+        //given
+        LocalDateTime timestamp = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123_456_789);
+        //when
+        LocalDateTime result = clock.toLocalDateTime(clock.toEpochNanos(timestamp));
+        //then
+        assertThat(result).isEqualTo(timestamp);
+    }
+
+    @Test
+    public void shouldNotGoBack() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("time cannot go back");
+
+        clock.advanceTo(START.minusNanos(1));
+    }
+}
@@ -9,15 +9,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import stock.market.NotRecognizedStockException;
+import stock.market.RejectedTrade;
 import stock.market.Site;
+import stock.market.StockSymbol;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -87,6 +93,85 @@ public class SimpleStockMarketTest {
         assertThat(argumentCaptor.getValue()).isSameAs(trade);
     }
 
+    @Test
+    public void shouldDelegate_RecordAllGroupedByStockSymbol() throws Exception {
+        //given
+        Trade trade1 = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+        Trade trade2 = new Trade("TEA", LocalDateTime.now(), 2L, Site.Sell, BigDecimal.ONE);
+        Trade unknown = new Trade("IBM", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+
+        //when
+        List<RejectedTrade> rejected = stockMarket.recordAll(Arrays.asList(trade1, unknown, trade2, null));
+
+        //then
+        verify(teaOperations, times(1)).recordAll(Arrays.asList(trade1, trade2));
+        verifyNoMoreInteractions(teaOperations);
+        assertThat(rejected).hasSize(2);
+        assertThat(rejected.get(0).getTrade()).isNull();
+        assertThat(rejected.get(0).getReason()).isEqualTo("Trade is not set");
+        assertThat(rejected.get(1).getTrade()).isSameAs(unknown);
+        assertThat(rejected.get(1).getReason()).isEqualTo("Stock symbol is not recognized: IBM");
+    }
+
+    @Test
+    public void shouldDelegate_RecordOfResolvedStockSymbol() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+
+        //when
+        stockMarket.record(tea, trade);
+
+        //then
+        verify(teaOperations).record(trade);
+    }
+
+    @Test
+    public void shouldNotRecordTradeOfOtherStockSymbolAsResolvedStockSymbol() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade stock symbol have to be TEA");
+
+        //when
+        stockMarket.record(tea, new Trade("POP", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN));
+    }
+
+    @Test
+    public void shouldDelegate_RecordAllOfResolvedStockSymbolAsTheyAre() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        List<Trade> trades = Arrays.asList(new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN),
+                new Trade("TEA", LocalDateTime.now(), 2L, Site.Sell, BigDecimal.ONE));
+        when(teaOperations.recordAll(trades)).thenReturn(Collections.emptyList());
+
+        //when
+        List<RejectedTrade> rejected = stockMarket.recordAll(tea, trades);
+
+        //then
+        verify(teaOperations).recordAll(same(trades));
+        assertThat(rejected).isEmpty();
+    }
+
+    @Test
+    public void shouldRejectTradesOfOtherStockSymbolsInRecordAllOfResolvedStockSymbol() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+        Trade other = new Trade("POP", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.TEN);
+        when(teaOperations.recordAll(Collections.singletonList(trade))).thenReturn(Collections.emptyList());
+
+        //when
+        List<RejectedTrade> rejected = stockMarket.recordAll(tea, Arrays.asList(other, trade, null));
+
+        //then
+        verify(teaOperations).recordAll(Collections.singletonList(trade));
+        assertThat(rejected).hasSize(2);
+        assertThat(rejected.get(0).getTrade()).isSameAs(other);
+        assertThat(rejected.get(0).getReason()).isEqualTo("Trade stock symbol have to be TEA");
+        assertThat(rejected.get(1).getReason()).isEqualTo("Trade is not set");
+    }
+
     @Test
     public void shouldDelegate_CalculateVolumeWeightedStockPrice() throws Exception {
         //given
@@ -120,6 +205,109 @@ public class SimpleStockMarketTest {
         verifyNoMoreInteractions(teaOperations);
     }
 
+    @Test
+    public void shouldAddStockSymbols() throws Exception {
+        //given
+        StockOperations popOperations = mock(StockOperations.class);
+        when(popOperations.calculateVolumeWeightedStockPrice()).thenReturn(BigDecimal.TEN);
+        //when
+        stockMarket.addStockSymbols(Collections.singletonMap("POP", popOperations));
+        //then
+        assertThat(stockMarket.getStockSymbols()).containsOnly("TEA", "POP");
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice("POP")).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    public void shouldNotAddKnownStockSymbol() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Stock symbol is already known: TEA");
+
+        stockMarket.addStockSymbols(Collections.singletonMap("TEA", mock(StockOperations.class)));
+    }
+
+    @Test
+    public void shouldReplaceOperationsWhenStockDataIsUpdated() throws Exception {
+        //given
+        StockData stockData = new StockData(BigDecimal.ONE, null, null);
+        Function<StockData, BigDecimal> dividedYieldProvider = new CommonDividedFactorFunction();
+        StockOperations updatedOperations = mock(StockOperations.class);
+        when(teaOperations.withStockData(dividedYieldProvider, stockData)).thenReturn(updatedOperations);
+        when(updatedOperations.calculateDividedYield(BigDecimal.TEN)).thenReturn(BigDecimal.ONE);
+        //when
+        stockMarket.updateStockData("TEA", dividedYieldProvider, stockData);
+        //then
+        assertThat(stockMarket.calculateDividedYield("TEA", BigDecimal.TEN)).isEqualTo(BigDecimal.ONE);
+        verify(teaOperations, times(1)).withStockData(dividedYieldProvider, stockData);
+        verifyNoMoreInteractions(teaOperations);
+    }
+
+    @Test
+    public void shouldReloadNothingIfAnyOperationsCannotBeBuilt() throws Exception {
+        //given
+        stockMarket.addStockSymbols(Collections.singletonMap("POP", mock(StockOperations.class)));
+        Map<String, UnaryOperator<StockOperations>> updated = new LinkedHashMap<>();
+        updated.put("TEA", operations -> mock(StockOperations.class));
+        updated.put("POP", operations -> {
+            throw new IllegalArgumentException("invalid stock data");
+        });
+        IllegalArgumentException thrown = null;
+        //when
+        try {
+            stockMarket.reload(updated, Collections.singletonMap("GIN", mock(StockOperations.class)));
+        } catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        //then
+        assertThat(thrown.getMessage()).isEqualTo("invalid stock data");
+        assertThat(stockMarket.getStockSymbols()).containsOnly("TEA", "POP");
+        stockMarket.calculateVolumeWeightedStockPrice("TEA");
+        verify(teaOperations, times(1)).calculateVolumeWeightedStockPrice();
+    }
+
+    @Test
+    public void shouldDelegate_CalculateDividedYieldOfResolvedStockSymbol() throws Exception {
+        //given
+        BigDecimal price = new BigDecimal("7");
+        BigDecimal expectedResult = new BigDecimal("3.31");
+        when(teaOperations.calculateDividedYield(price)).thenReturn(expectedResult);
+        StockSymbol tea = stockMarket.resolve("TEA");
+        //when
+        BigDecimal result = stockMarket.calculateDividedYield(tea, price);
+        //then
+        assertThat(result).isEqualTo(expectedResult);
+        assertThat(tea.getId()).isEqualTo(0);
+        verify(teaOperations, times(1)).calculateDividedYield(price);
+        verifyNoMoreInteractions(teaOperations);
+    }
+
+    @Test
+    public void shouldKeepResolvedStockSymbolWhenStockSymbolsAreAdded() throws Exception {
+        //given
+        StockSymbol tea = stockMarket.resolve("TEA");
+        when(teaOperations.calculateVolumeWeightedStockPrice()).thenReturn(BigDecimal.TEN);
+        //when
+        stockMarket.addStockSymbols(Collections.singletonMap("POP", mock(StockOperations.class)));
+        //then
+        assertThat(stockMarket.calculateVolumeWeightedStockPrice(tea)).isEqualTo(BigDecimal.TEN);
+        assertThat(stockMarket.resolve("POP").getId()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldThrowExceptionIfResolvedStockSymbolNotFound() {
+        expectedEx.expect(NotRecognizedStockException.class);
+        expectedEx.expectMessage("IBM");
+
+        stockMarket.calculateVolumeWeightedStockPrice(new StockSymbol(0, "IBM"));
+    }
+
+    @Test
+    public void shouldThrowExceptionIfStockSymbolCannotBeResolved() {
+        expectedEx.expect(NotRecognizedStockException.class);
+        expectedEx.expectMessage("IBM");
+
+        stockMarket.resolve("IBM");
+    }
+
     @Test
     public void shouldThrowExceptionIfStockSymbolNotFound() {
         expectedEx.expect(NotRecognizedStockException.class);
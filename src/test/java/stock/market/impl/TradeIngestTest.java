@@ -0,0 +1,167 @@
+package stock.market.impl;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.StockMarket;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TradeIngestTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private TradeIngest ingest;
+
+    @After
+    public void tearDown() throws Exception {
+        if (ingest != null) {
+            ingest.close();
+        }
+    }
+
+    @Test
+    public void shouldRecordTradesOfManyProducersBeforeFlushReturns() throws Exception {
+        //given
+        Map<String, StockOperations> operations = new LinkedHashMap<>();
+        for (String stockSymbol : new String[]{"TEA", "POP", "ALE", "GIN", "JOE"}) {
+            operations.put(stockSymbol, new BasicStockOperations(new CommonDividedFactorFunction(),
+                    new StockData(BigDecimal.ONE, null, BigDecimal.TEN), new TradeStorageWithRunningTotals(Duration.ofMinutes(5))));
+        }
+        SimpleStockMarket stockMarket = new SimpleStockMarket(operations, new LogarithmBasedGeometricMeanFunction());
+        ingest = new TradeIngest(stockMarket, 2, 64, TradeIngest.Backpressure.BLOCK);
+        List<Thread> producers = new ArrayList<>();
+        for (String stockSymbol : operations.keySet()) {
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ingest.publish(new Trade(stockSymbol, LocalDateTime.now(), 1L, Site.Buy, BigDecimal.valueOf(1 + i % 3)));
+                }
+            }));
+        }
+        //when
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        ingest.flush();
+        //then
+        for (String stockSymbol : operations.keySet()) {
+            assertThat(stockMarket.calculateVolumeWeightedStockPrice(stockSymbol)).isEqualByComparingTo(new BigDecimal("1.9999"));
+        }
+    }
+
+    @Test
+    public void shouldPassRejectedTradesToHandler() throws Exception {
+        //given
+        StockMarket stockMarket = mock(StockMarket.class);
+        Trade invalid = new Trade("TEA", LocalDateTime.now(), 0L, Site.Buy, BigDecimal.ONE);
+        when(stockMarket.recordAll(anyCollection())).thenReturn(Collections.singletonList(new RejectedTrade(invalid, "invalid")));
+        List<RejectedTrade> rejected = new CopyOnWriteArrayList<>();
+        ingest = new TradeIngest(stockMarket, 1, 8, TradeIngest.Backpressure.BLOCK, 16, rejected::addAll);
+        //when
+        ingest.publish(invalid);
+        ingest.flush("TEA");
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(invalid);
+    }
+
+    @Test
+    public void shouldDropTradesIfRingIsFull() throws Exception {
+        //given
+        BlockedStockMarket stockMarket = new BlockedStockMarket();
+        ingest = new TradeIngest(stockMarket, 1, 4, TradeIngest.Backpressure.DROP, 1, r -> { });
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.ONE);
+        ingest.publish(trade);
+        stockMarket.recording.await();
+        //when
+        int published = 0;
+        for (int i = 0; i < 10; i++) {
+            published += ingest.publish(trade) ? 1 : 0;
+        }
+        stockMarket.unblock.countDown();
+        //then
+        assertThat(published).isEqualTo(3);
+        assertThat(ingest.getDroppedTrades()).isEqualTo(7L);
+    }
+
+    @Test
+    public void shouldFailIfRingIsFull() throws Exception {
+        //given
+        BlockedStockMarket stockMarket = new BlockedStockMarket();
+        ingest = new TradeIngest(stockMarket, 1, 2, TradeIngest.Backpressure.FAIL, 1, r -> { });
+        Trade trade = new Trade("TEA", LocalDateTime.now(), 1L, Site.Buy, BigDecimal.ONE);
+        ingest.publish(trade);
+        stockMarket.recording.await();
+        ingest.publish(trade);
+        expectedEx.expect(IllegalStateException.class);
+        expectedEx.expectMessage("trade ingest ring is full");
+        try {
+            //when
+            ingest.publish(trade);
+        } finally {
+            stockMarket.unblock.countDown();
+        }
+    }
+
+    @Test
+    public void shouldKeepInterruptStatusWhenClosedByInterruptedThread() throws Exception {
+        //given
+        StockMarket stockMarket = mock(StockMarket.class);
+        TradeIngest closed = new TradeIngest(stockMarket, 2, 8, TradeIngest.Backpressure.BLOCK, 16, r -> { });
+        Thread.currentThread().interrupt();
+        //when
+        closed.close();
+        //then
+        assertThat(Thread.interrupted()).isTrue();
+    }
+
+    @Test
+    public void shouldValidateRingSize() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("ringSize have to be power of two");
+        new TradeIngest(mock(StockMarket.class), 1, 3, TradeIngest.Backpressure.BLOCK);
+    }
+
+    /**
+     * Blocks recording of the first batch until unblocked
+     */
+    private static class BlockedStockMarket extends SimpleStockMarket {
+        private final CountDownLatch recording = new CountDownLatch(1);
+        private final CountDownLatch unblock = new CountDownLatch(1);
+
+        private BlockedStockMarket() {
+            super(Collections.emptyMap(), new LogarithmBasedGeometricMeanFunction());
+        }
+
+        @Override
+        public List<RejectedTrade> recordAll(Collection<Trade> trades) {
+            recording.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }
+    }
+}
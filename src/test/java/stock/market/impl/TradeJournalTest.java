@@ -0,0 +1,153 @@
+package stock.market.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeJournalTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private ReplayMarketClock clock;
+    private Path file;
+    private TradeJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+        file = folder.getRoot().toPath().resolve("trades.journal");
+        journal = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    private TradeJournal open() throws Exception {
+        return new TradeJournal(file, Duration.ofMinutes(5), clock, Duration.ofSeconds(1), TradeJournal.RECORD_SIZE * 2);
+    }
+
+    private SimpleStockMarket newStockMarket(TradeJournal journal) {
+        return new SimpleStockMarket(Collections.singletonMap("TEA", new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new JournalingTradeStorage(new TradeStorageWithRunningTotals(Duration.ofMinutes(5), clock), journal))), null);
+    }
+
+    @Test
+    public void shouldReplayTradesInsideRetentionTimeAfterReopening() throws Exception {
+        //given
+        SimpleStockMarket stockMarket = newStockMarket(journal);
+        stockMarket.record(new Trade("TEA", START, 10L, Site.Buy, new BigDecimal("1000")));
+        clock.advance(Duration.ofMinutes(4));
+        stockMarket.recordAll(asList(new Trade("TEA", START.plusMinutes(4), 1L, Site.Sell, new BigDecimal("10.5")),
+                new Trade("TEA", START.plusMinutes(4), 3L, Site.Buy, new BigDecimal("1.5E+1"))));
+        journal.close();
+        clock.advance(Duration.ofMinutes(2));
+        journal = open();
+        SimpleStockMarket restarted = newStockMarket(journal);
+        //when
+        int replayed = journal.replay(restarted);
+        //then
+        assertThat(replayed).isEqualTo(2);
+        assertThat(restarted.calculateVolumeWeightedStockPrice("TEA")).isEqualByComparingTo(new BigDecimal("13.875"));
+    }
+
+    @Test
+    public void shouldNotAppendReplayedTradesAgain() throws Exception {
+        //given
+        newStockMarket(journal).record(new Trade("TEA", START, 2L, Site.Buy, BigDecimal.TEN));
+        journal.replay(newStockMarket(journal));
+        //when
+        int replayed = journal.replay(newStockMarket(journal));
+        //then
+        assertThat(replayed).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStreamAllJournaledTrades() throws Exception {
+        //given
+        SimpleStockMarket stockMarket = newStockMarket(journal);
+        for (int i = 0; i < 5; i++) {
+            stockMarket.record(new Trade("TEA", START.plusSeconds(i), i + 1L, Site.Buy, BigDecimal.TEN));
+        }
+        //when
+        List<Long> quantities = journal.trades().map(Trade::getQuantity).collect(Collectors.toList());
+        //then
+        assertThat(quantities).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void shouldJournalTradeWithoutSite() throws Exception {
+        //given
+        SimpleStockMarket stockMarket = newStockMarket(journal);
+        //when
+        stockMarket.record(new Trade("TEA", START, 1L, null, BigDecimal.TEN));
+        stockMarket.record(new Trade("TEA", START, 2L, Site.Sell, BigDecimal.ONE));
+        //then
+        List<Site> sites = journal.trades().map(Trade::getSite).collect(Collectors.toList());
+        assertThat(sites).containsExactly(null, Site.Sell);
+    }
+
+    @Test
+    public void shouldNotRecordTradeNotFittingJournalFormat() throws Exception {
+        //given
+        TradeStorageWithRunningTotals delegate = new TradeStorageWithRunningTotals(Duration.ofMinutes(5), clock);
+        JournalingTradeStorage storage = new JournalingTradeStorage(delegate, journal);
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade price have to fit in long with scale of one byte");
+        try {
+            //when
+            storage.record(new Trade("TEA", START, 1L, Site.Buy, new BigDecimal("1E+200")));
+        } finally {
+            //then
+            assertThat(delegate.getValidTrades()).isEmpty();
+            assertThat(journal.trades().count()).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    public void shouldRejectTradesNotFittingJournalFormat() throws Exception {
+        //given
+        TradeStorageWithRunningTotals delegate = new TradeStorageWithRunningTotals(Duration.ofMinutes(5), clock);
+        JournalingTradeStorage storage = new JournalingTradeStorage(delegate, journal);
+        Trade valid = new Trade("TEA", START, 1L, Site.Buy, BigDecimal.ONE);
+        Trade tooLongSymbol = new Trade("TEA-LONG-SYMBOL", START, 1L, Site.Buy, BigDecimal.ONE);
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(asList(valid, tooLongSymbol));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(tooLongSymbol);
+        assertThat(rejected.get(0).getReason()).isEqualTo("Trade stock symbol have to have at most 12 ASCII characters");
+        assertThat(delegate.getValidTrades()).containsExactly(valid);
+    }
+
+    @Test
+    public void shouldValidateRegionSize() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("regionSize have to be > 0 and multiple of 48");
+
+        new TradeJournal(file, Duration.ofMinutes(5), clock, Duration.ofSeconds(1), 100);
+    }
+}
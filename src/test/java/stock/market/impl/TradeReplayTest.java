@@ -0,0 +1,69 @@
+package stock.market.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeReplayTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private final List<ReplaySample> samples = new ArrayList<>();
+    private TradeReplay replay;
+
+    @Before
+    public void setUp() throws Exception {
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+        SimpleStockMarket stockMarket = new SimpleStockMarket(Collections.singletonMap("TEA", new BasicStockOperations(new CommonDividedFactorFunction(),
+                new StockData(BigDecimal.ONE, null, null), new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock))),
+                new LogarithmBasedGeometricMeanFunction());
+        replay = new TradeReplay(stockMarket, clock, Duration.ofSeconds(30), Collections.singletonList("TEA"), samples::add);
+    }
+
+    @Test
+    public void shouldSampleWindowsOfSimulatedTime() throws Exception {
+        //given
+        List<Trade> trades = asList(
+                new Trade("TEA", START, 1L, Site.Buy, new BigDecimal("10")),
+                new Trade("TEA", START.plusSeconds(45), 1L, Site.Buy, new BigDecimal("20")),
+                new Trade("TEA", START.plusMinutes(2), 1L, Site.Buy, new BigDecimal("30")));
+        //when
+        long recorded = replay.replay(trades.iterator());
+        //then
+        assertThat(recorded).isEqualTo(3L);
+        assertThat(samples).hasSize(4);
+        assertThat(samples.get(0).getTime()).isEqualTo(START.plusSeconds(30));
+        assertThat(samples.get(0).getVolumeWeightedStockPrices().get("TEA")).isEqualByComparingTo(new BigDecimal("10"));
+        assertThat(samples.get(1).getVolumeWeightedStockPrices().get("TEA")).isEqualByComparingTo(new BigDecimal("15"));
+        assertThat(samples.get(2).getVolumeWeightedStockPrices().get("TEA")).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(samples.get(2).getGbce()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(samples.get(3).getTime()).isEqualTo(START.plusMinutes(2));
+        assertThat(samples.get(3).getVolumeWeightedStockPrices().get("TEA")).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldSkipInvalidTrades() throws Exception {
+        //given
+        List<Trade> trades = asList(
+                new Trade("TEA", START, 1L, Site.Buy, new BigDecimal("10")),
+                new Trade("TEA", START, 0L, Site.Buy, new BigDecimal("10")),
+                new Trade("IBM", START, 1L, Site.Buy, new BigDecimal("10")));
+        //when
+        long recorded = replay.replay(trades.iterator());
+        //then
+        assertThat(recorded).isEqualTo(1L);
+        assertThat(samples).isEmpty();
+    }
+}
@@ -0,0 +1,208 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.time.LocalDateTime.now;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeStorageWithOffHeapSlabsTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private TradeStorageWithOffHeapSlabs storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1));
+
+    @Test
+    public void shouldReturnValidTradesOrderedByTimestamp() throws Exception {
+        //given
+        LocalDateTime now = now();
+        storage.record(new Trade("IBM", now, 2L, Site.Sell, new BigDecimal("1.5")));
+        storage.record(new Trade("IBM", now.minus(3, MINUTES), 1L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now.minus(1, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        List<Trade> trades = storage.getValidTrades();
+        //then
+        assertThat(trades).hasSize(2);
+        assertThat(trades.get(0).getTimestamp()).isEqualTo(now.minus(1, SECONDS));
+        assertThat(trades.get(0).getPrice()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(trades.get(0).getSite()).isEqualTo(Site.Buy);
+        assertThat(trades.get(1).getTimestamp()).isEqualTo(now);
+        assertThat(trades.get(1).getQuantity()).isEqualTo(2L);
+        assertThat(trades.get(1).getStockSymbol()).isEqualTo("IBM");
+    }
+
+    @Test
+    public void shouldCalculateSameTotalsAsBigDecimalArithmetic() throws Exception {
+        //given
+        LocalDateTime now = LocalDateTime.of(2016, 10, 3, 12, 0);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), new ReplayMarketClock(ZoneId.of("Europe/London"), now), 64);
+        Random random = new Random(7);
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Trade trade = new Trade("IBM", now.minus(random.nextInt(50), SECONDS), 1L + random.nextInt(1_000_000),
+                    Site.Buy, BigDecimal.valueOf(1 + random.nextInt(100_000_000), 4));
+            trades.add(trade);
+            storage.record(trade);
+        }
+        storage.record(new Trade("IBM", now.minus(2, MINUTES), 3L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        TradeTotals lastTenSeconds = storage.getValidTradeTotals(Duration.ofSeconds(10));
+        //then
+        TradeTotals expected = TradeTotals.of(trades, Duration.ofMinutes(1));
+        assertThat(totals.getTurnover()).isEqualByComparingTo(expected.getTurnover());
+        assertThat(totals.getQuantity()).isEqualTo(expected.getQuantity());
+        TradeTotals expectedLastTenSeconds = TradeTotals.of(trades, now.minus(10, SECONDS), Duration.ofSeconds(10));
+        assertThat(lastTenSeconds.getTurnover()).isEqualByComparingTo(expectedLastTenSeconds.getTurnover());
+        assertThat(lastTenSeconds.getQuantity()).isEqualTo(expectedLastTenSeconds.getQuantity());
+        assertThat(lastTenSeconds.getExpiry()).isEqualTo(expectedLastTenSeconds.getExpiry());
+    }
+
+    @Test
+    public void shouldReclaimSlabsWithOutdatedTradesOnly() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), clock, 2);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", start.plusSeconds(1), 1L, Site.Buy, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", start.plusSeconds(2), 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(40), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        clock.advance(Duration.ofSeconds(63));
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(2L);
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+        assertThat(totals.getExpiry()).isEqualTo(start.plusSeconds(100));
+    }
+
+    @Test
+    public void shouldRejectTradesWithTooPrecisePriceInBatch() throws Exception {
+        //given
+        Trade invalid = new Trade("IBM", now(), 1L, Site.Sell, new BigDecimal("0.000000001"));
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(new Trade("IBM", now(), 2L, Site.Buy, BigDecimal.TEN), invalid));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(invalid);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldRejectTradeOverflowingTotalQuantityInBatch() throws Exception {
+        //given
+        Trade overflowing = new Trade("IBM", now(), Long.MAX_VALUE, Site.Sell, BigDecimal.ONE);
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(new Trade("IBM", now(), 2L, Site.Buy, BigDecimal.TEN), overflowing,
+                new Trade("IBM", now(), 3L, Site.Buy, BigDecimal.TEN)));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(overflowing);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(5L);
+        assertThat(storage.getValidTradeTotals().getTurnover()).isEqualByComparingTo(new BigDecimal("50"));
+        assertThat(storage.getValidTrades()).hasSize(2);
+    }
+
+    @Test
+    public void shouldValidateTrade() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade price is not set");
+
+        storage.record(new Trade("IBM", now(), 1L, Site.Sell, null));
+    }
+
+    @Test
+    public void shouldStreamValidTradesOfRangeWithoutRemovingOutdatedTrades() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), clock, 2);
+        for (int seconds = 0; seconds <= 40; seconds += 10) {
+            storage.record(new Trade("IBM", start.plusSeconds(seconds), 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofSeconds(70));
+        //when
+        List<LocalDateTime> timestamps = storage.getValidTrades(start, start.plusSeconds(40))
+                .map(Trade::getTimestamp)
+                .collect(Collectors.toList());
+        //then
+        assertThat(timestamps).containsExactly(start.plusSeconds(10), start.plusSeconds(20), start.plusSeconds(30));
+        assertThat(storage.getValidTrades(start.plusSeconds(40), start.plusSeconds(40)).count()).isEqualTo(0L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldKeepValidTradeTotalsOfSites() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), clock, 2);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(10), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(20), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(buy.getQuantity()).isEqualTo(2L);
+        assertThat(buy.getExpiry()).isEqualTo(start.plusSeconds(70));
+        assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(sell.getQuantity()).isEqualTo(3L);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(9L);
+    }
+
+    @Test
+    public void shouldStartWithSmallSlabAndDoubleNextSlabsUpToMaximum() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), new ReplayMarketClock(ZoneId.of("Europe/London"), start), 100);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, BigDecimal.TEN));
+        long firstSlabBytes = storage.getReservedBytes();
+        //when
+        for (int i = 0; i < 200; i++) {
+            storage.record(new Trade("IBM", start, 1L, Site.Buy, BigDecimal.TEN));
+        }
+        //then
+        assertThat(firstSlabBytes).isEqualTo(64L * TradeStorageWithOffHeapSlabs.RECORD_SIZE);
+        assertThat(storage.getReservedBytes()).isEqualTo((64L + 100L + 100L) * TradeStorageWithOffHeapSlabs.RECORD_SIZE);
+    }
+
+    @Test
+    public void shouldFreeReclaimedSlabsBeyondFreePool() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithOffHeapSlabs(Duration.ofMinutes(1), clock, 2);
+        for (int i = 0; i < 12; i++) {
+            storage.record(new Trade("IBM", start, 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofSeconds(61));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.isEmpty()).isTrue();
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(12L);
+        assertThat(storage.getReservedBytes()).isEqualTo(4L * 2L * TradeStorageWithOffHeapSlabs.RECORD_SIZE);
+    }
+}
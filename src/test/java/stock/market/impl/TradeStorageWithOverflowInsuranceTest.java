@@ -4,11 +4,15 @@ import org.fest.assertions.Assertions;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
 import stock.market.Site;
 import stock.market.Trade;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.time.LocalDateTime.now;
@@ -37,6 +41,21 @@ public class TradeStorageWithOverflowInsuranceTest {
         Assertions.assertThat(trades).containsExactly(trade1, trade2);
     }
 
+    @Test
+    public void shouldRecordAllValidTradesAndRejectInvalid() throws Exception {
+        //given
+        Trade trade1 = new Trade("IBM", now(), 1L, Site.Sell, BigDecimal.ONE);
+        Trade invalid = new Trade("IBM", now(), 0L, Site.Sell, BigDecimal.ONE);
+        Trade trade2 = new Trade("IBM", now(), 2L, Site.Buy, BigDecimal.TEN);
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(trade1, invalid, trade2));
+        //then
+        Assertions.assertThat(storage.getValidTrades()).containsExactly(trade1, trade2);
+        Assertions.assertThat(rejected).hasSize(1);
+        Assertions.assertThat(rejected.get(0).getTrade()).isSameAs(invalid);
+        Assertions.assertThat(rejected.get(0).getReason()).isEqualTo("Trade quantity have to be > 0");
+    }
+
     @Test
     public void shouldValidateTradePriceNotNull() throws Exception {
         expectedEx.expect(IllegalArgumentException.class);
@@ -76,4 +95,27 @@ public class TradeStorageWithOverflowInsuranceTest {
 
         storage.record(new Trade("IBM", null, 2L, Site.Sell, BigDecimal.TEN));
     }
+
+    @Test
+    public void shouldKeepValidTradeTotalsOfSites() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithOverflowInsurance(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(10), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(20), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        Assertions.assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("20"));
+        Assertions.assertThat(buy.getQuantity()).isEqualTo(2L);
+        Assertions.assertThat(buy.getExpiry()).isEqualTo(start.plusSeconds(70));
+        Assertions.assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        Assertions.assertThat(sell.getQuantity()).isEqualTo(3L);
+        Assertions.assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(9L);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.time.LocalDateTime.now;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeStorageWithPrimitiveColumnsTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private TradeStorageWithPrimitiveColumns storage = new TradeStorageWithPrimitiveColumns(Duration.ofMinutes(1));
+
+    @Test
+    public void shouldReturnValidTradesOrderedByTimestamp() throws Exception {
+        //given
+        LocalDateTime now = now();
+        storage.record(new Trade("IBM", now, 2L, Site.Sell, new BigDecimal("1.5")));
+        storage.record(new Trade("IBM", now.minus(3, MINUTES), 1L, Site.Sell, BigDecimal.ONE));
+        storage.setOperationSinceLastRemovingOldTrades(100000);
+        storage.record(new Trade("IBM", now.minus(1, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        List<Trade> trades = storage.getValidTrades();
+        //then
+        assertThat(trades).hasSize(2);
+        assertThat(trades.get(0).getTimestamp()).isEqualTo(now.minus(1, SECONDS));
+        assertThat(trades.get(0).getPrice()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(trades.get(0).getSite()).isEqualTo(Site.Buy);
+        assertThat(trades.get(1).getTimestamp()).isEqualTo(now);
+        assertThat(trades.get(1).getQuantity()).isEqualTo(2L);
+        assertThat(trades.get(1).getStockSymbol()).isEqualTo("IBM");
+    }
+
+    @Test
+    public void shouldKeepTotalsOfTradesWithinHorizon() throws Exception {
+        //given
+        LocalDateTime now = now();
+        storage.record(new Trade("IBM", now, 2L, Site.Sell, new BigDecimal("1.5")));
+        storage.record(new Trade("IBM", now.minus(40, SECONDS), 1L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now.minus(5, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals(Duration.ofSeconds(30));
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(new BigDecimal("13"));
+        assertThat(totals.getQuantity()).isEqualTo(3L);
+        assertThat(totals.getExpiry()).isEqualTo(now.minus(5, SECONDS).plus(30, SECONDS));
+    }
+
+    @Test
+    public void shouldCalculateSameTotalsAsBigDecimalArithmetic() throws Exception {
+        //given
+        Random random = new Random(7);
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Trade trade = new Trade("IBM", now().minus(random.nextInt(50), SECONDS), 1L + random.nextInt(1_000_000),
+                    Site.Buy, BigDecimal.valueOf(1 + random.nextInt(100_000_000), 4));
+            trades.add(trade);
+            storage.record(trade);
+        }
+        storage.record(new Trade("IBM", now().minus(2, MINUTES), 3L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        TradeTotals expected = TradeTotals.of(trades, Duration.ofMinutes(1));
+        assertThat(totals.getTurnover()).isEqualByComparingTo(expected.getTurnover());
+        assertThat(totals.getQuantity()).isEqualTo(expected.getQuantity());
+    }
+
+    @Test
+    public void shouldNotOverflowLongTurnover() throws Exception {
+        //given
+        BigDecimal price = new BigDecimal("90000000000");
+        storage.record(new Trade("IBM", now(), Long.MAX_VALUE / 4, Site.Buy, price));
+        storage.record(new Trade("IBM", now(), Long.MAX_VALUE / 4, Site.Buy, price));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(price.multiply(BigDecimal.valueOf(Long.MAX_VALUE / 4 * 2)));
+    }
+
+    @Test
+    public void shouldRejectTradesWithTooPrecisePriceInBatch() throws Exception {
+        //given
+        Trade invalid = new Trade("IBM", now(), 1L, Site.Sell, new BigDecimal("0.000000001"));
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(new Trade("IBM", now(), 2L, Site.Buy, BigDecimal.TEN), invalid));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(invalid);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldRejectTradeOverflowingTotalQuantityInBatch() throws Exception {
+        //given
+        Trade overflowing = new Trade("IBM", now(), Long.MAX_VALUE, Site.Sell, BigDecimal.ONE);
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(new Trade("IBM", now(), 2L, Site.Buy, BigDecimal.TEN), overflowing,
+                new Trade("IBM", now(), 3L, Site.Buy, BigDecimal.TEN)));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getTrade()).isSameAs(overflowing);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(5L);
+        assertThat(storage.getValidTradeTotals().getTurnover()).isEqualByComparingTo(new BigDecimal("50"));
+        assertThat(storage.getValidTrades()).hasSize(2);
+    }
+
+    @Test
+    public void shouldValidateTradePricePrecision() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade price have to fit in long with 8 decimal places");
+
+        storage.record(new Trade("IBM", now(), 1L, Site.Sell, new BigDecimal("0.000000001")));
+    }
+
+    @Test
+    public void shouldValidateTrade() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade price is not set");
+
+        storage.record(new Trade("IBM", now(), 1L, Site.Sell, null));
+    }
+
+    @Test
+    public void shouldStreamValidTradesOfRangeWithoutRemovingOutdatedTrades() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithPrimitiveColumns(Duration.ofMinutes(1), clock);
+        for (int seconds = 0; seconds <= 40; seconds += 10) {
+            storage.record(new Trade("IBM", start.plusSeconds(seconds), 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofSeconds(70));
+        //when
+        List<LocalDateTime> timestamps = storage.getValidTrades(start, start.plusSeconds(40))
+                .map(Trade::getTimestamp)
+                .collect(Collectors.toList());
+        //then
+        assertThat(timestamps).containsExactly(start.plusSeconds(10), start.plusSeconds(20), start.plusSeconds(30));
+        assertThat(storage.getValidTrades(start.plusSeconds(40), start.plusSeconds(40)).count()).isEqualTo(0L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldKeepValidTradeTotalsOfSites() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithPrimitiveColumns(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(10), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(20), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(buy.getQuantity()).isEqualTo(2L);
+        assertThat(buy.getExpiry()).isEqualTo(start.plusSeconds(70));
+        assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(sell.getQuantity()).isEqualTo(3L);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(9L);
+    }
+}
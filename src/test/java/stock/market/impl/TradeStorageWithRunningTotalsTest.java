@@ -0,0 +1,153 @@
+package stock.market.impl;
+
+import org.fest.assertions.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static java.time.LocalDateTime.now;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeStorageWithRunningTotalsTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private TradeStorageWithRunningTotals storage = new TradeStorageWithRunningTotals(Duration.ofMinutes(1));
+
+    @Test
+    public void shouldReturnValidTradesOrderedByTimestamp() throws Exception {
+        //given
+        Trade trade1 = new Trade("IBM", now(), 1L, Site.Sell, BigDecimal.ONE);
+        Trade trade2 = new Trade("IBM", now().minus(1, SECONDS), 1L, Site.Buy, BigDecimal.ONE);
+        Trade tradeOutdated = new Trade("IBM", now().minus(3, MINUTES), 1L, Site.Sell, BigDecimal.ONE);
+        storage.record(trade1);
+        storage.record(tradeOutdated);
+        storage.setOperationSinceLastRemovingOldTrades(100000);
+        storage.record(trade2);
+        //when
+        List<Trade> trades = storage.getValidTrades();
+        //then
+        Assertions.assertThat(trades).containsExactly(trade2, trade1);
+    }
+
+    @Test
+    public void shouldKeepTotalsOfValidTradesOnly() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now(), 2L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now().minus(3, MINUTES), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now().minus(1, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(new BigDecimal("12"));
+        assertThat(totals.getQuantity()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldReturnEmptyTotalsIfAllTradesExpired() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now().minus(3, MINUTES), 5L, Site.Sell, new BigDecimal("1000")));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.isEmpty()).isTrue();
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void shouldReportExpiryOfOldestValidTrade() throws Exception {
+        //given
+        LocalDateTime now = now();
+        storage.record(new Trade("IBM", now, 2L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now.minus(3, MINUTES), 5L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now.minus(10, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getExpiry()).isEqualTo(now.minus(10, SECONDS).plus(1, MINUTES));
+    }
+
+    @Test
+    public void shouldKeepTotalsOfTradesWithinHorizon() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now(), 2L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now().minus(40, SECONDS), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now().minus(1, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals(Duration.ofSeconds(30));
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(new BigDecimal("12"));
+        assertThat(totals.getQuantity()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldCountEvictedTrades() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now(), 2L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now().minus(3, MINUTES), 5L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now().minus(2, MINUTES), 5L, Site.Sell, BigDecimal.ONE));
+        //when
+        storage.getValidTradeTotals();
+        storage.getValidTradeTotals();
+        //then
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldValidateTrade() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade quantity have to be > 0");
+
+        storage.record(new Trade("IBM", now(), -2L, Site.Sell, BigDecimal.TEN));
+    }
+
+    @Test
+    public void shouldKeepValidTradeTotalsOfSites() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithRunningTotals(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(10), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(20), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(buy.getQuantity()).isEqualTo(2L);
+        assertThat(buy.getExpiry()).isEqualTo(start.plusSeconds(70));
+        assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(sell.getQuantity()).isEqualTo(3L);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(9L);
+    }
+
+    @Test
+    public void shouldCalculateExactPriceQuantilesWeightedByQuantity() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now(), 1L, Site.Buy, new BigDecimal("30")));
+        storage.record(new Trade("IBM", now(), 8L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", now(), 1L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", now().minus(3, MINUTES), 100L, Site.Buy, BigDecimal.ONE));
+        //when
+        BigDecimal percentile10 = storage.getValidTradePriceQuantile(0.1);
+        BigDecimal median = storage.getValidTradePriceQuantile(0.5);
+        BigDecimal max = storage.getValidTradePriceQuantile(1d);
+        //then
+        assertThat(percentile10).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(median).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(max).isEqualByComparingTo(new BigDecimal("30"));
+    }
+}
@@ -0,0 +1,146 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeStorageWithSketchesTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private static final LocalDateTime START = LocalDateTime.of(2016, 10, 3, 12, 0);
+
+    private ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), START);
+    private TradeStorageWithSketches storage = new TradeStorageWithSketches(Duration.ofMinutes(1), Duration.ofSeconds(1), clock, 0.005);
+
+    @Test
+    public void shouldKeepExactTotalsOfValidBuckets() throws Exception {
+        //given
+        storage.record(new Trade("IBM", START, 1L, Site.Buy, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", START.plusSeconds(10), 2L, Site.Sell, new BigDecimal("1.00000001")));
+        storage.record(new Trade("IBM", START.plusSeconds(20), 3L, Site.Buy, BigDecimal.TEN));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(new BigDecimal("32.00000002"));
+        assertThat(totals.getQuantity()).isEqualTo(5L);
+        assertThat(totals.getExpiry()).isEqualTo(START.plusSeconds(71));
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldCountBucketOnRetentionBoundaryAsWhole() throws Exception {
+        //given
+        storage.record(new Trade("IBM", START.plusNanos(100_000_000L), 1L, Site.Buy, BigDecimal.ONE));
+        clock.advance(Duration.ofMillis(60_500));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+        assertThat(totals.getExpiry()).isEqualTo(START.plusSeconds(61));
+    }
+
+    @Test
+    public void shouldKeepTotalsOfHorizonAndSites() throws Exception {
+        //given
+        storage.record(new Trade("IBM", START, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", START.plusSeconds(30), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", START.plusSeconds(40), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", START.plusSeconds(50), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(55));
+        //when
+        TradeTotals horizon = storage.getValidTradeTotals(Duration.ofSeconds(20));
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        assertThat(horizon.getTurnover()).isEqualByComparingTo(new BigDecimal("64"));
+        assertThat(horizon.getQuantity()).isEqualTo(7L);
+        assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("120"));
+        assertThat(buy.getQuantity()).isEqualTo(3L);
+        assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(sell.getExpiry()).isEqualTo(START.plusSeconds(101));
+    }
+
+    @Test
+    public void shouldCalculatePriceQuantilesOfValidBuckets() throws Exception {
+        //given
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            storage.record(new Trade("IBM", START.plusNanos(i * 600_000L), 1L, Site.Buy, BigDecimal.valueOf(1 + random.nextInt(200))));
+        }
+        storage.record(new Trade("IBM", START.minusSeconds(30), 1L, Site.Buy, new BigDecimal("1000")));
+        clock.advance(Duration.ofSeconds(60));
+        //when
+        BigDecimal median = storage.getValidTradePriceQuantile(0.5);
+        BigDecimal percentile99 = storage.getValidTradePriceQuantile(0.99);
+        BigDecimal max = storage.getValidTradePriceQuantile(1d);
+        //then
+        assertThat(median.doubleValue()).isGreaterThan(100d * 0.98).isLessThan(101d * 1.02);
+        assertThat(percentile99.doubleValue()).isGreaterThan(198d * 0.99).isLessThan(198d * 1.01);
+        assertThat(max).isEqualByComparingTo(new BigDecimal("200"));
+    }
+
+    @Test
+    public void shouldCalculateQuantileOfNoTradesAsZero() throws Exception {
+        //given
+        storage.record(new Trade("IBM", START, 1L, Site.Buy, BigDecimal.TEN));
+        clock.advance(Duration.ofMinutes(2));
+        //when
+        BigDecimal median = storage.getValidTradePriceQuantile(0.5);
+        //then
+        assertThat(median).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(storage.getValidTradeTotals().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectTradeTooFarInTheFutureWithoutDroppingLiveBucket() throws Exception {
+        //given
+        storage.record(new Trade("IBM", START, 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(
+                new Trade("IBM", START.plusSeconds(61), 1L, Site.Buy, BigDecimal.ONE),
+                new Trade("IBM", START.plusSeconds(60), 1L, Site.Buy, BigDecimal.TEN)));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getReason()).isEqualTo("Trade timestamp is too far in the future");
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(2L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldExpireBucketsAfterClockJumpedOverWholeRing() throws Exception {
+        //given
+        for (int seconds = 0; seconds < 60; seconds += 10) {
+            storage.record(new Trade("IBM", START.plusSeconds(seconds), 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofHours(1));
+        //when
+        storage.record(new Trade("IBM", START.plusHours(1), 2L, Site.Sell, BigDecimal.ONE));
+        //then
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(2L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(6L);
+    }
+
+    @Test
+    public void shouldNotAcceptInvalidQuantile() throws Exception {
+        //given
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("quantile have to be >= 0 and <= 1");
+        //when
+        storage.getValidTradePriceQuantile(1.5);
+    }
+}
@@ -0,0 +1,288 @@
+package stock.market.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import stock.market.RejectedTrade;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.time.LocalDateTime.now;
+import static java.time.temporal.ChronoUnit.MINUTES;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeStorageWithTimeBucketsTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    private TradeStorageWithTimeBuckets storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1));
+
+    @Test
+    public void shouldReturnValidTradesOnly() throws Exception {
+        //given
+        Trade trade1 = new Trade("IBM", now().minus(2, SECONDS), 1L, Site.Sell, BigDecimal.ONE);
+        Trade trade2 = new Trade("IBM", now(), 1L, Site.Buy, BigDecimal.ONE);
+        Trade tradeOutdated = new Trade("IBM", now().minus(3, MINUTES), 1L, Site.Sell, BigDecimal.ONE);
+        storage.record(trade2);
+        storage.record(tradeOutdated);
+        storage.record(trade1);
+        //when
+        List<Trade> trades = storage.getValidTrades();
+        //then
+        assertThat(trades).containsExactly(trade1, trade2);
+    }
+
+    @Test
+    public void shouldKeepTotalsOfValidTradesOnly() throws Exception {
+        //given
+        storage.record(new Trade("IBM", now(), 2L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", now().minus(3, MINUTES), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now().minus(1, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(new BigDecimal("12"));
+        assertThat(totals.getQuantity()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldExpireTradesByMarketClock() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        clock.advance(Duration.ofSeconds(61));
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+        assertThat(totals.getExpiry()).isEqualTo(start.plusSeconds(90));
+    }
+
+    @Test
+    public void shouldFilterTradesOnRetentionBoundaryInsideBucket() throws Exception {
+        //given
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        storage.record(new Trade("IBM", now().minus(61, SECONDS), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now().minus(59, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+        assertThat(storage.getValidTrades()).hasSize(1);
+    }
+
+    @Test
+    public void shouldReuseBucketsWhenRingWrapsAround() throws Exception {
+        //given
+        storage = new TradeStorageWithTimeBuckets(Duration.ofSeconds(10));
+        storage.record(new Trade("IBM", now().minus(30, SECONDS), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now(), 1L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", now().minus(40, SECONDS), 5L, Site.Sell, new BigDecimal("1000")));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldCountEvictedTradesOfDroppedBucketsAndTooOldTrades() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 5L, Site.Sell, BigDecimal.ONE));
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        clock.advance(Duration.ofSeconds(62));
+        storage.getValidTradeTotals();
+        storage.record(new Trade("IBM", start.minusSeconds(10), 1L, Site.Buy, BigDecimal.TEN));
+        storage.getValidTradeTotals();
+        //then
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldRejectTradeTooFarInTheFutureWithoutDroppingLiveBucket() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        List<RejectedTrade> rejected = storage.recordAll(Arrays.asList(
+                new Trade("IBM", start.plusSeconds(61), 1L, Site.Buy, BigDecimal.ONE),
+                new Trade("IBM", start.plusSeconds(1), 1L, Site.Buy, BigDecimal.TEN)));
+        //then
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getReason()).isEqualTo("Trade timestamp is too far in the future");
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(2L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldExpireBucketsAfterClockJumpedOverWholeRing() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofSeconds(10), clock);
+        for (int seconds = 0; seconds < 10; seconds++) {
+            storage.record(new Trade("IBM", start.minusSeconds(seconds), 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofSeconds(5));
+        storage.getValidTradeTotals();
+        //when
+        clock.advance(Duration.ofMinutes(5));
+        storage.record(new Trade("IBM", start.plusMinutes(5), 1L, Site.Buy, BigDecimal.ONE));
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getQuantity()).isEqualTo(1L);
+        assertThat(totals.getTurnover()).isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(10L);
+    }
+
+    @Test
+    public void shouldKeepTotalsOfEveryHorizonFromOneRecord() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofHours(1), Duration.ofSeconds(1), clock, Arrays.asList(Duration.ofMinutes(1), Duration.ofMinutes(5)));
+        storage.record(new Trade("IBM", start, 1L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", start.plusMinutes(3), 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusMinutes(9).plusSeconds(30), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        clock.advanceTo(start.plusMinutes(10));
+        //then
+        assertThat(storage.getValidTradeTotals(Duration.ofMinutes(1)).getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(storage.getValidTradeTotals(Duration.ofMinutes(5)).getTurnover()).isEqualByComparingTo(BigDecimal.TEN);
+        assertThat(storage.getValidTradeTotals(Duration.ofMinutes(8)).getTurnover()).isEqualByComparingTo(new BigDecimal("110"));
+        assertThat(storage.getValidTradeTotals(Duration.ofHours(1)).getTurnover()).isEqualByComparingTo(new BigDecimal("1110"));
+        assertThat(storage.getValidTradeTotals(Duration.ofMinutes(5)).getExpiry()).isEqualTo(start.plusMinutes(14).plusSeconds(30));
+    }
+
+    @Test
+    public void shouldCalculateSameHorizonTotalsAsFilteredTrades() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        List<Duration> horizons = Arrays.asList(Duration.ofSeconds(7), Duration.ofSeconds(30), Duration.ofSeconds(90));
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(2), Duration.ofSeconds(1), clock, horizons);
+        Random random = new Random(11);
+        for (int i = 0; i < 3000; i++) {
+            //when
+            clock.advance(Duration.ofMillis(random.nextInt(i % 500 == 0 ? 200_000 : 300)));
+            LocalDateTime now = clock.toLocalDateTime(clock.currentTimeNanos());
+            storage.record(new Trade("IBM", now.minus(Duration.ofMillis(random.nextInt(5000))), 1L + random.nextInt(100), Site.Buy, BigDecimal.valueOf(1 + random.nextInt(10_000), 2)));
+            if (i % 10 == 0) {
+                Duration horizon = i % 40 == 0 ? Duration.ofSeconds(1 + random.nextInt(120)) : horizons.get(random.nextInt(horizons.size()));
+                TradeTotals totals = storage.getValidTradeTotals(horizon);
+                TradeTotals expected = TradeTotals.of(storage.getValidTrades(), now.minus(horizon), horizon);
+                //then
+                assertThat(totals.getTurnover()).isEqualByComparingTo(expected.getTurnover());
+                assertThat(totals.getQuantity()).isEqualTo(expected.getQuantity());
+                assertThat(totals.getExpiry()).isEqualTo(expected.getExpiry());
+            }
+        }
+    }
+
+    @Test
+    public void shouldValidateHorizon() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("horizon have to be > 0 and <= retention time");
+        storage.getValidTradeTotals(Duration.ofMinutes(2));
+    }
+
+    @Test
+    public void shouldReportExpiryOfOldestValidTrade() throws Exception {
+        //given
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), Duration.ofMinutes(1));
+        LocalDateTime now = now();
+        storage.record(new Trade("IBM", now.minus(61, SECONDS), 5L, Site.Sell, new BigDecimal("1000")));
+        storage.record(new Trade("IBM", now.minus(30, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", now.minus(59, SECONDS), 1L, Site.Buy, BigDecimal.TEN));
+        //when
+        TradeTotals totals = storage.getValidTradeTotals();
+        //then
+        assertThat(totals.getExpiry()).isEqualTo(now.minus(59, SECONDS).plus(1, MINUTES));
+    }
+
+    @Test
+    public void shouldReturnNoExpiryWithoutValidTrades() throws Exception {
+        assertThat(storage.getValidTradeTotals().getExpiry()).isNull();
+    }
+
+    @Test
+    public void shouldValidateBucketWidth() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("bucketWidth have to be >= 1ms");
+
+        new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), Duration.ZERO);
+    }
+
+    @Test
+    public void shouldValidateTrade() throws Exception {
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("Trade timestamp is not set");
+
+        storage.record(new Trade("IBM", null, 2L, Site.Sell, BigDecimal.TEN));
+    }
+
+    @Test
+    public void shouldStreamValidTradesOfRangeWithoutRemovingOutdatedTrades() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), clock);
+        for (int seconds = 0; seconds <= 40; seconds += 10) {
+            storage.record(new Trade("IBM", start.plusSeconds(seconds), 1L, Site.Buy, BigDecimal.TEN));
+        }
+        clock.advance(Duration.ofSeconds(70));
+        //when
+        List<LocalDateTime> timestamps = storage.getValidTrades(start, start.plusSeconds(40))
+                .map(Trade::getTimestamp)
+                .collect(Collectors.toList());
+        //then
+        assertThat(timestamps).containsExactly(start.plusSeconds(10), start.plusSeconds(20), start.plusSeconds(30));
+        assertThat(storage.getValidTrades(start.plusSeconds(40), start.plusSeconds(40)).count()).isEqualTo(0L);
+        assertThat(storage.getEvictedTradeCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldKeepValidTradeTotalsOfSites() throws Exception {
+        //given
+        LocalDateTime start = LocalDateTime.of(2016, 10, 3, 12, 0);
+        ReplayMarketClock clock = new ReplayMarketClock(ZoneId.of("Europe/London"), start);
+        storage = new TradeStorageWithTimeBuckets(Duration.ofMinutes(1), clock);
+        storage.record(new Trade("IBM", start, 1L, Site.Buy, new BigDecimal("100")));
+        storage.record(new Trade("IBM", start.plusSeconds(10), 2L, Site.Buy, BigDecimal.TEN));
+        storage.record(new Trade("IBM", start.plusSeconds(20), 3L, Site.Sell, new BigDecimal("20")));
+        storage.record(new Trade("IBM", start.plusSeconds(30), 4L, null, BigDecimal.ONE));
+        clock.advance(Duration.ofSeconds(65));
+        //when
+        TradeTotals buy = storage.getValidTradeTotals(Site.Buy);
+        TradeTotals sell = storage.getValidTradeTotals(Site.Sell);
+        //then
+        assertThat(buy.getTurnover()).isEqualByComparingTo(new BigDecimal("20"));
+        assertThat(buy.getQuantity()).isEqualTo(2L);
+        assertThat(buy.getExpiry()).isEqualTo(start.plusSeconds(70));
+        assertThat(sell.getTurnover()).isEqualByComparingTo(new BigDecimal("60"));
+        assertThat(sell.getQuantity()).isEqualTo(3L);
+        assertThat(storage.getValidTradeTotals().getQuantity()).isEqualTo(9L);
+    }
+}
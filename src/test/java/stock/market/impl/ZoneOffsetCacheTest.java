@@ -0,0 +1,75 @@
+package stock.market.impl;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ZoneOffsetCacheTest {
+
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+
+    private final ZoneOffsetCache offsets = new ZoneOffsetCache(LONDON);
+
+    @Test
+    public void shouldConvertTimestampsAroundDaylightSavingChangesLikeZoneRules() throws Exception {
+        for (LocalDateTime day : new LocalDateTime[]{LocalDateTime.of(2016, 3, 27, 0, 0), LocalDateTime.of(2016, 10, 30, 0, 0)}) {
+            for (LocalDateTime timestamp = day; timestamp.isBefore(day.plusDays(1)); timestamp = timestamp.plusMinutes(15)) {
+                //when
+                long epochNanos = offsets.toEpochNanos(timestamp);
+                //then
+                assertThat(epochNanos).isEqualTo(expectedEpochNanos(timestamp));
+            }
+        }
+    }
+
+    @Test
+    public void shouldConvertEpochNanosAroundDaylightSavingChangesLikeZoneRules() throws Exception {
+        //given
+        long start = expectedEpochNanos(LocalDateTime.of(2016, 10, 30, 0, 0));
+        //when
+        for (long epochNanos = start; epochNanos < start + Duration.ofHours(4).toNanos(); epochNanos += Duration.ofMinutes(15).toNanos()) {
+            //then
+            assertThat(offsets.toLocalDateTime(epochNanos)).isEqualTo(LocalDateTime.ofInstant(Instant.ofEpochSecond(0L, epochNanos), LONDON));
+        }
+    }
+
+    @Test
+    public void shouldConvertRandomTimesOverYearsLikeZoneRules() throws Exception {
+        //given
+        Random random = new Random(7);
+        long from = LocalDateTime.of(1965, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+        long to = LocalDateTime.of(2040, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+        for (int i = 0; i < 10_000; i++) {
+            long second = from + (long) (random.nextDouble() * (to - from));
+            LocalDateTime timestamp = LocalDateTime.ofEpochSecond(second, random.nextInt(1_000_000_000), ZoneOffset.UTC);
+            //when
+            long epochNanos = offsets.toEpochNanos(timestamp);
+            //then
+            assertThat(epochNanos).isEqualTo(expectedEpochNanos(timestamp));
+            assertThat(offsets.toLocalDateTime(epochNanos)).isEqualTo(LocalDateTime.ofInstant(Instant.ofEpochSecond(0L, epochNanos), LONDON));
+        }
+    }
+
+    @Test
+    public void shouldConvertTimestampsOfFixedOffsetZone() throws Exception {
+        //given
+        ZoneOffsetCache fixed = new ZoneOffsetCache(ZoneOffset.ofHours(2));
+        LocalDateTime timestamp = LocalDateTime.of(2016, 10, 30, 1, 30);
+        //when
+        long epochNanos = fixed.toEpochNanos(timestamp);
+        //then
+        assertThat(epochNanos).isEqualTo(timestamp.toEpochSecond(ZoneOffset.ofHours(2)) * MarketClock.NANOS_PER_SECOND);
+        assertThat(fixed.toLocalDateTime(epochNanos)).isEqualTo(timestamp);
+    }
+
+    private static long expectedEpochNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(LONDON.getRules().getOffset(timestamp)) * MarketClock.NANOS_PER_SECOND + timestamp.getNano();
+    }
+}
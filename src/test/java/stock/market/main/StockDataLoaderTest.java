@@ -9,6 +9,9 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import stock.market.impl.CommonDividedFactorFunction;
+import stock.market.impl.PreferredDividedFactorFunction;
+import stock.market.impl.SimpleStockMarket;
 import stock.market.impl.StockData;
 import stock.market.impl.StockOperations;
 import stock.market.impl.TradeStorage;
@@ -16,6 +19,8 @@ import stock.market.impl.TradeStorage;
 import java.io.File;
 import java.math.BigDecimal;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -39,12 +44,19 @@ public class StockDataLoaderTest {
     @Before
     public void setUp() throws Exception {
         tempFile = folder.newFile();
-        Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction = singletonMap("Common", mock(Function.class));
+        Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction = singletonMap("Common", dividedFactorFunction());
         dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, typeToDividedFactorFunction);
 
         when(tradeStorageFactory.create()).thenReturn(mock(TradeStorage.class));
     }
 
+    @SuppressWarnings("unchecked")
+    private static Function<StockData, BigDecimal> dividedFactorFunction() {
+        Function<StockData, BigDecimal> dividedFactorFunction = mock(Function.class);
+        when(dividedFactorFunction.apply(any())).thenReturn(BigDecimal.ZERO);
+        return dividedFactorFunction;
+    }
+
     @Test
     public void shouldLoadData() throws Exception {
         //given
@@ -70,4 +82,106 @@ public class StockDataLoaderTest {
 
         dataLoader.loadData();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReportLineOfPreferredStockWithoutFixedDividend() throws Exception {
+        String fileContent = "Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,0,,100\n"
+                + "GIN,Preferred,8,,100\n";
+        Files.write(tempFile.toPath(), fileContent.getBytes());
+        Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction = new HashMap<>();
+        typeToDividedFactorFunction.put("Common", new CommonDividedFactorFunction());
+        typeToDividedFactorFunction.put("Preferred", new PreferredDividedFactorFunction());
+        dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, typeToDividedFactorFunction);
+
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("cannot load data from source: " + tempFile.toURI() + ", line 3");
+
+        dataLoader.loadData();
+    }
+
+    @Test
+    public void shouldLoadDataSplitIntoChunks() throws Exception {
+        //given
+        String fileContent = "Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\r\n"
+                + "TEA,Common,0,,100\r\n"
+                + "POP,Common,8,,100\r\n"
+                + "\r\n"
+                + "ALE,Common,23,,60\r\n";
+        Files.write(tempFile.toPath(), fileContent.getBytes());
+        Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction = singletonMap("Common", dividedFactorFunction());
+        dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, typeToDividedFactorFunction, 0, 8);
+        //when
+        Map<String, StockOperations> result = dataLoader.loadData();
+        //then
+        assertThat(new ArrayList<>(result.keySet())).containsExactly("TEA", "POP", "ALE");
+        verify(tradeStorageFactory, times(3)).create();
+    }
+
+    @Test
+    public void shouldReportProblemsWithLineNumbers() throws Exception {
+        String fileContent = "Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,0,,100\n"
+                + "POP,Common,8,100\n"
+                + "ALE,Common,x,,60\n"
+                + "TEA,Common,0,,100\n";
+        Files.write(tempFile.toPath(), fileContent.getBytes());
+        Map<String, Function<StockData, BigDecimal>> typeToDividedFactorFunction = singletonMap("Common", dividedFactorFunction());
+        dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, typeToDividedFactorFunction, 0, 16);
+
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("line 3: expected 5 columns, line 4: invalid number, line 5: duplicated stock symbol TEA (first defined at line 2)");
+
+        dataLoader.loadData();
+    }
+
+    @Test
+    public void shouldReloadChangedAndNewStockSymbolsOnly() throws Exception {
+        //given
+        Files.write(tempFile.toPath(), ("Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,0,,100\n"
+                + "POP,Common,8,,100\n").getBytes());
+        Function<StockData, BigDecimal> dividedFactorFunction = dividedFactorFunction();
+        dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, singletonMap("Common", dividedFactorFunction));
+        SimpleStockMarket stockMarket = new SimpleStockMarket(dataLoader.loadData(), mock(Function.class));
+        Files.write(tempFile.toPath(), ("Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,0,,100\n"
+                + "POP,Common,16,,100\n"
+                + "GIN,Common,8,,100\n").getBytes());
+        //when
+        dataLoader.reload(stockMarket);
+        //then
+        assertThat(stockMarket.getStockSymbols()).containsOnly("TEA", "POP", "GIN");
+        verify(tradeStorageFactory, times(3)).create();
+        verify(dividedFactorFunction, times(1)).apply(new StockData(BigDecimal.ZERO, null, new BigDecimal("100")));
+        verify(dividedFactorFunction, times(1)).apply(new StockData(new BigDecimal("16"), null, new BigDecimal("100")));
+    }
+
+    @Test
+    public void shouldReloadNothingIfAnyStockDataCannotBeApplied() throws Exception {
+        //given
+        Files.write(tempFile.toPath(), ("Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,0,,100\n"
+                + "POP,Common,8,,100\n").getBytes());
+        Function<StockData, BigDecimal> dividedFactorFunction = mock(Function.class);
+        when(dividedFactorFunction.apply(any())).thenReturn(BigDecimal.ZERO);
+        when(dividedFactorFunction.apply(new StockData(BigDecimal.ONE, null, new BigDecimal("100")))).thenReturn(BigDecimal.TEN);
+        when(dividedFactorFunction.apply(new StockData(new BigDecimal("16"), null, new BigDecimal("100")))).thenThrow(new IllegalArgumentException("invalid"));
+        dataLoader = new StockDataLoader(tempFile.toURI(), tradeStorageFactory, singletonMap("Common", dividedFactorFunction));
+        SimpleStockMarket stockMarket = new SimpleStockMarket(dataLoader.loadData(), mock(Function.class));
+        Files.write(tempFile.toPath(), ("Stock Symbol,Type,Last Dividend,Fixed Dividend,Par Value\n"
+                + "TEA,Common,1,,100\n"
+                + "POP,Common,16,,100\n"
+                + "GIN,Common,8,,100\n").getBytes());
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("cannot load data from source: " + tempFile.toURI() + ", line 3");
+        //when
+        try {
+            dataLoader.reload(stockMarket);
+        } finally {
+            //then
+            assertThat(stockMarket.getStockSymbols()).containsOnly("TEA", "POP");
+            assertThat(stockMarket.calculateDividedYield("TEA", BigDecimal.ONE)).isEqualByComparingTo(BigDecimal.ZERO);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package stock.market.main;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import stock.market.Site;
+import stock.market.Trade;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TradeCsvReaderTest {
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TradeCsvReader reader = new TradeCsvReader();
+
+    @Test
+    public void shouldReadTrades() throws Exception {
+        //given
+        File file = folder.newFile();
+        Files.write(file.toPath(), ("Stock Symbol,Timestamp,Quantity,Site,Price\n"
+                + "TEA,2016-10-03T12:00:01.5,10,Buy,12.5\n").getBytes());
+        //when
+        List<Trade> trades;
+        try (Stream<Trade> stream = reader.read(file.toPath())) {
+            trades = stream.collect(Collectors.toList());
+        }
+        //then
+        assertThat(trades).hasSize(1);
+        assertThat(trades.get(0).getStockSymbol()).isEqualTo("TEA");
+        assertThat(trades.get(0).getTimestamp()).isEqualTo(LocalDateTime.of(2016, 10, 3, 12, 0, 1, 500_000_000));
+        assertThat(trades.get(0).getQuantity()).isEqualTo(10L);
+        assertThat(trades.get(0).getSite()).isEqualTo(Site.Buy);
+        assertThat(trades.get(0).getPrice()).isEqualTo(new BigDecimal("12.5"));
+    }
+
+    @Test
+    public void shouldReportMalformedTradeWithLineNumber() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), ("Stock Symbol,Timestamp,Quantity,Site,Price\n"
+                + "TEA,2016-10-03T12:00:01,10,Buy,12.5\n"
+                + "TEA,2016-10-03T12:00:02,10,Hold,12.5\n").getBytes());
+
+        expectedEx.expect(IllegalArgumentException.class);
+        expectedEx.expectMessage("malformed trade at line 3");
+
+        try (Stream<Trade> stream = reader.read(file.toPath())) {
+            stream.count();
+        }
+    }
+}